@@ -0,0 +1,65 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wait strategy in which the consumer parks until a producer signals that an element was
+ * added.  Uses no CPU while idle, at the cost of a wake up on the producer side.
+ * Producers only pay for the wake up when the consumer is actually parked.
+ *
+ * @author David Valeri
+ */
+public final class BlockingWaitStrategy implements WaitStrategy {
+
+    private final long maxParkNanos;
+
+    private volatile Thread waitingConsumer;
+
+    /**
+     * Creates an instance that parks for at most 1000ms between checks.
+     */
+    public BlockingWaitStrategy() {
+        this(1000, TimeUnit.MILLISECONDS);
+    }
+
+    public BlockingWaitStrategy(long maxPark, TimeUnit unit) {
+        maxParkNanos = unit.toNanos(maxPark);
+    }
+
+    @Override
+    public void idle(int idleCount, MpscRingBuffer<?> ring) {
+        waitingConsumer = Thread.currentThread();
+        try {
+            // Re-check after registering so that a signal sent in between is not lost.
+            if (ring.isEmpty()) {
+                LockSupport.parkNanos(this, maxParkNanos);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    @Override
+    public void signal() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+/**
+ * Wait strategy in which the consumer spins without ever giving up its CPU.  Provides
+ * the lowest handoff latency at the cost of a fully occupied core, and is only suitable
+ * when a core can be dedicated to the consumer.
+ *
+ * @author David Valeri
+ */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public void idle(int idleCount, MpscRingBuffer<?> ring) {
+        // Spin
+    }
+
+    @Override
+    public void signal() {
+        // No-op
+    }
+}
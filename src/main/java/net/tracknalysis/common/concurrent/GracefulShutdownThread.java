@@ -79,7 +79,7 @@ public abstract class GracefulShutdownThread extends Thread {
             
             keepRunning = false;
             
-            for (long time = 0; time < stopTimeout && !isAlive(); time += stopIncrement) {
+            for (long time = 0; time < stopTimeout && isAlive(); time += stopIncrement) {
                 try {
                 	join(stopIncrement);
                 } catch (InterruptedException e) {
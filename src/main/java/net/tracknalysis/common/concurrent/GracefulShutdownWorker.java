@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long running task with the same cooperative shutdown semantics as
+ * {@link GracefulShutdownThread}, but run on a thread obtained from a
+ * {@link ThreadFactory} rather than being a thread itself.  This allows the task to run on
+ * a virtual thread (see {@link ThreadFactories#virtual()}) as well as on a platform thread.
+ * <p/>
+ * Implementations loop while {@link #keepRunning()} returns true and should bound any
+ * blocking wait so that the flag is observed within the stop increment.
+ *
+ * @author David Valeri
+ */
+public abstract class GracefulShutdownWorker implements Runnable {
+
+    private Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final ThreadFactory threadFactory;
+    // Not a monitor so that cancelling from a virtual thread does not pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long stopTimeout = 5000;
+    private long stopIncrement = 1000;
+
+    private volatile boolean keepRunning = true;
+    private volatile Thread thread;
+
+    /**
+     * Creates a worker that runs on a non-daemon platform thread.
+     *
+     * @param name the name of the worker and its thread
+     */
+    public GracefulShutdownWorker(String name) {
+        this(name, ThreadFactories.platform(false));
+    }
+
+    /**
+     * @param name the name of the worker and its thread
+     * @param threadFactory the factory of the thread that runs the worker
+     */
+    public GracefulShutdownWorker(String name, ThreadFactory threadFactory) {
+        this.name = name;
+        this.threadFactory = threadFactory;
+    }
+
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Starts the worker on a new thread from the thread factory.
+     *
+     * @throws IllegalStateException if the worker was already started
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (thread != null) {
+                throw new IllegalStateException("The worker was already started.");
+            }
+
+            Thread newThread = threadFactory.newThread(this);
+            newThread.setName(name);
+            thread = newThread;
+            newThread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the worker has been started and its thread has not yet terminated.
+     */
+    public boolean isAlive() {
+        Thread current = thread;
+        return current != null && current.isAlive();
+    }
+
+    /**
+     * Returns true if the worker runs on a virtual thread.
+     */
+    public boolean isVirtual() {
+        Thread current = thread;
+        return current != null && ThreadFactories.isVirtual(current);
+    }
+
+    protected final boolean keepRunning() {
+        return keepRunning;
+    }
+
+    /**
+     * Asks the worker to stop without waiting for it to do so, allowing several workers to
+     * wind down in parallel before {@link #cancel()} waits for each of them.
+     */
+    public void requestStop() {
+        keepRunning = false;
+    }
+
+    /**
+     * Attempts to gracefully shutdown the worker if it is running.
+     *
+     * @return true if the worker shutdown
+     */
+    public boolean cancel() {
+        lock.lock();
+        try {
+            Thread current = thread;
+            if (current != null && current.isAlive()) {
+                LOG.debug("Attempting graceful shutdown of {} worker.", name);
+
+                keepRunning = false;
+
+                for (long time = 0; time < stopTimeout && current.isAlive();
+                        time += stopIncrement) {
+                    try {
+                        current.join(stopIncrement);
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while attempting clean shutdown of {} worker.",
+                                name);
+                    }
+                }
+
+                if (current.isAlive()) {
+                    LOG.warn("Graceful shutdown of {} worker failed.  Attempting "
+                            + "less subtle options.  Expect some error messages to follow.",
+                            name);
+
+                    current.interrupt();
+
+                    try {
+                        current.join(stopIncrement);
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while attempting clean shutdown of {} worker.",
+                                name);
+                    }
+
+                    if (current.isAlive()) {
+                        LOG.error("Forceable shutdown of {} worker failed.  Giving up.", name);
+                    } else {
+                        LOG.debug("Forceable shutdown of {} worker succeeded.", name);
+                    }
+                } else {
+                    LOG.debug("Graceful shutdown of {} worker succeeded.", name);
+                }
+            } else {
+                keepRunning = false;
+            }
+
+            return !isAlive();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free, bounded, preallocated ring buffer for any number of producer threads and
+ * exactly one consumer thread.  Producers claim slots with a single compare-and-set on
+ * the tail and publish them through a per-slot sequence number, so neither side takes a
+ * lock and no allocation occurs once the buffer is constructed.
+ * <p/>
+ * Methods are documented as producer or consumer methods and consumer methods must only
+ * be invoked from the consumer thread.
+ *
+ * @param <E> the type of the elements
+ *
+ * @author David Valeri
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * The sequence of each slot.  A slot at index {@code i} is free for the producer
+     * claiming position {@code p} when its sequence is {@code p} and holds the element of
+     * that position once its sequence is {@code p + 1}.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The next position to claim.  Shared by the producers.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position to consume.  Only accessed by the consumer.
+     */
+    private long head;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param capacity the number of elements, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity + ".");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of elements the buffer can hold.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Producer method that adds {@code element} without blocking.
+     *
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // The slot still holds the element from one lap ago.
+                return false;
+            }
+            // Otherwise another producer claimed the position first, retry.
+        }
+
+        elements.lazySet(index, element);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Consumer method that removes and returns the oldest element without blocking.
+     *
+     * @return the element or {@code null} if the buffer is empty
+     */
+    public E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Consumer method that returns true if no element is ready to be removed.
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * Consumer method that discards all published elements.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // Discard
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wait strategy in which the consumer spins, then yields and then parks for exponentially
+ * increasing periods up to a maximum.  Producers never signal, so the handoff latency of
+ * an idle consumer is bounded by the maximum park time.
+ *
+ * @author David Valeri
+ */
+public final class ParkingBackoffWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MIN_PARK_NANOS = 1000;
+
+    private final long maxParkNanos;
+
+    /**
+     * Creates an instance that parks for at most 1ms.
+     */
+    public ParkingBackoffWaitStrategy() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    public ParkingBackoffWaitStrategy(long maxPark, TimeUnit unit) {
+        maxParkNanos = Math.max(MIN_PARK_NANOS, unit.toNanos(maxPark));
+    }
+
+    @Override
+    public void idle(int idleCount, MpscRingBuffer<?> ring) {
+        if (idleCount < SPIN_TRIES) {
+            return;
+        } else if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            int doublings = Math.min(30, idleCount - SPIN_TRIES - YIELD_TRIES);
+            LockSupport.parkNanos(Math.min(maxParkNanos, MIN_PARK_NANOS << doublings));
+        }
+    }
+
+    @Override
+    public void signal() {
+        // No-op
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free, bounded ring buffer of bytes for exactly one producer thread and one
+ * consumer thread.  Neither side takes a lock to transfer data.  A side that must wait,
+ * for data or for space, parks until the other side signals progress or a nanosecond
+ * deadline passes.
+ * <p/>
+ * Methods are documented as producer or consumer methods and must only be invoked from
+ * the respective thread.
+ *
+ * @author David Valeri
+ */
+public final class SpscByteRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    /*
+     * The positions are published with volatile writes rather than lazy sets so that the
+     * write is ordered before the subsequent read of the waiting thread field.  Otherwise
+     * a wake up could be lost when the other side is just beginning to park.
+     */
+
+    /**
+     * Total number of bytes consumed.  Written only by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Total number of bytes produced.  Written only by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param capacity the capacity in bytes, rounded up to a power of two
+     */
+    public SpscByteRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be in [1, 2^30].");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the capacity of the buffer in bytes.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes available to the consumer.  May be called from any
+     * thread, although the result is only a snapshot.
+     */
+    public int available() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Producer method.  Copies as many bytes as fit from {@code src} into the buffer
+     * without waiting.
+     *
+     * @return the number of bytes written, 0 if the buffer is full
+     */
+    public int offer(byte[] src, int offset, int length) {
+        long currentTail = tail.get();
+        int free = buffer.length - (int) (currentTail - head.get());
+        int toWrite = Math.min(free, length);
+
+        if (toWrite > 0) {
+            int index = (int) currentTail & mask;
+            int firstChunk = Math.min(toWrite, buffer.length - index);
+            System.arraycopy(src, offset, buffer, index, firstChunk);
+            System.arraycopy(src, offset + firstChunk, buffer, 0, toWrite - firstChunk);
+            tail.set(currentTail + toWrite);
+
+            signalConsumer();
+        }
+
+        return toWrite;
+    }
+
+    /**
+     * Consumer method.  Copies up to {@code length} available bytes into {@code dst}
+     * without waiting.
+     *
+     * @return the number of bytes read, 0 if the buffer is empty
+     */
+    public int poll(byte[] dst, int offset, int length) {
+        long currentHead = head.get();
+        int toRead = Math.min((int) (tail.get() - currentHead), length);
+
+        if (toRead > 0) {
+            int index = (int) currentHead & mask;
+            int firstChunk = Math.min(toRead, buffer.length - index);
+            System.arraycopy(buffer, index, dst, offset, firstChunk);
+            System.arraycopy(buffer, 0, dst, offset + firstChunk, toRead - firstChunk);
+            head.set(currentHead + toRead);
+
+            signalProducer();
+        }
+
+        return toRead;
+    }
+
+    /**
+     * Consumer method.  Discards all available bytes.
+     *
+     * @return the number of bytes discarded
+     */
+    public int clear() {
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        head.set(currentTail);
+        signalProducer();
+        return (int) (currentTail - currentHead);
+    }
+
+    /**
+     * Consumer method.  Waits until at least {@code minBytes} bytes are available, the
+     * deadline passes, or the thread is interrupted.
+     *
+     * @param minBytes the number of bytes to wait for, capped at the capacity
+     * @param deadlineNanos the deadline as a {@link System#nanoTime()} value
+     *
+     * @return true if the requested bytes are available
+     */
+    public boolean awaitData(int minBytes, long deadlineNanos) {
+        int required = Math.min(minBytes, buffer.length);
+        if (available() >= required) {
+            return true;
+        }
+
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (available() < required) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            return true;
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * Producer method.  Waits until at least one byte of space is free, the deadline
+     * passes, or the thread is interrupted.
+     *
+     * @param deadlineNanos the deadline as a {@link System#nanoTime()} value
+     *
+     * @return true if space is available
+     */
+    public boolean awaitSpace(long deadlineNanos) {
+        if (available() < buffer.length) {
+            return true;
+        }
+
+        waitingProducer = Thread.currentThread();
+        try {
+            while (available() >= buffer.length) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            return true;
+        } finally {
+            waitingProducer = null;
+        }
+    }
+
+    /**
+     * Unparks the consumer if it is waiting.  Safe to call from any thread, for example to
+     * wake a consumer when the producer is shutting down.
+     */
+    public void signalConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void signalProducer() {
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+}
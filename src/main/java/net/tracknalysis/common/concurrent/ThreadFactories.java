@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factories for the threads that run {@link GracefulShutdownWorker}s.  Virtual threads are
+ * looked up reflectively so that the library still builds and runs on JVMs that predate
+ * them.
+ *
+ * @author David Valeri
+ */
+public final class ThreadFactories {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadFactories.class);
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+    private static final Method IS_VIRTUAL_METHOD = findIsVirtualMethod();
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * Returns a factory of platform threads.
+     *
+     * @param daemon true if the created threads are daemon threads
+     */
+    public static ThreadFactory platform(final boolean daemon) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setDaemon(daemon);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the running JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Returns a factory of virtual threads.  Virtual threads are always daemon threads.
+     *
+     * @throws UnsupportedOperationException if the running JVM does not support virtual
+     *             threads
+     */
+    public static ThreadFactory virtual() {
+        if (VIRTUAL_THREAD_FACTORY == null) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads are not supported by this JVM.");
+        }
+
+        return VIRTUAL_THREAD_FACTORY;
+    }
+
+    /**
+     * Returns a factory of virtual threads if the running JVM supports them and a factory
+     * of daemon platform threads otherwise.
+     */
+    public static ThreadFactory virtualIfSupported() {
+        return VIRTUAL_THREAD_FACTORY != null ? VIRTUAL_THREAD_FACTORY : platform(true);
+    }
+
+    /**
+     * Returns true if {@code thread} is a virtual thread.
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL_METHOD == null) {
+            return false;
+        }
+
+        try {
+            return (Boolean) IS_VIRTUAL_METHOD.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Method findIsVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            // Present but unusable, e.g. a preview feature that is not enabled.
+            LOG.debug("Virtual threads are not available.", e);
+            return null;
+        }
+    }
+}
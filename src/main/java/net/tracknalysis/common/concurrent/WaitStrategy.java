@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+/**
+ * Strategy by which the consumer of an {@link MpscRingBuffer} waits for elements, trading
+ * CPU use against the latency of handing an element from a producer to the consumer.
+ *
+ * @author David Valeri
+ */
+public interface WaitStrategy {
+
+    /**
+     * Invoked by the consumer each time it finds {@code ring} empty.  Implementations
+     * return after a bounded time, whether or not an element has arrived, so that the
+     * consumer can check whether it should keep running.
+     *
+     * @param idleCount the number of consecutive times the consumer has found the ring
+     *            empty, starting at 0
+     * @param ring the ring the consumer is waiting on
+     */
+    void idle(int idleCount, MpscRingBuffer<?> ring);
+
+    /**
+     * Invoked by a producer after adding an element.
+     */
+    void signal();
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+/**
+ * Wait strategy in which the consumer spins briefly and then yields its CPU to other
+ * runnable threads between checks.
+ *
+ * @author David Valeri
+ */
+public final class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public void idle(int idleCount, MpscRingBuffer<?> ring) {
+        if (idleCount >= SPIN_TRIES) {
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void signal() {
+        // No-op
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for implementing a {@link BufferIoProtocolHandler}.  Implements the array
+ * based methods of {@link IoProtocolHandler} in terms of the in-place methods.
+ *
+ * @author David Valeri
+ */
+public abstract class AbstractBufferIoProtocolHandler implements BufferIoProtocolHandler {
+
+    @Override
+    public byte[] wrapRequest(byte[] raw) throws IOException {
+        byte[] wrapped = new byte[getWrappedRequestLength(raw.length)];
+        ByteBuffer wrappedBuffer = ByteBuffer.wrap(wrapped);
+        wrapRequest(raw, 0, raw.length, wrappedBuffer);
+
+        if (wrappedBuffer.position() != wrapped.length) {
+            throw new IOException("Wrapped request of length " + wrappedBuffer.position()
+                    + " does not match the expected length of " + wrapped.length + ".");
+        }
+
+        return wrapped;
+    }
+
+    @Override
+    public byte[] unwrapResponse(byte[] wrapped) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(wrapped);
+        unwrapResponse(buffer);
+        byte[] unwrapped = new byte[buffer.remaining()];
+        buffer.get(unwrapped);
+        return unwrapped;
+    }
+}
@@ -17,9 +17,13 @@ package net.tracknalysis.common.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.tracknalysis.common.io.SocketManager;
 
@@ -32,55 +36,111 @@ import org.slf4j.Logger;
  */
 public abstract class AbstractIoManager implements IoManager {
     
+    private static final int DEFAULT_READ_BUFFER_SIZE = 256;
+    private static final long INPUT_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_INPUT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
     private final SocketManager delegate;
+    private final ByteBufferPool bufferPool;
+    private final ByteArrayBuffer readBuffer = new ByteArrayBuffer(DEFAULT_READ_BUFFER_SIZE);
+    private final ReentrantLock ioLock = new ReentrantLock();
+    // Bytes read past the delimiter of a previous response, served before new input
+    private final ByteArrayBuffer pending = new ByteArrayBuffer(DEFAULT_READ_BUFFER_SIZE);
+    private int pendingPosition;
+    private DelimiterMatcher delimiterMatcher;
     
     public AbstractIoManager(SocketManager delegate) {
+        this(delegate, ByteBufferPool.getSharedInstance());
+    }
+    
+    public AbstractIoManager(SocketManager delegate, ByteBufferPool bufferPool) {
         super();
         this.delegate = delegate;
+        this.bufferPool = bufferPool;
     }
     
     @Override
-    public synchronized final void connect() throws IOException {
-        delegate.connect();
+    public final void connect() throws IOException {
+        ioLock.lock();
+        try {
+            delegate.connect();
+            onConnect();
+        } finally {
+            ioLock.unlock();
+        }
     }
     
     @Override
-    public synchronized final void disconnect() throws IOException {
-        delegate.disconnect();
+    public final void disconnect() throws IOException {
+        ioLock.lock();
+        try {
+            try {
+                onDisconnect();
+            } finally {
+                try {
+                    delegate.disconnect();
+                } finally {
+                    onDisconnected();
+                }
+            }
+        } finally {
+            ioLock.unlock();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult write(byte[] command) throws IOException {
+    public IoManagerResult write(byte[] command) throws IOException {
         return write(command, null);
     }
     
     @Override
-    public synchronized IoManagerResult write(byte[] command, IoProtocolHandler protocolHandler)
+    public IoManagerResult write(byte[] command, IoProtocolHandler protocolHandler)
     		throws IOException {
-    	IoManagerResult result = new IoManagerResult();
-        result.requestStartTime = System.currentTimeMillis();
-        
-        OutputStream os = getOutputStream();
+        ioLock.lock();
+        try {
+        	IoManagerResult result = new IoManagerResult();
+            result.requestStartTime = System.currentTimeMillis();
+            result.requestStartNanoTime = System.nanoTime();
         
-        byte[] bytesToSend = command;
-        if (protocolHandler != null) {
-        	bytesToSend = protocolHandler.wrapRequest(bytesToSend);
-        }
+            OutputStream os = getOutputStream();
         
-        result.requestTxStartTime = System.currentTimeMillis();
-        synchronized (this) {
-	        os.write(bytesToSend);
-	        os.flush();
-        }
-        result.requestTxEndTime = System.currentTimeMillis();
+            ByteBuffer wrapped = null;
+            try {
+		        byte[] bytesToSend = command;
+		        int offset = 0;
+		        int length = command.length;
+		        if (protocolHandler != null) {
+		        	wrapped = IoProtocolHandlers.wrapRequest(
+		        			ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler),
+		        			command, bufferPool);
+		        	bytesToSend = wrapped.array();
+		        	offset = wrapped.arrayOffset() + wrapped.position();
+		        	length = wrapped.remaining();
+		        }
+	        
+		        result.requestTxStartTime = System.currentTimeMillis();
+		        result.requestTxStartNanoTime = System.nanoTime();
+		        os.write(bytesToSend, offset, length);
+		        os.flush();
+		        result.requestTxEndTime = System.currentTimeMillis();
+		        result.requestTxEndNanoTime = System.nanoTime();
+            } finally {
+            	bufferPool.release(wrapped);
+            }
         
-        getLogger().debug("Wrote bytes {}", command);
+            getLogger().debug("Wrote bytes {}", command);
         
-        result.requestRxStartTime = result.requestTxEndTime;
-        result.requestRxEndTime = result.requestTxEndTime;
-        result.requestEndTime = System.currentTimeMillis();
+            result.requestRxStartTime = result.requestTxEndTime;
+            result.requestRxStartNanoTime = result.requestTxEndNanoTime;
+            result.requestRxEndTime = result.requestTxEndTime;
+            result.requestRxEndNanoTime = result.requestTxEndNanoTime;
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
         
-        return result;
+            return result;
+        } finally {
+            ioLock.unlock();
+        }
     }
 
     @Override
@@ -94,31 +154,77 @@ public abstract class AbstractIoManager implements IoManager {
     	IoManagerResult result = new IoManagerResult();
     	
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	
-    	byte[] bytesToSend = command;
-        if (protocolHandler != null) {
-        	bytesToSend = protocolHandler.wrapRequest(bytesToSend);
-        }
-    	
-        synchronized (this) {
+        ioLock.lock();
+        try {
 	    	flushAll();
 	    	
-	    	IoManagerResult writeResult = write(bytesToSend, protocolHandler);
+	    	IoManagerResult writeResult = write(command, protocolHandler);
 	    	result.requestTxStartTime = writeResult.requestTxStartTime;
+	    	result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
 	    	result.requestTxEndTime = writeResult.requestTxEndTime;
+	    	result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
 	    	
 	    	delay(delay);
 	    	
 	    	IoManagerResult readResult = read(protocolHandler);
 	    	result.result = readResult.result;
 	    	result.requestRxStartTime = readResult.requestRxStartTime;
+	    	result.requestRxStartNanoTime = readResult.requestRxStartNanoTime;
 	    	result.requestRxEndTime = readResult.requestRxEndTime;
+	    	result.requestRxEndNanoTime = readResult.requestRxEndNanoTime;
 	    	result.requestEndTime = System.currentTimeMillis();
+	    	result.requestEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
         }
     	
         return result;
     }
     
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException {
+        return writeAndReadResponse(command, maxDelay, detector, null);
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException {
+        IoManagerResult result = new IoManagerResult();
+        result.requestStartTime = System.currentTimeMillis();
+        result.requestStartNanoTime = System.nanoTime();
+        
+        ioLock.lock();
+        try {
+            flushAll();
+            
+            IoManagerResult writeResult = write(command, protocolHandler);
+            result.requestTxStartTime = writeResult.requestTxStartTime;
+            result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
+            result.requestTxEndTime = writeResult.requestTxEndTime;
+            result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
+            
+            result.requestRxStartTime = System.currentTimeMillis();
+            result.requestRxStartNanoTime = System.nanoTime();
+            readResponse(detector, writeResult.requestTxEndNanoTime
+                    + TimeUnit.MILLISECONDS.toNanos(maxDelay));
+            result.requestRxEndTime = System.currentTimeMillis();
+            result.requestRxEndNanoTime = System.nanoTime();
+            
+            result.result = unwrapReadBuffer(protocolHandler);
+        } finally {
+            ioLock.unlock();
+        }
+        
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
+        
+        return result;
+    }
+    
     @Override
 	public IoManagerResult writeAndRead(byte[] command,
 			byte[] result, long timeout) throws IOException {
@@ -130,29 +236,93 @@ public abstract class AbstractIoManager implements IoManager {
     		long timeout, IoProtocolHandler protocolHandler) throws IOException {
     	IoManagerResult result = new IoManagerResult();
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	
-    	byte[] bytesToSend = command;
-        if (protocolHandler != null) {
-        	bytesToSend = protocolHandler.wrapRequest(bytesToSend);
-        }
-    	
-        synchronized (this) {
+        ioLock.lock();
+        try {
 	    	flushAll();
 	    	
 	    	IoManagerResult writeResult = write(command, protocolHandler);
 	    	result.requestTxStartTime = writeResult.requestTxStartTime;
+	    	result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
 	    	result.requestTxEndTime = writeResult.requestTxEndTime;
+	    	result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
 	    	
-	    	IoManagerResult readResult = read(out, timeout);
+	    	IoManagerResult readResult = read(out, timeout, protocolHandler);
 	    	result.result = readResult.result;
 	    	result.requestRxStartTime = readResult.requestRxStartTime;
+	    	result.requestRxStartNanoTime = readResult.requestRxStartNanoTime;
 	    	result.requestRxEndTime = readResult.requestRxEndTime;
+	    	result.requestRxEndNanoTime = readResult.requestRxEndNanoTime;
 	    	result.requestEndTime = System.currentTimeMillis();
+	    	result.requestEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
         }
         
         return result;
     }
     
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] out,
+            long timeout) throws IOException {
+        return writeAndReadPipelined(commands, out, timeout, null);
+    }
+    
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] out,
+            long timeout, IoProtocolHandler protocolHandler) throws IOException {
+        if (commands.length != out.length) {
+            throw new IllegalArgumentException("The number of commands, " + commands.length
+                    + ", does not match the number of response buffers, " + out.length + ".");
+        }
+        
+        IoManagerResult[] results = new IoManagerResult[commands.length];
+        
+        ioLock.lock();
+        try {
+            flushAll();
+            
+            for (int i = 0; i < commands.length; i++) {
+                IoManagerResult result = new IoManagerResult();
+                result.requestStartTime = System.currentTimeMillis();
+                result.requestStartNanoTime = System.nanoTime();
+                
+                IoManagerResult writeResult = write(commands[i], protocolHandler);
+                result.requestTxStartTime = writeResult.requestTxStartTime;
+                result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
+                result.requestTxEndTime = writeResult.requestTxEndTime;
+                result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
+                results[i] = result;
+            }
+            
+            for (int i = 0; i < commands.length; i++) {
+                IoManagerResult result = results[i];
+                
+                IoManagerResult readResult;
+                try {
+                    readResult = read(out[i], timeout, protocolHandler);
+                } catch (IOException e) {
+                    throw new PipelinedIoException("Error reading the response to pipelined "
+                            + "request " + i + " of " + commands.length + ".",
+                            Arrays.copyOf(results, i), e);
+                }
+                
+                result.result = readResult.result;
+                result.requestRxStartTime = readResult.requestRxStartTime;
+                result.requestRxStartNanoTime = readResult.requestRxStartNanoTime;
+                result.requestRxEndTime = readResult.requestRxEndTime;
+                result.requestRxEndNanoTime = readResult.requestRxEndNanoTime;
+                result.requestEndTime = System.currentTimeMillis();
+                result.requestEndNanoTime = System.nanoTime();
+            }
+        } finally {
+            ioLock.unlock();
+        }
+        
+        return results;
+    }
+    
     @Override
     public IoManagerResult read() throws IOException {
     	return read(null);
@@ -163,75 +333,492 @@ public abstract class AbstractIoManager implements IoManager {
     		throws IOException {
     	IoManagerResult result = new IoManagerResult();
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	result.requestTxStartTime = result.requestStartTime;
+    	result.requestTxStartNanoTime = result.requestStartNanoTime;
     	result.requestTxEndTime = result.requestStartTime;
+    	result.requestTxEndNanoTime = result.requestStartNanoTime;
     	
-        InputStream is = getInputStream();
-        List<Byte> read = new ArrayList<Byte>();
+        ioLock.lock();
+        try {
+        	result.requestRxStartTime = System.currentTimeMillis();
+        	result.requestRxStartNanoTime = System.nanoTime();
+        	
+        	readBuffer.clear();
+        	readAllAvailable(readBuffer);
+        	
+        	result.requestRxEndTime = System.currentTimeMillis();
+        	result.requestRxEndNanoTime = System.nanoTime();
+        	
+        	result.result = unwrapReadBuffer(protocolHandler);
+        } finally {
+            ioLock.unlock();
+        }
         
-        result.requestRxStartTime = System.currentTimeMillis();
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
         
-        synchronized (this) {
-	        while (is.available() > 0) {
-	            byte b = (byte) is.read();
-	            read.add(b);
-	        }
-        }
+        return result;
+    }
     
-        byte[] out = new byte[read.size()];
-        int i = 0;
-        for (Byte b : read) {
-        	out[i++] = b;
+    @Override
+    public IoManagerResult read(byte[] result, long timeout) throws IOException {
+    	return read(result, timeout, null);
+    }
+    
+    @Override
+    public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        IoManagerResult result = new IoManagerResult();
+        result.requestStartTime = System.currentTimeMillis();
+        result.requestStartNanoTime = System.nanoTime();
+        result.requestTxStartTime = result.requestStartTime;
+        result.requestTxStartNanoTime = result.requestStartNanoTime;
+        result.requestTxEndTime = result.requestStartTime;
+        result.requestTxEndNanoTime = result.requestStartNanoTime;
+        
+        ioLock.lock();
+        try {
+            result.requestRxStartTime = System.currentTimeMillis();
+            result.requestRxStartNanoTime = System.nanoTime();
+            result.result = readUntilDelimiter(delimiter, maxLength, timeout);
+            result.requestRxEndTime = System.currentTimeMillis();
+            result.requestRxEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
         }
         
-        result.requestRxEndTime = System.currentTimeMillis();
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
         
-        if (protocolHandler != null) {
-        	result.result = protocolHandler.unwrapResponse(out);
-        } else {
-        	result.result = out;
+        return result;
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+            int maxLength, long timeout) throws IOException {
+        IoManagerResult result = new IoManagerResult();
+        result.requestStartTime = System.currentTimeMillis();
+        result.requestStartNanoTime = System.nanoTime();
+        
+        ioLock.lock();
+        try {
+            flushAll();
+            
+            IoManagerResult writeResult = write(command);
+            result.requestTxStartTime = writeResult.requestTxStartTime;
+            result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
+            result.requestTxEndTime = writeResult.requestTxEndTime;
+            result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
+            
+            result.requestRxStartTime = System.currentTimeMillis();
+            result.requestRxStartNanoTime = System.nanoTime();
+            result.result = readUntilDelimiter(delimiter, maxLength, timeout);
+            result.requestRxEndTime = System.currentTimeMillis();
+            result.requestRxEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
         }
         
-        getLogger().debug("Read bytes {}", out);
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
+        
+        return result;
+    }
+    
+    @Override
+    public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout) throws IOException {
+        IoManagerResult result = new IoManagerResult();
+        result.requestStartTime = System.currentTimeMillis();
+        result.requestStartNanoTime = System.nanoTime();
+        result.requestTxStartTime = result.requestStartTime;
+        result.requestTxStartNanoTime = result.requestStartNanoTime;
+        result.requestTxEndTime = result.requestStartTime;
+        result.requestTxEndNanoTime = result.requestStartNanoTime;
+        
+        ioLock.lock();
+        try {
+            result.requestRxStartTime = System.currentTimeMillis();
+            result.requestRxStartNanoTime = System.nanoTime();
+            result.result = readFrameInternal(decoder, timeout);
+            result.requestRxEndTime = System.currentTimeMillis();
+            result.requestRxEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
+        }
         
         result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
         
         return result;
     }
     
     @Override
-    public IoManagerResult read(byte[] result, long timeout) throws IOException {
-    	return read(result, timeout, null);
+    public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+            long timeout) throws IOException {
+        IoManagerResult result = new IoManagerResult();
+        result.requestStartTime = System.currentTimeMillis();
+        result.requestStartNanoTime = System.nanoTime();
+        
+        ioLock.lock();
+        try {
+            flushAll();
+            
+            IoManagerResult writeResult = write(command);
+            result.requestTxStartTime = writeResult.requestTxStartTime;
+            result.requestTxStartNanoTime = writeResult.requestTxStartNanoTime;
+            result.requestTxEndTime = writeResult.requestTxEndTime;
+            result.requestTxEndNanoTime = writeResult.requestTxEndNanoTime;
+            
+            result.requestRxStartTime = System.currentTimeMillis();
+            result.requestRxStartNanoTime = System.nanoTime();
+            result.result = readFrameInternal(decoder, timeout);
+            result.requestRxEndTime = System.currentTimeMillis();
+            result.requestRxEndNanoTime = System.nanoTime();
+        } finally {
+            ioLock.unlock();
+        }
+        
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
+        
+        return result;
+    }
+    
+    /**
+     * Reads up to {@code length} bytes that are available on the input without blocking
+     * into {@code buffer} starting at {@code offset}.  Unlike {@link #read()}, this method
+     * allocates nothing and performs no protocol handling, making it suitable for tight
+     * polling loops that reuse a single buffer.
+     * 
+     * @param buffer
+     *            the buffer to read into
+     * @param offset
+     *            the offset in {@code buffer} at which to start storing bytes
+     * @param length
+     *            the maximum number of bytes to read
+     * 
+     * @return the number of bytes read, 0 if no bytes were available
+     */
+    public int readAvailable(byte[] buffer, int offset, int length)
+            throws IOException {
+        ioLock.lock();
+        try {
+            InputStream is = getInputStream();
+            int bytesRead = readPending(buffer, offset, length);
+            int available;
+        
+            while (bytesRead < length && (available = is.available()) > 0) {
+                int bytesJustRead = is.read(buffer, offset + bytesRead,
+                        Math.min(available, length - bytesRead));
+                if (bytesJustRead == -1) {
+                    break;
+                }
+            
+                bytesRead += bytesJustRead;
+            }
+        
+            return bytesRead;
+        } finally {
+            ioLock.unlock();
+        }
     }
     
     @Override
-    public synchronized void flushAll() throws IOException {
-        getOutputStream().flush();
+    public void flushAll() throws IOException {
+        ioLock.lock();
+        try {
+            getOutputStream().flush();
+            discardAvailable();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Reads all available bytes on the input into {@code buffer}, growing it as needed.
+     * 
+     * @param buffer
+     *            the buffer to append the read bytes to
+     * 
+     * @return the number of bytes read
+     */
+    protected final int readAllAvailable(ByteArrayBuffer buffer)
+            throws IOException {
+        ioLock.lock();
+        try {
+            int start = buffer.size();
+            int bytesJustRead;
         
-        InputStream is = getInputStream();
-        Logger log = getLogger();
+            do {
+                if (buffer.remaining() == 0) {
+                    buffer.ensureCapacity(buffer.size() + 1);
+                }
+            
+                bytesJustRead = readAvailable(buffer.array(), buffer.size(),
+                        buffer.remaining());
+                buffer.setSize(buffer.size() + bytesJustRead);
+            } while (bytesJustRead > 0);
         
-        if (is.available() > 0) {
-            StringBuilder b = null;
-            int bytesRead = 0;       
-            if (getLogger().isDebugEnabled()) {
-                b = new StringBuilder();
+            return buffer.size() - start;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Moves up to {@code length} bytes that were read past the delimiter of a previous
+     * {@link #readUntil(byte[], int, long)} response into {@code buffer}.  Implementations
+     * must serve these bytes before any new input and call this method with the IO lock
+     * held.
+     *
+     * @return the number of bytes moved
+     */
+    protected final int readPending(byte[] buffer, int offset, int length) {
+        int bytesRead = Math.min(length, pending.size() - pendingPosition);
+        if (bytesRead > 0) {
+            System.arraycopy(pending.array(), pendingPosition, buffer, offset, bytesRead);
+            pendingPosition += bytesRead;
+            if (pendingPosition == pending.size()) {
+                pending.clear();
+                pendingPosition = 0;
             }
-            while(is.available() > 0) {
-                if (log.isDebugEnabled()) {
-                    b.append(String.format("%02x ", is.read()));
-                    bytesRead++;
-                } else {
-                    is.read();
+        }
+        
+        return bytesRead;
+    }
+    
+    /**
+     * Reads until {@code delimiter} has been received, returning the bytes up to and
+     * including the delimiter and keeping any bytes that follow it for the next read.
+     * Each chunk of input is appended to the read buffer once and scanned once.
+     */
+    private byte[] readUntilDelimiter(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        if (delimiterMatcher == null || !delimiterMatcher.isFor(delimiter)) {
+            delimiterMatcher = new DelimiterMatcher(delimiter);
+        } else {
+            delimiterMatcher.reset();
+        }
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        readBuffer.clear();
+        
+        while (true) {
+            int size = readBuffer.size();
+            if (readBuffer.remaining() == 0 && size < maxLength) {
+                readBuffer.ensureCapacity(size + 1);
+            }
+            
+            int bytesRead = readAvailable(readBuffer.array(), size,
+                    Math.min(readBuffer.remaining(), maxLength - size));
+            
+            if (bytesRead > 0) {
+                readBuffer.setSize(size + bytesRead);
+                int end = delimiterMatcher.find(readBuffer.array(), size, size + bytesRead);
+                if (end >= 0) {
+                    unread(readBuffer.array(), end, readBuffer.size() - end);
+                    
+                    if (getLogger().isDebugEnabled()) {
+                        getLogger().debug("Read bytes {}",
+                                Arrays.copyOf(readBuffer.array(), end));
+                    }
+                    
+                    return Arrays.copyOf(readBuffer.array(), end);
+                }
+            } else if (size >= maxLength) {
+                throw new IOException("Error fulfilling read request.  The delimiter was not "
+                        + "found in the first " + maxLength + " bytes.");
+            } else {
+                long now = System.nanoTime();
+                if (now - deadline >= 0) {
+                    throw new IOException("Error fulfilling read request.  Read " + size
+                            + " bytes without finding the delimiter before exceeding "
+                            + "timeout of " + timeout + "ms.");
+                }
+                
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted after reading " + size
+                            + " bytes without finding the delimiter.");
                 }
+                
+                awaitInput(deadline);
+            }
+        }
+    }
+    
+    /**
+     * Reads until {@code decoder} decodes a frame, keeping any bytes that follow the frame
+     * for the next read.  Consumed bytes are compacted out of the read buffer so that
+     * garbage skipped while resynchronizing does not accumulate.
+     */
+    private byte[] readFrameInternal(IoFrameDecoder decoder, long timeout)
+            throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        readBuffer.clear();
+        
+        while (true) {
+            int size = readBuffer.size();
+            if (readBuffer.remaining() == 0) {
+                readBuffer.ensureCapacity(size + 1);
             }
             
-            if (log.isDebugEnabled()) {
-                log.debug("Discarded {} bytes: {}", bytesRead, b);
+            int bytesRead = readAvailable(readBuffer.array(), size, readBuffer.remaining());
+            
+            if (bytesRead > 0) {
+                size += bytesRead;
+                ByteBuffer in = ByteBuffer.wrap(readBuffer.array(), 0, size);
+                byte[] frame = decoder.decode(in);
+                int consumed = in.position();
+                
+                if (frame != null) {
+                    unread(readBuffer.array(), consumed, size - consumed);
+                    readBuffer.setSize(consumed);
+                    
+                    if (getLogger().isDebugEnabled()) {
+                        getLogger().debug("Read frame {}", frame);
+                    }
+                    
+                    return frame;
+                }
+                
+                System.arraycopy(readBuffer.array(), consumed, readBuffer.array(), 0,
+                        size - consumed);
+                readBuffer.setSize(size - consumed);
+            } else {
+                long now = System.nanoTime();
+                if (now - deadline >= 0) {
+                    throw new IOException("Error fulfilling read request.  Holding " + size
+                            + " bytes without a complete frame after exceeding timeout of "
+                            + timeout + "ms.");
+                }
+                
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while holding " + size
+                            + " bytes without a complete frame.");
+                }
+                
+                awaitInput(deadline);
+            }
+        }
+    }
+    
+    /**
+     * Returns {@code length} bytes to the front of the pending input.
+     */
+    private void unread(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        
+        byte[] remainder = null;
+        if (pendingPosition < pending.size()) {
+            remainder = Arrays.copyOfRange(pending.array(), pendingPosition, pending.size());
+        }
+        
+        pending.clear();
+        pendingPosition = 0;
+        pending.append(bytes, offset, length);
+        if (remainder != null) {
+            pending.append(remainder, 0, remainder.length);
+        }
+    }
+    
+    /**
+     * Reads into the read buffer until {@code detector} reports the response complete or
+     * {@code deadlineNanoTime} is reached.
+     */
+    private void readResponse(ResponseCompletionDetector detector, long deadlineNanoTime)
+            throws IOException {
+        readBuffer.clear();
+        long lastByteNanoTime = System.nanoTime();
+        
+        while (true) {
+            long now = System.nanoTime();
+            if (readAllAvailable(readBuffer) > 0) {
+                lastByteNanoTime = now;
             }
+            
+            if (readBuffer.size() > 0 && detector.isComplete(readBuffer.array(),
+                    readBuffer.size(), now - lastByteNanoTime)) {
+                break;
+            }
+            
+            if (now - deadlineNanoTime >= 0) {
+                break;
+            }
+            
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted after reading "
+                        + readBuffer.size() + " bytes of the response.");
+            }
+            
+            // Wake periodically so that idle gaps are detected without new input.
+            awaitInput(deadlineNanoTime - now > MAX_INPUT_WAIT_NANOS
+                    ? now + MAX_INPUT_WAIT_NANOS : deadlineNanoTime);
+        }
+    }
+    
+    /**
+     * Returns the contents of the read buffer, unwrapped by {@code protocolHandler} if
+     * not {@code null}.
+     */
+    private byte[] unwrapReadBuffer(IoProtocolHandler protocolHandler) throws IOException {
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("Read bytes {}", readBuffer.toByteArray());
+        }
+        
+        if (protocolHandler != null) {
+            ByteBuffer wrapped = ByteBuffer.wrap(readBuffer.array(), 0, readBuffer.size());
+            ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler).unwrapResponse(wrapped);
+            byte[] unwrapped = new byte[wrapped.remaining()];
+            wrapped.get(unwrapped);
+            return unwrapped;
+        } else {
+            return readBuffer.toByteArray();
         }
+    }
+    
+    /**
+     * Discards all available input.
+     */
+    protected final void discardAvailable() throws IOException {
+        ioLock.lock();
+        try {
+            Logger log = getLogger();
+        
+            readBuffer.clear();
+            int bytesRead = readAllAvailable(readBuffer);
         
-        log.debug("Flushed streams.");
+            if (bytesRead > 0 && log.isDebugEnabled()) {
+                StringBuilder b = new StringBuilder();
+                byte[] discarded = readBuffer.array();
+                for (int i = 0; i < bytesRead; i++) {
+                    b.append(String.format("%02x ", discarded[i]));
+                }
+            
+                log.debug("Discarded {} bytes: {}", bytesRead, b);
+            }
+        
+            log.debug("Flushed streams.");
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Waits until input may have become available or until {@code deadlineNanoTime},
+     * whichever comes first.  Callers must tolerate early returns.  The default
+     * implementation parks for a short interval, as streams offer no way to wait for
+     * input.
+     *
+     * @param deadlineNanoTime the {@link System#nanoTime()} by which to return
+     */
+    protected void awaitInput(long deadlineNanoTime) throws IOException {
+        long remaining = deadlineNanoTime - System.nanoTime();
+        if (remaining > 0) {
+            LockSupport.parkNanos(Math.min(remaining, INPUT_POLL_INTERVAL_NANOS));
+        }
     }
     
     protected void delay(long delayPeriod) {
@@ -242,6 +829,53 @@ public abstract class AbstractIoManager implements IoManager {
         }
     }
     
+    /**
+     * Hook invoked after the delegate socket manager has connected.  The default
+     * implementation does nothing.
+     *
+     * @throws IOException if there is an error preparing for communication
+     */
+    protected void onConnect() throws IOException {
+        // No-op
+    }
+    
+    /**
+     * Hook invoked before the delegate socket manager is disconnected.  The default
+     * implementation does nothing.
+     *
+     * @throws IOException if there is an error releasing resources
+     */
+    protected void onDisconnect() throws IOException {
+        // No-op
+    }
+    
+    /**
+     * Hook invoked after the delegate socket manager has been disconnected, even if
+     * disconnecting failed.  The default implementation does nothing.
+     *
+     * @throws IOException if there is an error releasing resources
+     */
+    protected void onDisconnected() throws IOException {
+        // No-op
+    }
+    
+    /**
+     * Returns the lock that serializes IO through this manager.  A lock is used rather than
+     * the monitor of this manager so that a virtual thread blocked on IO while holding it
+     * does not pin its carrier thread.  Subclasses must hold this lock, not synchronize on
+     * this manager, when accessing the streams.
+     */
+    protected final ReentrantLock getIoLock() {
+        return ioLock;
+    }
+    
+    /**
+     * Returns the pool from which buffers for protocol handling are acquired.
+     */
+    protected final ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+    
     protected final SocketManager getDelegate() {
         return this.delegate;
     }
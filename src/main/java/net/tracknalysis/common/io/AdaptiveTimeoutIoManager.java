@@ -0,0 +1,550 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tracknalysis.common.metrics.LatencyHistogram;
+
+/**
+ * Decorator that replaces the caller supplied timeout of fixed-length reads with one
+ * learned from the observed response times, so that a dropped response stalls the link
+ * only for as long as a response could plausibly take rather than for the full,
+ * conservatively chosen timeout.
+ * <p/>
+ * Response times are tracked per signature, the request bytes and the response length,
+ * of {@link #writeAndRead(byte[], byte[], long, IoProtocolHandler)} and
+ * {@link #read(byte[], long, IoProtocolHandler)} calls.  Once a signature has enough
+ * samples, its timeout is a high percentile of its response times multiplied by a
+ * headroom factor, plus the time to transfer the response at the byte rate of the link.
+ * The result is bounded by the configured minimum and maximum and never exceeds the
+ * caller's timeout.  After a learned timeout expires, the next call for the signature
+ * uses the caller's timeout so that a genuinely slower response is learned rather than
+ * repeatedly timed out.
+ * <p/>
+ * Other operations are passed through unchanged.
+ *
+ * @author David Valeri
+ */
+public class AdaptiveTimeoutIoManager implements IoManager {
+
+    public static final double DEFAULT_PERCENTILE = 99.9;
+    public static final double DEFAULT_HEADROOM = 1.5;
+    public static final long DEFAULT_MIN_TIMEOUT = 20;
+    public static final int DEFAULT_MIN_SAMPLES = 32;
+
+    private static final int MAX_SIGNATURES = 1024;
+    private static final int MIN_RATE_SAMPLE_BYTES = 32;
+    private static final double RATE_SMOOTHING = 0.1;
+
+    private final IoManager delegate;
+    private final ConcurrentMap<Signature, SignatureStatistics> statistics =
+            new ConcurrentHashMap<Signature, SignatureStatistics>();
+
+    private volatile boolean adaptive = true;
+    private volatile double percentile = DEFAULT_PERCENTILE;
+    private volatile double headroom = DEFAULT_HEADROOM;
+    private volatile long minTimeout = DEFAULT_MIN_TIMEOUT;
+    private volatile long maxTimeout = Long.MAX_VALUE;
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private volatile double configuredNanosPerByte;
+    // Updated without coordination; a lost update only delays convergence.
+    private volatile double learnedNanosPerByte;
+
+    public AdaptiveTimeoutIoManager(IoManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Enables or disables adaptive timeouts.  Statistics are still gathered while
+     * disabled.  Enabled by default.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Sets the percentile of the response times on which timeouts are based.  Defaults
+     * to {@value #DEFAULT_PERCENTILE}.
+     */
+    public void setPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be in (0, 100].");
+        }
+
+        this.percentile = percentile;
+    }
+
+    public double getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Sets the factor by which the percentile response time is multiplied.  Defaults to
+     * {@value #DEFAULT_HEADROOM}.
+     */
+    public void setHeadroom(double headroom) {
+        if (headroom < 1) {
+            throw new IllegalArgumentException("The headroom must be at least 1.");
+        }
+
+        this.headroom = headroom;
+    }
+
+    public long getMinTimeout() {
+        return minTimeout;
+    }
+
+    /**
+     * Sets the lower bound, in milliseconds, of learned timeouts.  Defaults to
+     * {@value #DEFAULT_MIN_TIMEOUT}.
+     */
+    public void setMinTimeout(long minTimeout) {
+        this.minTimeout = minTimeout;
+    }
+
+    public long getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    /**
+     * Sets the upper bound, in milliseconds, of learned timeouts.  The caller's timeout
+     * is always an upper bound as well.  Unbounded by default.
+     */
+    public void setMaxTimeout(long maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Sets the number of responses that must be observed for a signature before its
+     * timeout is learned.  Defaults to {@value #DEFAULT_MIN_SAMPLES}.
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Sets the byte rate of the link, for example derived from the baud rate of a serial
+     * link.  If not set, or set to 0, the rate is learned from the receive phase of
+     * responses of at least 32 bytes.
+     *
+     * @param bytesPerSecond the rate of the link in bytes per second
+     */
+    public void setByteRate(double bytesPerSecond) {
+        configuredNanosPerByte = bytesPerSecond > 0
+                ? TimeUnit.SECONDS.toNanos(1) / bytesPerSecond : 0;
+    }
+
+    /**
+     * Returns the configured or learned time, in nanoseconds, to receive a byte on the
+     * link, 0 if unknown.
+     */
+    public double getNanosPerByte() {
+        double nanosPerByte = configuredNanosPerByte;
+        return nanosPerByte > 0 ? nanosPerByte : learnedNanosPerByte;
+    }
+
+    /**
+     * Returns the timeout, in milliseconds, that is applied to the next exchange with the
+     * given signature.
+     *
+     * @param command the request bytes, {@code null} for a read without a request
+     * @param responseLength the length of the response
+     * @param timeout the caller's timeout in milliseconds
+     */
+    public long getTimeout(byte[] command, int responseLength, long timeout) {
+        return getTimeout(statistics.get(new Signature(command, responseLength)),
+                responseLength, timeout);
+    }
+
+    /**
+     * Returns a point in time view of the statistics of every tracked signature.
+     */
+    public Collection<SignatureStatistics> getStatistics() {
+        return new ArrayList<SignatureStatistics>(statistics.values());
+    }
+
+    /**
+     * Discards all learned statistics, reverting to the caller supplied timeouts until
+     * enough responses have been observed again.
+     */
+    public void resetStatistics() {
+        statistics.clear();
+        learnedNanosPerByte = 0;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        delegate.connect();
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        delegate.disconnect();
+    }
+
+    @Override
+    public IoManagerResult write(byte[] command) throws IOException {
+        return delegate.write(command);
+    }
+
+    @Override
+    public IoManagerResult write(byte[] command, IoProtocolHandler protocolHandler)
+            throws IOException {
+        return delegate.write(command, protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, long delay) throws IOException {
+        return delegate.writeAndRead(command, delay);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, long delay,
+            IoProtocolHandler protocolHandler) throws IOException {
+        return delegate.writeAndRead(command, delay, protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+            int maxLength, long timeout) throws IOException {
+        return delegate.writeAndReadUntil(command, delimiter, maxLength, timeout);
+    }
+
+    @Override
+    public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        return delegate.readUntil(delimiter, maxLength, timeout);
+    }
+
+    @Override
+    public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+            long timeout) throws IOException {
+        return delegate.writeAndReadFrame(command, decoder, timeout);
+    }
+
+    @Override
+    public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout)
+            throws IOException {
+        return delegate.readFrame(decoder, timeout);
+    }
+
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException {
+        return delegate.writeAndReadResponse(command, maxDelay, detector);
+    }
+
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException {
+        return delegate.writeAndReadResponse(command, maxDelay, detector, protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout)
+            throws IOException {
+        return writeAndRead(command, result, timeout, null);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        return exchange(command, result, timeout, protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results,
+            long timeout) throws IOException {
+        return delegate.writeAndReadPipelined(commands, results, timeout);
+    }
+
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results,
+            long timeout, IoProtocolHandler protocolHandler) throws IOException {
+        return delegate.writeAndReadPipelined(commands, results, timeout, protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult read() throws IOException {
+        return delegate.read();
+    }
+
+    @Override
+    public IoManagerResult read(IoProtocolHandler protocolHandler) throws IOException {
+        return delegate.read(protocolHandler);
+    }
+
+    @Override
+    public IoManagerResult read(byte[] result, long timeout) throws IOException {
+        return read(result, timeout, null);
+    }
+
+    @Override
+    public IoManagerResult read(byte[] result, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        return exchange(null, result, timeout, protocolHandler);
+    }
+
+    @Override
+    public void flushAll() throws IOException {
+        delegate.flushAll();
+    }
+
+    private IoManagerResult exchange(byte[] command, byte[] out, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        SignatureStatistics signatureStatistics = getOrCreateStatistics(command, out.length);
+        long appliedTimeout = getTimeout(signatureStatistics, out.length, timeout);
+
+        long start = System.nanoTime();
+        IoManagerResult result;
+        try {
+            if (command == null) {
+                result = delegate.read(out, appliedTimeout, protocolHandler);
+            } else {
+                result = delegate.writeAndRead(command, out, appliedTimeout, protocolHandler);
+            }
+        } catch (IOException e) {
+            if (signatureStatistics != null) {
+                signatureStatistics.failed(appliedTimeout < timeout,
+                        System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(
+                                appliedTimeout));
+            }
+            throw e;
+        }
+
+        if (signatureStatistics != null) {
+            long responseStart = command == null
+                    ? result.getRequestRxStartNanoTime() : result.getRequestTxEndNanoTime();
+            signatureStatistics.succeeded(result.getRequestRxEndNanoTime() - responseStart);
+        }
+
+        if (out.length >= MIN_RATE_SAMPLE_BYTES) {
+            long rxDuration = result.getRequestRxEndNanoTime()
+                    - result.getRequestRxStartNanoTime();
+            if (rxDuration > 0) {
+                double sample = (double) rxDuration / out.length;
+                double current = learnedNanosPerByte;
+                learnedNanosPerByte = current == 0
+                        ? sample : current + RATE_SMOOTHING * (sample - current);
+            }
+        }
+
+        return result;
+    }
+
+    private long getTimeout(SignatureStatistics signatureStatistics, int responseLength,
+            long timeout) {
+        if (!adaptive || signatureStatistics == null || signatureStatistics.probe
+                || signatureStatistics.histogram.getCount() < minSamples) {
+            return timeout;
+        }
+
+        double nanos = signatureStatistics.histogram.getValueAtPercentile(percentile)
+                * headroom + responseLength * getNanosPerByte();
+        long learnedTimeout = (long) Math.ceil(nanos / TimeUnit.MILLISECONDS.toNanos(1));
+
+        return Math.min(timeout, Math.min(maxTimeout, Math.max(minTimeout, learnedTimeout)));
+    }
+
+    /**
+     * Returns the statistics for the signature, or {@code null} if the signature is not
+     * tracked because the maximum number of signatures has been reached.
+     */
+    private SignatureStatistics getOrCreateStatistics(byte[] command, int responseLength) {
+        SignatureStatistics signatureStatistics =
+                statistics.get(new Signature(command, responseLength));
+
+        if (signatureStatistics == null && statistics.size() < MAX_SIGNATURES) {
+            Signature signature = new Signature(
+                    command == null ? null : command.clone(), responseLength);
+            SignatureStatistics newStatistics = new SignatureStatistics(signature);
+            signatureStatistics = statistics.putIfAbsent(signature, newStatistics);
+            if (signatureStatistics == null) {
+                signatureStatistics = newStatistics;
+            }
+        }
+
+        return signatureStatistics;
+    }
+
+    /**
+     * The response time statistics of a single request and response length combination.
+     */
+    public final class SignatureStatistics {
+
+        private final Signature signature;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong learnedTimeouts = new AtomicLong();
+        private volatile boolean probe;
+
+        SignatureStatistics(Signature signature) {
+            this.signature = signature;
+        }
+
+        /**
+         * Returns a copy of the request bytes, {@code null} for reads without a request.
+         */
+        public byte[] getCommand() {
+            return signature.command == null ? null : signature.command.clone();
+        }
+
+        public int getResponseLength() {
+            return signature.responseLength;
+        }
+
+        /**
+         * Returns the number of successful responses observed.
+         */
+        public long getSampleCount() {
+            return histogram.getCount();
+        }
+
+        /**
+         * Returns the response time, in nanoseconds, at {@code percentile}.
+         */
+        public long getResponseTimeAtPercentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Returns the timeout, in milliseconds, applied to the next exchange for a caller
+         * supplied timeout of {@code timeout}.
+         */
+        public long getTimeout(long timeout) {
+            return AdaptiveTimeoutIoManager.this.getTimeout(this,
+                    signature.responseLength, timeout);
+        }
+
+        /**
+         * Returns the number of failed exchanges.
+         */
+        public long getErrorCount() {
+            return errors.get();
+        }
+
+        /**
+         * Returns the number of exchanges that failed after their timeout had elapsed.
+         */
+        public long getTimeoutCount() {
+            return timeouts.get();
+        }
+
+        /**
+         * Returns the number of exchanges that timed out with a learned timeout shorter
+         * than the caller's.
+         */
+        public long getLearnedTimeoutCount() {
+            return learnedTimeouts.get();
+        }
+
+        void succeeded(long responseNanos) {
+            probe = false;
+            if (responseNanos > 0) {
+                histogram.record(responseNanos);
+            }
+        }
+
+        void failed(boolean shortened, boolean timedOut) {
+            errors.incrementAndGet();
+            if (timedOut) {
+                timeouts.incrementAndGet();
+                if (shortened) {
+                    learnedTimeouts.incrementAndGet();
+                    probe = true;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("SignatureStatistics [command=");
+            builder.append(Arrays.toString(signature.command));
+            builder.append(", responseLength=");
+            builder.append(signature.responseLength);
+            builder.append(", samples=");
+            builder.append(histogram.getCount());
+            builder.append(", p");
+            builder.append(percentile);
+            builder.append("=");
+            builder.append(TimeUnit.NANOSECONDS.toMicros(
+                    histogram.getValueAtPercentile(percentile)));
+            builder.append("us, errors=");
+            builder.append(errors.get());
+            builder.append(", timeouts=");
+            builder.append(timeouts.get());
+            builder.append(", learnedTimeouts=");
+            builder.append(learnedTimeouts.get());
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+
+    private static final class Signature {
+
+        private final byte[] command;
+        private final int responseLength;
+        private final int hash;
+
+        Signature(byte[] command, int responseLength) {
+            this.command = command;
+            this.responseLength = responseLength;
+            this.hash = 31 * Arrays.hashCode(command) + responseLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Signature)) {
+                return false;
+            }
+
+            Signature other = (Signature) obj;
+            return responseLength == other.responseLength
+                    && Arrays.equals(command, other.command);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.MpscRingBuffer;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+
+/**
+ * Decorator that moves the writing of debug log records off of the IO thread.  Records
+ * are copied into a preallocated ring and written to the delegate by a background writer,
+ * which flushes the delegate once per batch rather than once per record.  The caller
+ * therefore never waits on the file system, except when it explicitly calls
+ * {@link #flush()}.
+ * <p/>
+ * Durability is governed by the flush interval, by how many records may be written
+ * between syncs of the file descriptor, and by whether {@link #flush()}, which
+ * {@link DebugLogWriterIoManager} invokes on disconnect, also syncs.  When the ring is
+ * full, the {@link OverflowPolicy} decides between dropping the record and waiting for
+ * the background writer.  Either way the event is counted.
+ * <p/>
+ * Like all record writers, instances are not thread safe.  Calls must be serialized, as
+ * {@link DebugLogWriterIoManager} does.
+ *
+ * @author David Valeri
+ */
+public class AsyncDebugLogRecordWriter implements DebugLogRecordWriter {
+
+    /**
+     * What happens to a record written while the ring is full.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * The record is discarded.  The log then has a gap and can only be replayed up to
+         * it.
+         */
+        DROP,
+        /**
+         * The caller waits until the background writer frees a slot.
+         */
+        BLOCK;
+    }
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private static final AtomicInteger WRITER_THREAD_INSTANCE_COUNTER = new AtomicInteger();
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final DebugLogRecordWriter delegate;
+    private final FileDescriptor fileDescriptor;
+    private final MpscRingBuffer<Slot> freeSlots;
+    private final MpscRingBuffer<Slot> filledSlots;
+    private final int wakeThreshold;
+    private final WriterThread writerThread;
+
+    private volatile long flushIntervalNanos =
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_INTERVAL);
+    private volatile int syncEveryRecords;
+    private volatile boolean syncOnFlush = true;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private final AtomicLong overflows = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    // Only accessed by the caller
+    private long published;
+
+    // Written by the background writer
+    private volatile long written;
+    private volatile long flushedThrough;
+    private volatile long flushRequest;
+    private volatile Thread parkedWriter;
+
+    /**
+     * Creates a writer that writes {@code format} to {@code file}, syncing the file
+     * according to the durability policy.
+     *
+     * @param capacity the number of records the ring holds, rounded up to a power of two
+     */
+    public static AsyncDebugLogRecordWriter open(File file, DebugLogFormat format,
+            int capacity) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            return new AsyncDebugLogRecordWriter(format.newWriter(outputStream),
+                    outputStream.getFD(), capacity);
+        } catch (IOException e) {
+            outputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a writer whose background writer runs on a daemon platform thread.
+     *
+     * @param delegate the writer to which records are written
+     * @param fileDescriptor the descriptor to sync, or {@code null} if the delegate does
+     *            not write to a file, in which case syncs only flush
+     * @param capacity the number of records the ring holds, rounded up to a power of two
+     */
+    public AsyncDebugLogRecordWriter(DebugLogRecordWriter delegate,
+            FileDescriptor fileDescriptor, int capacity) {
+        this(delegate, fileDescriptor, capacity, ThreadFactories.platform(true));
+    }
+
+    /**
+     * @param delegate the writer to which records are written
+     * @param fileDescriptor the descriptor to sync, or {@code null} if the delegate does
+     *            not write to a file, in which case syncs only flush
+     * @param capacity the number of records the ring holds, rounded up to a power of two
+     * @param threadFactory the factory of the background writer thread
+     */
+    public AsyncDebugLogRecordWriter(DebugLogRecordWriter delegate,
+            FileDescriptor fileDescriptor, int capacity, ThreadFactory threadFactory) {
+        this.delegate = delegate;
+        this.fileDescriptor = fileDescriptor;
+        freeSlots = new MpscRingBuffer<Slot>(capacity);
+        filledSlots = new MpscRingBuffer<Slot>(capacity);
+        for (int i = 0; i < freeSlots.capacity(); i++) {
+            freeSlots.offer(new Slot());
+        }
+        wakeThreshold = Math.max(1, freeSlots.capacity() / 2);
+
+        writerThread = new WriterThread(threadFactory);
+        writerThread.start();
+    }
+
+    public long getFlushInterval(TimeUnit unit) {
+        return unit.convert(flushIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the longest time that a written record may wait before the delegate is
+     * flushed.  Defaults to 1000ms.
+     */
+    public void setFlushInterval(long flushInterval, TimeUnit unit) {
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("The flush interval must be positive.");
+        }
+
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+    }
+
+    public int getSyncEveryRecords() {
+        return syncEveryRecords;
+    }
+
+    /**
+     * Sets the number of records after which the file is synced, or 0 to only sync on
+     * {@link #flush()} and close.  Defaults to 0.
+     */
+    public void setSyncEveryRecords(int syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+    }
+
+    public boolean isSyncOnFlush() {
+        return syncOnFlush;
+    }
+
+    /**
+     * Sets whether {@link #flush()} and close also sync the file.  Defaults to true.
+     */
+    public void setSyncOnFlush(boolean syncOnFlush) {
+        this.syncOnFlush = syncOnFlush;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the handling of records written while the ring is full.  Defaults to
+     * {@link OverflowPolicy#DROP} so that logging never delays IO.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Returns the number of records that found the ring full, which were dropped or
+     * delayed depending on the overflow policy in effect at the time.
+     */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * Returns the number of records written to the delegate.
+     */
+    public long getWrittenRecordCount() {
+        return written;
+    }
+
+    /**
+     * Copies the record into the ring.  The record is written to the delegate later by
+     * the background writer.
+     *
+     * @throws IOException if the background writer has failed or the writer is closed
+     */
+    @Override
+    public void write(DebugLogRecord.Type type, long timestamp, byte[] command,
+            byte[] response) throws IOException {
+        checkState();
+
+        Slot slot = freeSlots.poll();
+        if (slot == null) {
+            overflows.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                wakeWriter();
+                return;
+            }
+
+            while ((slot = freeSlots.poll()) == null) {
+                wakeWriter();
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                checkState();
+            }
+        }
+
+        slot.set(type, timestamp, command, response);
+        filledSlots.offer(slot);
+        published++;
+
+        if (published - written >= wakeThreshold) {
+            wakeWriter();
+        }
+    }
+
+    /**
+     * Waits until the background writer has written and flushed every record written so
+     * far, syncing the file if {@link #isSyncOnFlush()}.
+     *
+     * @throws IOException if the background writer has failed or the writer is closed
+     */
+    @Override
+    public void flush() throws IOException {
+        checkState();
+
+        long target = published;
+        flushRequest = target;
+        while (flushedThrough < target) {
+            wakeWriter();
+            LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+            checkState();
+        }
+    }
+
+    /**
+     * Returns true, as records are flushed by the background writer according to the flush
+     * interval and sync settings.
+     */
+    @Override
+    public boolean isSelfFlushing() {
+        return true;
+    }
+
+    /**
+     * Writes any remaining records, flushes and, if {@link #isSyncOnFlush()}, syncs them
+     * and then closes the delegate.  Blocks until the writer thread has written the
+     * backlog, however long that takes.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        // The writer thread exits on its own once it has drained and committed the
+        // remaining records.  Cancelling it would give up after a timeout and leave it
+        // using the delegate, which is not thread safe, while the delegate is closed.
+        while (writerThread.isAlive()) {
+            wakeWriter();
+            LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+        }
+        delegate.close();
+
+        if (failure != null) {
+            throw new IOException("Error writing debug log records.", failure);
+        }
+    }
+
+    private void checkState() throws IOException {
+        if (failure != null) {
+            throw new IOException("Error writing debug log records.", failure);
+        } else if (closed) {
+            throw new IOException("The writer is closed.");
+        }
+    }
+
+    private void wakeWriter() {
+        Thread writer = parkedWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * A preallocated record.  Arrays are retained between records and only reallocated
+     * when the length changes, as polls tend to repeat the same lengths.
+     */
+    private static final class Slot {
+
+        private DebugLogRecord.Type type;
+        private long timestamp;
+        private byte[] command = new byte[0];
+        private byte[] response = new byte[0];
+
+        void set(DebugLogRecord.Type type, long timestamp, byte[] command, byte[] response) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.command = copy(command, this.command);
+            this.response = copy(response, this.response);
+        }
+
+        private static byte[] copy(byte[] source, byte[] target) {
+            if (source == null) {
+                return target;
+            }
+
+            if (target.length != source.length) {
+                target = new byte[source.length];
+            }
+
+            System.arraycopy(source, 0, target, 0, source.length);
+            return target;
+        }
+    }
+
+    private class WriterThread extends GracefulShutdownWorker {
+
+        private long lastFlushNanoTime = System.nanoTime();
+        private long unsynced;
+
+        public WriterThread(ThreadFactory threadFactory) {
+            super("AsyncDebugLogWriterThread: "
+                    + WRITER_THREAD_INSTANCE_COUNTER.getAndIncrement(), threadFactory);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (keepRunning() && !closed) {
+                    drain();
+                    commit(false);
+                    park();
+                }
+
+                drain();
+                commit(true);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+        }
+
+        private void drain() throws IOException {
+            Slot slot;
+            long count = written;
+            while ((slot = filledSlots.poll()) != null) {
+                delegate.write(slot.type, slot.timestamp, slot.command, slot.response);
+                freeSlots.offer(slot);
+                count++;
+                unsynced++;
+                written = count;
+            }
+        }
+
+        /**
+         * Flushes and syncs as required by the durability policy.
+         */
+        private void commit(boolean closing) throws IOException {
+            long now = System.nanoTime();
+            boolean flushRequested = closing || flushRequest > flushedThrough;
+            boolean syncDue = syncEveryRecords > 0 && unsynced >= syncEveryRecords;
+            boolean flushDue = written > flushedThrough
+                    && now - lastFlushNanoTime >= flushIntervalNanos;
+
+            if (flushRequested || syncDue || flushDue) {
+                delegate.flush();
+                lastFlushNanoTime = now;
+
+                if (syncDue || (flushRequested && syncOnFlush)) {
+                    if (fileDescriptor != null && fileDescriptor.valid()) {
+                        fileDescriptor.sync();
+                    }
+                    unsynced = 0;
+                }
+
+                flushedThrough = written;
+            }
+        }
+
+        private void park() {
+            parkedWriter = Thread.currentThread();
+            try {
+                // Re-check after registering so that a wake up sent in between is not lost.
+                if (filledSlots.isEmpty() && flushRequest <= flushedThrough) {
+                    LockSupport.parkNanos(this, flushIntervalNanos);
+                }
+            } finally {
+                parkedWriter = null;
+            }
+        }
+    }
+}
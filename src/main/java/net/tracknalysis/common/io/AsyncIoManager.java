@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link IoManager}.  Each operation is queued and performed
+ * on the link in submission order, and the returned future completes with the result of
+ * the operation, or exceptionally with the {@link java.io.IOException} that caused it to
+ * fail.  Futures are completed on the thread performing the IO, so dependent stages
+ * that block or run for long should be composed with the {@code *Async} variants.
+ *
+ * @author David Valeri
+ *
+ * @see AsyncIoManagerAdapter
+ */
+public interface AsyncIoManager {
+
+    /**
+     * Starts accepting operations.
+     */
+    void start();
+
+    /**
+     * Stops accepting operations, failing any operations that have not yet been performed
+     * with a {@link java.util.concurrent.CancellationException}.  Does not disconnect
+     * the underlying link.
+     */
+    void stop();
+
+    /**
+     * Asynchronous form of {@link IoManager#write(byte[])}.
+     */
+    CompletableFuture<IoManagerResult> writeAsync(byte[] command);
+
+    /**
+     * Asynchronous form of {@link IoManager#write(byte[], IoProtocolHandler)}.
+     */
+    CompletableFuture<IoManagerResult> writeAsync(byte[] command,
+            IoProtocolHandler protocolHandler);
+
+    /**
+     * Asynchronous form of {@link IoManager#writeAndRead(byte[], long)}.
+     */
+    CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command, long delay);
+
+    /**
+     * Asynchronous form of {@link IoManager#writeAndRead(byte[], long, IoProtocolHandler)}.
+     */
+    CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command, long delay,
+            IoProtocolHandler protocolHandler);
+
+    /**
+     * Asynchronous form of {@link IoManager#writeAndRead(byte[], byte[], long)}.  The
+     * caller must not access {@code result} until the returned future completes.
+     */
+    CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command, byte[] result,
+            long timeout);
+
+    /**
+     * Asynchronous form of
+     * {@link IoManager#writeAndRead(byte[], byte[], long, IoProtocolHandler)}.  The
+     * caller must not access {@code result} until the returned future completes.
+     */
+    CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command, byte[] result,
+            long timeout, IoProtocolHandler protocolHandler);
+
+    /**
+     * Asynchronous form of {@link IoManager#read()}.
+     */
+    CompletableFuture<IoManagerResult> readAsync();
+
+    /**
+     * Asynchronous form of {@link IoManager#read(IoProtocolHandler)}.
+     */
+    CompletableFuture<IoManagerResult> readAsync(IoProtocolHandler protocolHandler);
+
+    /**
+     * Asynchronous form of {@link IoManager#read(byte[], long)}.  The caller must not
+     * access {@code result} until the returned future completes.
+     */
+    CompletableFuture<IoManagerResult> readAsync(byte[] result, long timeout);
+
+    /**
+     * Asynchronous form of {@link IoManager#read(byte[], long, IoProtocolHandler)}.  The
+     * caller must not access {@code result} until the returned future completes.
+     */
+    CompletableFuture<IoManagerResult> readAsync(byte[] result, long timeout,
+            IoProtocolHandler protocolHandler);
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+
+/**
+ * Adapts a blocking {@link IoManager} to {@link AsyncIoManager} by performing queued
+ * operations, one at a time and in submission order, on a single dedicated IO thread.
+ *
+ * @author David Valeri
+ */
+public class AsyncIoManagerAdapter implements AsyncIoManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncIoManagerAdapter.class);
+    private static final AtomicInteger IO_THREAD_INSTANCE_COUNTER = new AtomicInteger();
+
+    private final BlockingQueue<IoTask> taskQueue = new LinkedBlockingQueue<IoTask>();
+    private final IoManager ioManager;
+    private IoThread ioThread;
+    private volatile boolean running;
+    private volatile ThreadFactory threadFactory = ThreadFactories.platform(true);
+
+    public AsyncIoManagerAdapter(IoManager ioManager) {
+        this.ioManager = ioManager;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory of the IO thread, for example {@link ThreadFactories#virtual()}.
+     * Defaults to daemon platform threads.  Takes effect the next time the adapter is
+     * started.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!running) {
+            ioThread = new IoThread();
+            LOG.info("{}: Starting new IO thread: {}.", this, ioThread.getName());
+            ioThread.start();
+            running = true;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            LOG.info("{}: Stopping IO thread: {}.", this, ioThread.getName());
+            cancelQueuedTasks();
+            ioThread.cancel();
+            // Catch anything enqueued while the thread was finishing its last task.
+            cancelQueuedTasks();
+            LOG.info("{}: Stopped IO thread: {}.", this, ioThread.getName());
+            ioThread = null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAsync(byte[] command) {
+        return writeAsync(command, null);
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAsync(final byte[] command,
+            final IoProtocolHandler protocolHandler) {
+        return submit(new IoTask() {
+            @Override
+            protected IoManagerResult execute(IoManager ioManager) throws IOException {
+                return ioManager.write(command, protocolHandler);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command, long delay) {
+        return writeAndReadAsync(command, delay, null);
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAndReadAsync(final byte[] command,
+            final long delay, final IoProtocolHandler protocolHandler) {
+        return submit(new IoTask() {
+            @Override
+            protected IoManagerResult execute(IoManager ioManager) throws IOException {
+                return ioManager.writeAndRead(command, delay, protocolHandler);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAndReadAsync(byte[] command,
+            byte[] result, long timeout) {
+        return writeAndReadAsync(command, result, timeout, null);
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> writeAndReadAsync(final byte[] command,
+            final byte[] result, final long timeout,
+            final IoProtocolHandler protocolHandler) {
+        return submit(new IoTask() {
+            @Override
+            protected IoManagerResult execute(IoManager ioManager) throws IOException {
+                return ioManager.writeAndRead(command, result, timeout, protocolHandler);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> readAsync() {
+        return readAsync((IoProtocolHandler) null);
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> readAsync(
+            final IoProtocolHandler protocolHandler) {
+        return submit(new IoTask() {
+            @Override
+            protected IoManagerResult execute(IoManager ioManager) throws IOException {
+                return ioManager.read(protocolHandler);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> readAsync(byte[] result, long timeout) {
+        return readAsync(result, timeout, null);
+    }
+
+    @Override
+    public CompletableFuture<IoManagerResult> readAsync(final byte[] result,
+            final long timeout, final IoProtocolHandler protocolHandler) {
+        return submit(new IoTask() {
+            @Override
+            protected IoManagerResult execute(IoManager ioManager) throws IOException {
+                return ioManager.read(result, timeout, protocolHandler);
+            }
+        });
+    }
+
+    /**
+     * Queues {@code task} for execution, returning its future.
+     *
+     * @throws IllegalStateException if the adapter is not running
+     */
+    protected CompletableFuture<IoManagerResult> submit(IoTask task) {
+        if (!running) {
+            throw new IllegalStateException("The manager is not running.");
+        }
+
+        taskQueue.add(task);
+        if (!running && taskQueue.remove(task)) {
+            // Lost a race with stop after it drained the queue.
+            task.future.completeExceptionally(
+                    new CancellationException("The manager was stopped."));
+        }
+
+        return task.future;
+    }
+
+    private void cancelQueuedTasks() {
+        List<IoTask> tasks = new ArrayList<IoTask>();
+        taskQueue.drainTo(tasks);
+        for (IoTask task : tasks) {
+            task.future.completeExceptionally(
+                    new CancellationException("The manager was stopped."));
+        }
+    }
+
+    /**
+     * A single queued operation and the future that receives its outcome.
+     */
+    protected abstract static class IoTask {
+
+        private final CompletableFuture<IoManagerResult> future =
+                new CompletableFuture<IoManagerResult>();
+
+        protected abstract IoManagerResult execute(IoManager ioManager) throws IOException;
+
+        private void run(IoManager ioManager) {
+            if (future.isDone()) {
+                // Cancelled by the caller while queued.
+                return;
+            }
+
+            try {
+                future.complete(execute(ioManager));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private class IoThread extends GracefulShutdownWorker {
+
+        public IoThread() {
+            super("AsyncIoThread: " + IO_THREAD_INSTANCE_COUNTER.getAndIncrement(),
+                    threadFactory);
+        }
+
+        @Override
+        public void run() {
+            while (keepRunning()) {
+                try {
+                    IoTask task = taskQueue.poll(1000l, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        task.run(ioManager);
+                    }
+                } catch (InterruptedException e) {
+                    if (keepRunning()) {
+                        LOG.error(getName()
+                                + ": Interrupted while waiting for a task and still running.", e);
+                    } else {
+                        LOG.debug("{}: Interrupted while waiting for a task and not running.",
+                                getName());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads logs in the {@link DebugLogFormat#BINARY} format.
+ *
+ * @author David Valeri
+ *
+ * @see BinaryDebugLogRecordWriter
+ */
+final class BinaryDebugLogRecordReader implements DebugLogRecordReader {
+
+    /** Guards against allocating huge arrays when reading a corrupt length. */
+    static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private static final DebugLogRecord.Type[] TYPES = DebugLogRecord.Type.values();
+
+    private final DataInputStream in;
+    private final long startTime;
+
+    BinaryDebugLogRecordReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(inputStream instanceof BufferedInputStream
+                ? inputStream : new BufferedInputStream(inputStream));
+
+        byte[] magic = new byte[BinaryDebugLogRecordWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(BinaryDebugLogRecordWriter.MAGIC, magic)) {
+            throw new IOException("The log is not a binary debug log.");
+        }
+
+        int version = in.readUnsignedByte();
+        if (version != BinaryDebugLogRecordWriter.VERSION) {
+            throw new IOException("Unsupported binary debug log version " + version + ".");
+        }
+
+        startTime = in.readLong();
+    }
+
+    /**
+     * Returns the wall clock start time of the log, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public DebugLogRecord read() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+
+        try {
+            int length = first << 24 | in.readUnsignedByte() << 16
+                    | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+            byte[] record = new byte[checkLength(length)];
+            in.readFully(record);
+            return decode(record, 0, length);
+        } catch (EOFException e) {
+            throw new IOException("The log ended in the middle of a record.", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    static int checkLength(int length) throws IOException {
+        if (length < BinaryDebugLogRecordWriter.RECORD_PREFIX_LENGTH
+                || length > MAX_RECORD_LENGTH) {
+            throw new IOException("Corrupt record length " + length + ".");
+        }
+
+        return length;
+    }
+
+    /**
+     * Decodes the {@code length} bytes of a record, following its length field, starting
+     * at {@code offset} of {@code bytes}.
+     */
+    static DebugLogRecord decode(byte[] bytes, int offset, int length) throws IOException {
+        int typeOrdinal = bytes[offset] & 0xFF;
+        if (typeOrdinal >= TYPES.length) {
+            throw new IOException("Corrupt record type " + typeOrdinal + ".");
+        }
+
+        DebugLogRecord.Type type = TYPES[typeOrdinal];
+        long timestamp = getLong(bytes, offset + 1);
+        int bodyStart = offset + BinaryDebugLogRecordWriter.RECORD_PREFIX_LENGTH;
+        int end = offset + length;
+
+        switch (type) {
+            case WRITE:
+                return new DebugLogRecord(type, timestamp,
+                        Arrays.copyOfRange(bytes, bodyStart, end), null);
+            case READ:
+                return new DebugLogRecord(type, timestamp, null,
+                        Arrays.copyOfRange(bytes, bodyStart, end));
+            default:
+                if (end - bodyStart < 4) {
+                    throw new IOException("Corrupt write and read record.");
+                }
+                int commandLength = getInt(bytes, bodyStart);
+                int commandStart = bodyStart + 4;
+                if (commandLength < 0 || commandLength > end - commandStart) {
+                    throw new IOException("Corrupt command length " + commandLength + ".");
+                }
+                return new DebugLogRecord(type, timestamp,
+                        Arrays.copyOfRange(bytes, commandStart, commandStart + commandLength),
+                        Arrays.copyOfRange(bytes, commandStart + commandLength, end));
+        }
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes logs in the {@link DebugLogFormat#BINARY} format.  All values are big-endian.
+ * The log starts with a header of:
+ * <ul>
+ * <li>the four magic bytes {@code TDLB}</li>
+ * <li>a one byte format version</li>
+ * <li>an eight byte wall clock start time of the log, in milliseconds since the epoch</li>
+ * </ul>
+ * followed by records of:
+ * <ul>
+ * <li>a four byte length of the remainder of the record</li>
+ * <li>a one byte {@link DebugLogRecord.Type} ordinal</li>
+ * <li>an eight byte timestamp, in nanoseconds since the start of the log</li>
+ * <li>for a write and read, the four byte length of the command followed by the command
+ * and the response, otherwise the bytes written or read</li>
+ * </ul>
+ *
+ * @author David Valeri
+ */
+final class BinaryDebugLogRecordWriter implements DebugLogRecordWriter {
+
+    static final byte[] MAGIC = new byte[] {'T', 'D', 'L', 'B'};
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 8;
+    /** The length of the type and timestamp at the start of each record. */
+    static final int RECORD_PREFIX_LENGTH = 1 + 8;
+
+    private final DataOutputStream out;
+
+    BinaryDebugLogRecordWriter(OutputStream outputStream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    @Override
+    public void write(DebugLogRecord.Type type, long timestamp, byte[] command,
+            byte[] response) throws IOException {
+        switch (type) {
+            case WRITE:
+                writePrefix(RECORD_PREFIX_LENGTH + command.length, type, timestamp);
+                out.write(command);
+                break;
+            case WRITE_AND_READ:
+                writePrefix(RECORD_PREFIX_LENGTH + 4 + command.length + response.length,
+                        type, timestamp);
+                out.writeInt(command.length);
+                out.write(command);
+                out.write(response);
+                break;
+            case READ:
+                writePrefix(RECORD_PREFIX_LENGTH + response.length, type, timestamp);
+                out.write(response);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type " + type + ".");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public boolean isSelfFlushing() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writePrefix(int length, DebugLogRecord.Type type, long timestamp)
+            throws IOException {
+        out.writeInt(length);
+        out.writeByte(type.ordinal());
+        out.writeLong(timestamp);
+    }
+}
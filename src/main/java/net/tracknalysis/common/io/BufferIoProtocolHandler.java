@@ -0,0 +1,65 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Protocol handler that encodes into, and decodes within, caller provided buffers
+ * rather than returning new arrays.  IO managers detect implementations of this
+ * interface and use the in-place methods, allowing wrapped request/response cycles
+ * to run without allocating or copying intermediate arrays.
+ * <p/>
+ * Implementations should generally extend {@link AbstractBufferIoProtocolHandler} so
+ * that the array based methods inherited from {@link IoProtocolHandler} remain
+ * available to code that does not understand this interface.
+ *
+ * @author David Valeri
+ *
+ * @see ByteArrayIoProtocolHandlerAdapter
+ */
+public interface BufferIoProtocolHandler extends IoProtocolHandler {
+
+    /**
+     * Wrap raw request payload data in the protocol wrapper, writing the wrapped
+     * bytes into {@code wrapped} starting at its current position.  On return, the
+     * position of {@code wrapped} is immediately after the last byte written.
+     *
+     * @param raw
+     *            the array containing the raw payload
+     * @param offset
+     *            the offset of the payload in {@code raw}
+     * @param length
+     *            the length of the payload
+     * @param wrapped
+     *            the buffer to write the wrapped payload into, must have at least
+     *            {@link #getWrappedRequestLength(int)} bytes remaining
+     */
+    void wrapRequest(byte[] raw, int offset, int length, ByteBuffer wrapped)
+            throws IOException;
+
+    /**
+     * Unwrap raw response payload data from the protocol wrapper in place.  On entry,
+     * the position and limit of {@code wrapped} delimit the wrapped payload.  On return,
+     * the position and limit delimit the raw payload within the same buffer.  The
+     * contents of the buffer outside of the raw payload are undefined on return.
+     *
+     * @param wrapped
+     *            the buffer containing the wrapped payload
+     */
+    void unwrapResponse(ByteBuffer wrapped) throws IOException;
+}
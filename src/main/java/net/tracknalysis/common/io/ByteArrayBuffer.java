@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, growable buffer of primitive bytes.  The backing array is exposed so that
+ * callers may read directly into the free space at the end of the buffer and then
+ * advance the size, avoiding intermediate copies and boxing.  Not thread safe.
+ *
+ * @author David Valeri
+ */
+public final class ByteArrayBuffer {
+
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param initialCapacity the initial capacity of the buffer in bytes
+     */
+    public ByteArrayBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative.");
+        }
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Returns the backing array.  The array is replaced when the buffer grows, so the
+     * reference should not be retained across calls that may grow the buffer.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes of valid data in the buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of free space at the end of the buffer.
+     */
+    public int remaining() {
+        return buffer.length - size;
+    }
+
+    /**
+     * Sets the number of bytes of valid data in the buffer, typically after reading
+     * directly into {@link #array()}.
+     *
+     * @param size the new size
+     */
+    public void setSize(int size) {
+        if (size < 0 || size > buffer.length) {
+            throw new IndexOutOfBoundsException("Size " + size + " is outside of [0, "
+                    + buffer.length + "].");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Discards all data in the buffer, retaining the backing array.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Grows the backing array, if needed, such that it can hold at least
+     * {@code capacity} bytes.  Existing data is preserved.
+     *
+     * @param capacity the required capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            int newCapacity = Math.max(capacity, Math.max(16, buffer.length << 1));
+            buffer = Arrays.copyOf(buffer, newCapacity);
+        }
+    }
+
+    /**
+     * Appends {@code length} bytes from {@code bytes} starting at {@code offset}.
+     */
+    public void append(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * Appends a single byte.
+     */
+    public void append(byte b) {
+        ensureCapacity(size + 1);
+        buffer[size++] = b;
+    }
+
+    /**
+     * Returns a copy of the valid data in the buffer.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Adapts an array based {@link IoProtocolHandler} to the {@link BufferIoProtocolHandler}
+ * contract.  The adapted handler still allocates and copies as the delegate does, but
+ * allows existing handlers to be used wherever a buffer handler is expected.
+ *
+ * @author David Valeri
+ */
+public class ByteArrayIoProtocolHandlerAdapter implements BufferIoProtocolHandler {
+
+    private final IoProtocolHandler delegate;
+
+    public ByteArrayIoProtocolHandlerAdapter(IoProtocolHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns {@code protocolHandler} if it already implements
+     * {@link BufferIoProtocolHandler}, otherwise returns an adapter for it.
+     *
+     * @param protocolHandler the handler to adapt, may be {@code null}
+     *
+     * @return the adapted handler or {@code null} if {@code protocolHandler} is {@code null}
+     */
+    public static BufferIoProtocolHandler adapt(IoProtocolHandler protocolHandler) {
+        if (protocolHandler == null) {
+            return null;
+        } else if (protocolHandler instanceof BufferIoProtocolHandler) {
+            return (BufferIoProtocolHandler) protocolHandler;
+        } else {
+            return new ByteArrayIoProtocolHandlerAdapter(protocolHandler);
+        }
+    }
+
+    @Override
+    public byte[] wrapRequest(byte[] raw) throws IOException {
+        return delegate.wrapRequest(raw);
+    }
+
+    @Override
+    public int getWrappedRequestLength(int length) throws IOException {
+        return delegate.getWrappedRequestLength(length);
+    }
+
+    @Override
+    public byte[] unwrapResponse(byte[] wrapped) throws IOException {
+        return delegate.unwrapResponse(wrapped);
+    }
+
+    @Override
+    public int getWrappedResponseLength(int length) throws IOException {
+        return delegate.getWrappedResponseLength(length);
+    }
+
+    @Override
+    public void wrapRequest(byte[] raw, int offset, int length, ByteBuffer wrapped)
+            throws IOException {
+        byte[] rawCopy = raw;
+        if (offset != 0 || length != raw.length) {
+            rawCopy = Arrays.copyOfRange(raw, offset, offset + length);
+        }
+
+        wrapped.put(delegate.wrapRequest(rawCopy));
+    }
+
+    @Override
+    public void unwrapResponse(ByteBuffer wrapped) throws IOException {
+        byte[] wrappedCopy = new byte[wrapped.remaining()];
+        int start = wrapped.position();
+        wrapped.get(wrappedCopy);
+
+        byte[] unwrapped = delegate.unwrapResponse(wrappedCopy);
+        if (unwrapped.length > wrappedCopy.length) {
+            throw new IOException("Unwrapped payload of length " + unwrapped.length
+                    + " does not fit in place of the wrapped payload of length "
+                    + wrappedCopy.length + ".");
+        }
+
+        wrapped.position(start);
+        wrapped.put(unwrapped);
+        wrapped.limit(wrapped.position());
+        wrapped.position(start);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A thread safe pool of heap {@link ByteBuffer}s grouped into power of two size classes.
+ * Buffers larger than the maximum pooled size are allocated on demand and discarded
+ * on release.  Acquiring and releasing a pooled buffer allocates nothing once the pool
+ * is warm.
+ *
+ * @author David Valeri
+ */
+public final class ByteBufferPool {
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_BUFFERS_PER_SIZE = 8;
+
+    private static final int MIN_BUFFER_SIZE_SHIFT = 6;
+
+    private static final ByteBufferPool SHARED_INSTANCE =
+            new ByteBufferPool(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_SIZE);
+
+    private final int maxBufferSize;
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxBufferSize the largest buffer size, in bytes, that is pooled, raised to the
+     *            smallest size class of 64 bytes if smaller
+     * @param buffersPerSize the maximum number of idle buffers retained per size class
+     */
+    public ByteBufferPool(int maxBufferSize, int buffersPerSize) {
+        if (maxBufferSize < 1 || buffersPerSize < 0) {
+            throw new IllegalArgumentException("Invalid pool dimensions.");
+        }
+
+        // Smaller buffers are acquired from the smallest size class, which must be pooled.
+        this.maxBufferSize = roundUpToPowerOfTwo(
+                Math.max(maxBufferSize, 1 << MIN_BUFFER_SIZE_SHIFT));
+        sizeClasses = new SizeClass[sizeClassIndex(this.maxBufferSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(buffersPerSize);
+        }
+    }
+
+    /**
+     * Returns the pool shared by the IO managers in this package.
+     */
+    public static ByteBufferPool getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Acquires a buffer with at least {@code capacity} bytes of capacity.  The returned
+     * buffer has a position of 0 and a limit of {@code capacity}.  The buffer should be
+     * returned with {@link #release(ByteBuffer)} once it is no longer in use.
+     *
+     * @param capacity the required capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = null;
+
+        if (capacity <= maxBufferSize) {
+            int index = sizeClassIndex(capacity);
+            buffer = sizeClasses[index].poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(1 << (index + MIN_BUFFER_SIZE_SHIFT));
+            }
+        } else {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        buffer.clear();
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool.  The caller must
+     * not use the buffer after releasing it.
+     *
+     * @param buffer the buffer to release, ignored if {@code null}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            int capacity = buffer.capacity();
+            if (capacity <= maxBufferSize && Integer.bitCount(capacity) == 1
+                    && capacity >= 1 << MIN_BUFFER_SIZE_SHIFT) {
+                sizeClasses[sizeClassIndex(capacity)].offer(buffer);
+            }
+        }
+    }
+
+    private static int sizeClassIndex(int capacity) {
+        int size = Math.max(capacity, 1 << MIN_BUFFER_SIZE_SHIFT);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_BUFFER_SIZE_SHIFT;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * A bounded stack of idle buffers of a single size.
+     */
+    private static final class SizeClass {
+
+        private final ByteBuffer[] buffers;
+        private int count;
+
+        public SizeClass(int maxBuffers) {
+            buffers = new ByteBuffer[maxBuffers];
+        }
+
+        public synchronized ByteBuffer poll() {
+            if (count == 0) {
+                return null;
+            }
+
+            ByteBuffer buffer = buffers[--count];
+            buffers[count] = null;
+            return buffer;
+        }
+
+        public synchronized void offer(ByteBuffer buffer) {
+            if (count < buffers.length) {
+                buffers[count++] = buffer;
+            }
+        }
+    }
+}
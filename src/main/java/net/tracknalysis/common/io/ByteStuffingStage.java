@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+
+/**
+ * Escapes reserved bytes, such as frame delimiters, by replacing each with an escape byte
+ * followed by the reserved byte XORed with a mask.  For example, the HDLC-like framing of
+ * PPP is {@code new ByteStuffingStage((byte) 0x7D, (byte) 0x20, (byte) 0x7E)}.  The
+ * escape byte itself is always escaped.
+ *
+ * @author David Valeri
+ */
+public class ByteStuffingStage implements IoProtocolStage {
+
+    private final byte escape;
+    private final byte mask;
+    private final boolean[] reserved = new boolean[256];
+
+    /**
+     * @param escape the byte that introduces an escaped byte
+     * @param mask the mask XORed with escaped bytes
+     * @param reservedBytes the bytes that must not appear unescaped in the output
+     */
+    public ByteStuffingStage(byte escape, byte mask, byte... reservedBytes) {
+        this.escape = escape;
+        this.mask = mask;
+        reserved[escape & 0xFF] = true;
+        for (byte b : reservedBytes) {
+            reserved[b & 0xFF] = true;
+        }
+
+        for (int i = 0; i < reserved.length; i++) {
+            if (reserved[i] && reserved[(i ^ mask) & 0xFF]) {
+                throw new IllegalArgumentException(String.format(
+                        "The escaped form of reserved byte 0x%02x is also reserved.", i));
+            }
+        }
+    }
+
+    @Override
+    public int getEncodedLength(int length) {
+        return length == 0 ? 0 : -1;
+    }
+
+    @Override
+    public int getMaxEncodedLength(int length) {
+        return length > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : 2 * length;
+    }
+
+    @Override
+    public Codec newCodec() {
+        return new Codec() {
+
+            private boolean escaped;
+
+            @Override
+            public void beginEncode(int length, Sink out) {
+                // No header.
+            }
+
+            @Override
+            public void encode(byte b, Sink out) throws IOException {
+                if (reserved[b & 0xFF]) {
+                    out.put(escape);
+                    out.put((byte) (b ^ mask));
+                } else {
+                    out.put(b);
+                }
+            }
+
+            @Override
+            public void endEncode(Sink out) {
+                // No trailer.
+            }
+
+            @Override
+            public void beginDecode() {
+                escaped = false;
+            }
+
+            @Override
+            public void decode(byte b, Sink out) throws IOException {
+                if (escaped) {
+                    escaped = false;
+                    out.put((byte) (b ^ mask));
+                } else if (b == escape) {
+                    escaped = true;
+                } else if (reserved[b & 0xFF]) {
+                    throw new IOException(String.format(
+                            "Unescaped reserved byte 0x%02x.", b & 0xFF));
+                } else {
+                    out.put(b);
+                }
+            }
+
+            @Override
+            public void endDecode() throws IOException {
+                if (escaped) {
+                    throw new IOException("Payload ends with an incomplete escape sequence.");
+                }
+            }
+        };
+    }
+}
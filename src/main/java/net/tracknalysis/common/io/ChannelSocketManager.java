@@ -0,0 +1,43 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * Wrapper abstraction for a "socket" that exposes selectable NIO channels in addition
+ * to the streams provided by {@link SocketManager}.  The input and output channels may
+ * be the same channel instance, as is the case for a socket channel.
+ *
+ * @author David Valeri
+ *
+ * @see NioIoManager
+ */
+public interface ChannelSocketManager extends SocketManager {
+
+    /**
+     * Returns the channel that data is read from.  The channel must also implement
+     * {@link java.nio.channels.ReadableByteChannel}.  Only valid once connected.
+     */
+    SelectableChannel getInputChannel() throws IOException;
+
+    /**
+     * Returns the channel that data is written to.  The channel must also implement
+     * {@link java.nio.channels.WritableByteChannel}.  Only valid once connected.
+     */
+    SelectableChannel getOutputChannel() throws IOException;
+}
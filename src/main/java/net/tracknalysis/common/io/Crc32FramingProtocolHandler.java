@@ -0,0 +1,451 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Frames each payload as an unsigned, big-endian length of the payload, the payload and a
+ * big-endian CRC of the payload, as used by newer ECU serial protocols.  Checksums are
+ * computed by the JDK's {@link CRC32} or, where available, {@code CRC32C}, both of which
+ * the JVM implements with hardware instructions on common platforms.
+ * <p/>
+ * Wrapping writes the frame in a single pass and unwrapping validates the frame and
+ * narrows the buffer to the payload in place.  Neither allocates for heap buffers once a
+ * thread has used the handler.  Direct buffers are checksummed in place through a
+ * duplicate.  Instances are thread safe.
+ * <p/>
+ * The handler is also an {@link IoProtocolStage} so that it can be combined with other
+ * stages by a {@link FusedIoProtocolHandler}.  As a stage, it must be given the exact
+ * length of its input and so must come before any stage whose output length depends on
+ * content.
+ *
+ * @author David Valeri
+ */
+public class Crc32FramingProtocolHandler extends AbstractBufferIoProtocolHandler
+        implements IoProtocolStage {
+
+    /**
+     * The CRC polynomial used to check frames.
+     */
+    public static enum Algorithm {
+        /**
+         * The IEEE 802.3 polynomial, as computed by {@link CRC32}.
+         */
+        CRC32(CRC32.class),
+        /**
+         * The Castagnoli polynomial, as computed by {@code java.util.zip.CRC32C}, which
+         * is only available on Java 9 and later.
+         */
+        CRC32C(loadChecksumClass("java.util.zip.CRC32C"));
+
+        private final Class<? extends Checksum> checksumClass;
+        private final MethodHandle byteBufferUpdate;
+
+        private Algorithm(Class<? extends Checksum> checksumClass) {
+            this.checksumClass = checksumClass;
+            this.byteBufferUpdate = findByteBufferUpdate(checksumClass);
+        }
+
+        /**
+         * Returns true if the running JVM provides this algorithm.
+         */
+        public boolean isSupported() {
+            return checksumClass != null;
+        }
+
+        Checksum newChecksum() {
+            if (checksumClass == null) {
+                throw new UnsupportedOperationException(
+                        name() + " is not supported by this JVM.");
+            }
+
+            try {
+                Constructor<? extends Checksum> constructor = checksumClass.getConstructor();
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("Error creating " + name() + " checksum.", e);
+            }
+        }
+
+        /**
+         * Updates {@code checksum} with the remaining bytes of {@code buffer} using the
+         * checksum's own {@code update(ByteBuffer)}, which reads direct buffers without
+         * copying them.
+         */
+        void update(Checksum checksum, ByteBuffer buffer) {
+            try {
+                byteBufferUpdate.invokeExact(checksum, buffer);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Error updating " + name() + " checksum.", t);
+            }
+        }
+
+        private static MethodHandle findByteBufferUpdate(
+                Class<? extends Checksum> checksumClass) {
+            if (checksumClass == null) {
+                return null;
+            }
+
+            // CRC32 declares update(ByteBuffer) from Java 8 and CRC32C from its introduction
+            // in Java 9, where Checksum also gained it as a default method.
+            try {
+                return MethodHandles.publicLookup()
+                        .findVirtual(checksumClass, "update",
+                                MethodType.methodType(void.class, ByteBuffer.class))
+                        .asType(MethodType.methodType(
+                                void.class, Checksum.class, ByteBuffer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(
+                        "Error finding update(ByteBuffer) of " + checksumClass + ".", e);
+            }
+        }
+
+        private static Class<? extends Checksum> loadChecksumClass(String name) {
+            try {
+                return Class.forName(name).asSubclass(Checksum.class);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final int CRC_LENGTH = 4;
+    private static final int CHECKSUM_BATCH_SIZE = 256;
+
+    private final int lengthFieldLength;
+    private final long maxPayloadLength;
+    private final Algorithm algorithm;
+    private final ThreadLocal<Checksum> checksums;
+
+    /**
+     * Creates a handler with a two byte length field and {@link Algorithm#CRC32}.
+     */
+    public Crc32FramingProtocolHandler() {
+        this(2, Algorithm.CRC32);
+    }
+
+    /**
+     * @param lengthFieldLength the size of the length field in bytes, 1 to 4
+     * @param algorithm the checksum algorithm
+     *
+     * @throws UnsupportedOperationException if {@code algorithm} is not supported by the
+     *             running JVM
+     */
+    public Crc32FramingProtocolHandler(int lengthFieldLength, final Algorithm algorithm) {
+        if (lengthFieldLength < 1 || lengthFieldLength > 4) {
+            throw new IllegalArgumentException("The length field must be 1 to 4 bytes.");
+        }
+
+        // Fail fast rather than on first use.
+        algorithm.newChecksum();
+
+        this.lengthFieldLength = lengthFieldLength;
+        this.maxPayloadLength = lengthFieldLength == 4
+                ? Integer.MAX_VALUE - 4 - CRC_LENGTH : (1L << (8 * lengthFieldLength)) - 1;
+        this.algorithm = algorithm;
+        this.checksums = new ThreadLocal<Checksum>() {
+            @Override
+            protected Checksum initialValue() {
+                return algorithm.newChecksum();
+            }
+        };
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public int getWrappedRequestLength(int length) throws IOException {
+        return getWrappedLength(length);
+    }
+
+    @Override
+    public int getWrappedResponseLength(int length) throws IOException {
+        return getWrappedLength(length);
+    }
+
+    @Override
+    public void wrapRequest(byte[] raw, int offset, int length, ByteBuffer wrapped)
+            throws IOException {
+        getWrappedLength(length);
+
+        for (int shift = 8 * (lengthFieldLength - 1); shift >= 0; shift -= 8) {
+            wrapped.put((byte) (length >>> shift));
+        }
+
+        wrapped.put(raw, offset, length);
+
+        Checksum checksum = checksums.get();
+        checksum.reset();
+        checksum.update(raw, offset, length);
+        putCrc(wrapped, (int) checksum.getValue());
+    }
+
+    @Override
+    public void unwrapResponse(ByteBuffer wrapped) throws IOException {
+        int start = wrapped.position();
+        int payloadStart = start + lengthFieldLength;
+        int length = wrapped.remaining() - lengthFieldLength - CRC_LENGTH;
+
+        if (length < 0) {
+            throw new IOException("Frame of length " + wrapped.remaining()
+                    + " is shorter than the minimum frame length of "
+                    + (lengthFieldLength + CRC_LENGTH) + ".");
+        }
+
+        long declaredLength = 0;
+        for (int i = start; i < payloadStart; i++) {
+            declaredLength = (declaredLength << 8) | (wrapped.get(i) & 0xFF);
+        }
+
+        if (declaredLength != length) {
+            throw new IOException("Frame declares a payload length of " + declaredLength
+                    + " but contains " + length + " bytes.");
+        }
+
+        int expected = getCrc(wrapped, payloadStart + length);
+        int actual = checksum(wrapped, payloadStart, length);
+        if (expected != actual) {
+            throw new IOException(String.format(
+                    "Frame CRC 0x%08x does not match the computed CRC 0x%08x.",
+                    expected, actual));
+        }
+
+        wrapped.limit(payloadStart + length);
+        wrapped.position(payloadStart);
+    }
+
+    @Override
+    public int getEncodedLength(int length) {
+        return length > maxPayloadLength ? -1 : lengthFieldLength + length + CRC_LENGTH;
+    }
+
+    @Override
+    public int getMaxEncodedLength(int length) {
+        return lengthFieldLength + Math.min(length, (int) maxPayloadLength) + CRC_LENGTH;
+    }
+
+    @Override
+    public Codec newCodec() {
+        return new Crc32Codec();
+    }
+
+    /**
+     * Returns a decoder for streams of frames produced by this handler.  The decoder
+     * returns the payload of each frame with a valid CRC and skips invalid bytes until the
+     * next valid frame.
+     *
+     * @param maxPayloadLength the maximum length of a payload
+     *
+     * @see IoManager#readFrame(IoFrameDecoder, long)
+     */
+    public LengthFieldFrameDecoder newFrameDecoder(int maxPayloadLength) {
+        return new LengthFieldFrameDecoder(lengthFieldLength + maxPayloadLength + CRC_LENGTH,
+                0, lengthFieldLength, CRC_LENGTH, lengthFieldLength) {
+
+            @Override
+            protected boolean isValid(ByteBuffer in, int start, int frameLength) {
+                int payloadStart = start + lengthFieldLength;
+                int length = frameLength - lengthFieldLength - CRC_LENGTH;
+                return getCrc(in, payloadStart + length) == checksum(in, payloadStart, length);
+            }
+
+            @Override
+            protected byte[] extractFrame(ByteBuffer in, int start, int frameLength) {
+                byte[] payload = new byte[frameLength - lengthFieldLength - CRC_LENGTH];
+                if (in.hasArray()) {
+                    System.arraycopy(in.array(), in.arrayOffset() + start + lengthFieldLength,
+                            payload, 0, payload.length);
+                } else {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] = in.get(start + lengthFieldLength + i);
+                    }
+                }
+
+                return payload;
+            }
+        };
+    }
+
+    /**
+     * Frames a payload one byte at a time.  Payload bytes are batched so that the
+     * checksum is still computed over arrays rather than byte by byte.
+     */
+    private final class Crc32Codec implements Codec {
+
+        private final Checksum checksum = algorithm.newChecksum();
+        private final byte[] batch = new byte[CHECKSUM_BATCH_SIZE];
+        private int batchSize;
+        private long length;
+        private long payloadBytes;
+        private int headerRemaining;
+        private int trailerRemaining;
+        private int crc;
+
+        @Override
+        public void beginEncode(int length, Sink out) throws IOException {
+            if (length < 0) {
+                throw new IOException("CRC framing requires the exact length of its payload.");
+            }
+
+            getWrappedLength(length);
+            this.length = length;
+            payloadBytes = 0;
+            checksum.reset();
+            batchSize = 0;
+
+            for (int shift = 8 * (lengthFieldLength - 1); shift >= 0; shift -= 8) {
+                out.put((byte) (length >>> shift));
+            }
+        }
+
+        @Override
+        public void encode(byte b, Sink out) throws IOException {
+            out.put(b);
+            payloadBytes++;
+            update(b);
+        }
+
+        @Override
+        public void endEncode(Sink out) throws IOException {
+            if (payloadBytes != length) {
+                throw new IOException("Framed " + payloadBytes
+                        + " payload bytes but declared a length of " + length + ".");
+            }
+
+            int value = checksum();
+            out.put((byte) (value >>> 24));
+            out.put((byte) (value >>> 16));
+            out.put((byte) (value >>> 8));
+            out.put((byte) value);
+        }
+
+        @Override
+        public void beginDecode() {
+            headerRemaining = lengthFieldLength;
+            trailerRemaining = CRC_LENGTH;
+            length = 0;
+            payloadBytes = 0;
+            crc = 0;
+            checksum.reset();
+            batchSize = 0;
+        }
+
+        @Override
+        public void decode(byte b, Sink out) throws IOException {
+            if (headerRemaining > 0) {
+                length = (length << 8) | (b & 0xFF);
+                if (--headerRemaining == 0 && length > maxPayloadLength) {
+                    throw new IOException("Frame declares a payload length of " + length
+                            + " which exceeds the maximum payload length of "
+                            + maxPayloadLength + ".");
+                }
+            } else if (payloadBytes < length) {
+                out.put(b);
+                payloadBytes++;
+                update(b);
+            } else if (trailerRemaining > 0) {
+                crc = (crc << 8) | (b & 0xFF);
+                trailerRemaining--;
+            } else {
+                throw new IOException("Frame contains bytes after its CRC.");
+            }
+        }
+
+        @Override
+        public void endDecode() throws IOException {
+            if (headerRemaining > 0 || payloadBytes < length || trailerRemaining > 0) {
+                throw new IOException("Frame is incomplete.");
+            }
+
+            int actual = checksum();
+            if (crc != actual) {
+                throw new IOException(String.format(
+                        "Frame CRC 0x%08x does not match the computed CRC 0x%08x.",
+                        crc, actual));
+            }
+        }
+
+        private void update(byte b) {
+            batch[batchSize++] = b;
+            if (batchSize == batch.length) {
+                checksum.update(batch, 0, batchSize);
+                batchSize = 0;
+            }
+        }
+
+        private int checksum() {
+            checksum.update(batch, 0, batchSize);
+            batchSize = 0;
+            return (int) checksum.getValue();
+        }
+    }
+
+    private int getWrappedLength(int length) throws IOException {
+        if (length > maxPayloadLength) {
+            throw new IOException("Payload of length " + length
+                    + " exceeds the maximum payload length of " + maxPayloadLength + ".");
+        }
+
+        return lengthFieldLength + length + CRC_LENGTH;
+    }
+
+    /**
+     * Returns the CRC of {@code length} bytes of {@code buffer} starting at absolute
+     * position {@code offset} without changing the position of {@code buffer}.
+     */
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        Checksum checksum = checksums.get();
+        checksum.reset();
+
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer range = buffer.duplicate();
+            range.limit(offset + length).position(offset);
+            algorithm.update(checksum, range);
+        }
+
+        return (int) checksum.getValue();
+    }
+
+    private static int getCrc(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0xFF) << 24
+                | (buffer.get(offset + 1) & 0xFF) << 16
+                | (buffer.get(offset + 2) & 0xFF) << 8
+                | buffer.get(offset + 3) & 0xFF;
+    }
+
+    private static void putCrc(ByteBuffer buffer, int crc) {
+        buffer.put((byte) (crc >>> 24));
+        buffer.put((byte) (crc >>> 16));
+        buffer.put((byte) (crc >>> 8));
+        buffer.put((byte) crc);
+    }
+}
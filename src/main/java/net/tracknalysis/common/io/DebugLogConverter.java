@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts debug logs between {@link DebugLogFormat}s.  Run with
+ * {@code java ... DebugLogConverter <text|binary> <input> <output>}, where the format of
+ * the input is detected.  Converting a text log to binary assigns every record a
+ * timestamp of 0, as text logs do not record times.
+ *
+ * @author David Valeri
+ */
+public final class DebugLogConverter {
+
+    private DebugLogConverter() {
+        // Hidden in utility class.
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: DebugLogConverter <text|binary> <input> <output>");
+            System.exit(1);
+        }
+
+        DebugLogFormat format = DebugLogFormat.valueOf(args[0].toUpperCase());
+        InputStream in = new FileInputStream(args[1]);
+        try {
+            OutputStream out = new FileOutputStream(args[2]);
+            try {
+                long records = convert(in, out, format);
+                System.out.println("Converted " + records + " records.");
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts the log read from {@code in}, in either format, to {@code format} and
+     * writes it to {@code out}.  The streams are not closed.
+     *
+     * @return the number of records converted
+     */
+    public static long convert(InputStream in, OutputStream out, DebugLogFormat format)
+            throws IOException {
+        DebugLogRecordWriter writer = format.newWriter(out);
+        long records = convert(DebugLogFormat.open(in), writer);
+        writer.flush();
+        return records;
+    }
+
+    /**
+     * Copies the remaining records of {@code reader} to {@code writer}.
+     *
+     * @return the number of records copied
+     */
+    public static long convert(DebugLogRecordReader reader, DebugLogRecordWriter writer)
+            throws IOException {
+        long records = 0;
+        DebugLogRecord record;
+        while ((record = reader.read()) != null) {
+            writer.write(record.getType(), record.getTimestamp(), record.getCommand(),
+                    record.getResponse());
+            records++;
+        }
+
+        return records;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The on-disk formats of debug logs.
+ *
+ * @author David Valeri
+ *
+ * @see DebugLogWriterIoManager
+ * @see DebugLogReaderIoManager
+ * @see DebugLogConverter
+ */
+public enum DebugLogFormat {
+
+    /**
+     * The original format, in which each record is a comment line naming the type of
+     * exchange followed by a line of base 64 text for each of the bytes written and read.
+     * Text logs do not record times.
+     */
+    TEXT {
+        @Override
+        public DebugLogRecordWriter newWriter(OutputStream outputStream) {
+            return new TextDebugLogRecordWriter(outputStream);
+        }
+
+        @Override
+        public DebugLogRecordReader newReader(InputStream inputStream) {
+            return new TextDebugLogRecordReader(inputStream);
+        }
+    },
+
+    /**
+     * A compact format in which the log starts with a header and each record is a
+     * length prefixed run of a type, a timestamp and the raw bytes written and read.
+     */
+    BINARY {
+        @Override
+        public DebugLogRecordWriter newWriter(OutputStream outputStream) throws IOException {
+            return new BinaryDebugLogRecordWriter(outputStream);
+        }
+
+        @Override
+        public DebugLogRecordReader newReader(InputStream inputStream) throws IOException {
+            return new BinaryDebugLogRecordReader(inputStream);
+        }
+    };
+
+    /**
+     * Returns a writer that writes a new log in this format to {@code outputStream}.
+     */
+    public abstract DebugLogRecordWriter newWriter(OutputStream outputStream)
+            throws IOException;
+
+    /**
+     * Returns a reader for a log in this format read from {@code inputStream}.
+     */
+    public abstract DebugLogRecordReader newReader(InputStream inputStream)
+            throws IOException;
+
+    /**
+     * Returns a reader for a log in either format, detecting the format from the start of
+     * {@code inputStream}.
+     */
+    public static DebugLogRecordReader open(InputStream inputStream) throws IOException {
+        InputStream in = inputStream.markSupported()
+                ? inputStream : new BufferedInputStream(inputStream);
+
+        return detect(in).newReader(in);
+    }
+
+    /**
+     * Returns the format of the log at the current position of {@code inputStream},
+     * leaving the position unchanged.
+     *
+     * @param inputStream a stream that supports mark and reset
+     */
+    public static DebugLogFormat detect(InputStream inputStream) throws IOException {
+        byte[] magic = BinaryDebugLogRecordWriter.MAGIC;
+        inputStream.mark(magic.length);
+        try {
+            for (int i = 0; i < magic.length; i++) {
+                if (inputStream.read() != (magic[i] & 0xFF)) {
+                    return TEXT;
+                }
+            }
+
+            return BINARY;
+        } finally {
+            inputStream.reset();
+        }
+    }
+}
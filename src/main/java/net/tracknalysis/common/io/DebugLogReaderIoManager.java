@@ -15,16 +15,14 @@
  */
 package net.tracknalysis.common.io;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Arrays;
-
-import org.apache.commons.codec.binary.Base64;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simulator that can replay/validate communications based on the contents of a debug log.
+ * Simulator that can replay/validate communications based on the contents of a debug log
+ * in any {@link DebugLogFormat}.
  *
  * @author David Valeri
  *
@@ -32,11 +30,17 @@ import org.apache.commons.codec.binary.Base64;
  */
 public class DebugLogReaderIoManager implements IoManager {
 
-    private final Base64 codec = new Base64();
-    private final BufferedReader reader;
+    private final DebugLogRecordReader reader;
     
+    /**
+     * @param logFileInputStream the log, in either format
+     */
     public DebugLogReaderIoManager(InputStream logFileInputStream) throws IOException {
-        reader = new BufferedReader(new InputStreamReader(logFileInputStream)); 
+        this(DebugLogFormat.open(logFileInputStream));
+    }
+    
+    public DebugLogReaderIoManager(DebugLogRecordReader reader) {
+        this.reader = reader;
     }
     
     @Override
@@ -71,6 +75,44 @@ public class DebugLogReaderIoManager implements IoManager {
     	return writeAndReadInternal(command, delay, protocolHandler);
     }
 
+    @Override
+    public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+            int maxLength, long timeout) throws IOException {
+        return writeAndReadInternal(command, 0, null);
+    }
+    
+    @Override
+    public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        return readInternal(0, null);
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+            long timeout) throws IOException {
+        return writeAndReadInternal(command, 0, null);
+    }
+    
+    @Override
+    public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout)
+            throws IOException {
+        return readInternal(0, null);
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException {
+        return writeAndReadResponse(command, maxDelay, detector, null);
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException {
+        // The logged response is complete, so there is nothing to wait for.
+        return writeAndReadInternal(command, 0, protocolHandler);
+    }
+
     @Override
     public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout) throws IOException {
         return writeAndRead(command, result, timeout, null);
@@ -92,6 +134,24 @@ public class DebugLogReaderIoManager implements IoManager {
         return result;
     }
     
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] out,
+            long timeout) throws IOException {
+        return writeAndReadPipelined(commands, out, timeout, null);
+    }
+    
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] out,
+            long timeout, IoProtocolHandler protocolHandler) throws IOException {
+        // The writer logs each pipelined exchange as its own write and read entry.
+        IoManagerResult[] results = new IoManagerResult[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            results[i] = writeAndRead(commands[i], out[i], timeout, protocolHandler);
+        }
+        
+        return results;
+    }
+    
     @Override
     public IoManagerResult read() throws IOException {
         return read(null);
@@ -141,35 +201,27 @@ public class DebugLogReaderIoManager implements IoManager {
 			IoProtocolHandler protocolHandler) throws IOException {
     	IoManagerResult result = new IoManagerResult();
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	result.requestTxStartTime = System.currentTimeMillis();
+    	result.requestTxStartNanoTime = System.nanoTime();
     	
-        String line = reader.readLine();
+        DebugLogRecord record = readRecord(DebugLogRecord.Type.WRITE);
         
         byte[] protoCommand = command;
         if (protocolHandler != null) {
         	protoCommand = protocolHandler.wrapRequest(command);
         }
         
-        if (DebugLogWriterIoManager.WRITE_COMMENT.equals(line)) {
-            String outLine = reader.readLine();
-            
-            byte[] controlCommand = lineToBytes(outLine);
-            
-            if (!Arrays.equals(controlCommand, protoCommand)) {
-                throw new IOException("Command [" + protoCommand
-                        + "] not equal to expected command ["
-                        + controlCommand + "].");
-            }
-        } else {
-            throw new IOException("The line didn't start with ["
-                    + DebugLogWriterIoManager.WRITE_COMMENT
-                    + "].  Line was [" + line + "]");
-        }
+        checkCommand(record, protoCommand);
         
-        result.requestTxEndTime = System.currentTimeMillis();;
+        result.requestTxEndTime = System.currentTimeMillis();
+        result.requestTxEndNanoTime = System.nanoTime();
     	result.requestRxStartTime = result.requestTxEndTime;
+    	result.requestRxStartNanoTime = result.requestTxEndNanoTime;
     	result.requestRxEndTime = result.requestTxEndTime;
+    	result.requestRxEndNanoTime = result.requestTxEndNanoTime;
     	result.requestEndTime = System.currentTimeMillis();
+    	result.requestEndNanoTime = System.nanoTime();
         
         return result;
     }
@@ -179,10 +231,11 @@ public class DebugLogReaderIoManager implements IoManager {
 		
     	IoManagerResult result = new IoManagerResult();
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	
     	
     	
-    	String line = reader.readLine();
+    	DebugLogRecord record = readRecord(DebugLogRecord.Type.WRITE_AND_READ);
         
         byte[] protoCommand = command;
         if (protocolHandler != null) {
@@ -190,35 +243,25 @@ public class DebugLogReaderIoManager implements IoManager {
         }
         
         result.requestTxStartTime = System.currentTimeMillis();
+        result.requestTxStartNanoTime = System.nanoTime();
     	
-        if (DebugLogWriterIoManager.WRITE_AND_READ_COMMENT.equals(line)) {
-            String outLine = reader.readLine();
-            
-            byte[] controlCommand = lineToBytes(outLine);
-            
-            if (!Arrays.equals(controlCommand, protoCommand)) {
-                throw new IOException("Command [" + protoCommand
-                        + "] not equal to expected command ["
-                        + controlCommand + "].");
-            } else {
-            	result.requestTxEndTime = System.currentTimeMillis();
-            	delay(delay);
-            	result.requestRxStartTime = System.currentTimeMillis();
-            	result.result = lineToBytes(reader.readLine());
-            	result.requestRxEndTime = System.currentTimeMillis();
-                
-                if (protocolHandler != null) {
-                	result.result = protocolHandler.unwrapResponse(result.result);
-                }
-            }
-            
-        } else {
-            throw new IOException("The line didn't start with ["
-                    + DebugLogWriterIoManager.WRITE_AND_READ_COMMENT
-                    + "].  Line was [" + line + "]");
+        checkCommand(record, protoCommand);
+        
+        result.requestTxEndTime = System.currentTimeMillis();
+        result.requestTxEndNanoTime = System.nanoTime();
+        delay(delay);
+        result.requestRxStartTime = System.currentTimeMillis();
+        result.requestRxStartNanoTime = System.nanoTime();
+        result.result = record.getResponse();
+        result.requestRxEndTime = System.currentTimeMillis();
+        result.requestRxEndNanoTime = System.nanoTime();
+        
+        if (protocolHandler != null) {
+        	result.result = protocolHandler.unwrapResponse(result.result);
         }
         
         result.setRequestEndTime(System.currentTimeMillis());
+        result.requestEndNanoTime = System.nanoTime();
         
         return result;
     }
@@ -227,39 +270,52 @@ public class DebugLogReaderIoManager implements IoManager {
     	IoManagerResult result = new IoManagerResult();
     	result.result = new byte[0];
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	result.requestTxStartTime = result.requestStartTime;
+    	result.requestTxStartNanoTime = result.requestStartNanoTime;
     	result.requestTxEndTime = result.requestStartTime;
+    	result.requestTxEndNanoTime = result.requestStartNanoTime;
     	
     	result.requestRxStartTime = System.currentTimeMillis();
+    	result.requestRxStartNanoTime = System.nanoTime();
     	delay(delay);
     	
-    	String line = reader.readLine();
+    	DebugLogRecord record = readRecord(DebugLogRecord.Type.READ);
         
-        if (DebugLogWriterIoManager.READ_COMMENT.equals(line)) {
-        	
-        	result.result = lineToBytes(reader.readLine());
-        	result.requestRxEndTime = result.requestRxStartTime + delay / 2;
-        	
-        	if (protocolHandler != null) {
-        		result.result = protocolHandler.unwrapResponse(result.result);
-        	}
-        } else {
-            throw new IOException("The line didn't start with ["
-                    + DebugLogWriterIoManager.READ_COMMENT
-                    + "].  Line was [" + line + "]");
+        result.result = record.getResponse();
+        result.requestRxEndTime = result.requestRxStartTime + delay / 2;
+        result.requestRxEndNanoTime = result.requestRxStartNanoTime
+                + TimeUnit.MILLISECONDS.toNanos(delay) / 2;
+        
+        if (protocolHandler != null) {
+        	result.result = protocolHandler.unwrapResponse(result.result);
         }
         
         result.setRequestEndTime(System.currentTimeMillis());
+        result.requestEndNanoTime = System.nanoTime();
         
         return result;
     }
     
-    private byte[] lineToBytes(String line) throws IOException {
-        if (line == null) {
-            throw new IOException();
-        } else {
-            byte[] lineBase64Bytes = line.getBytes("UTF-8");
-            return codec.decode(lineBase64Bytes);
+    private DebugLogRecord readRecord(DebugLogRecord.Type expectedType) throws IOException {
+        DebugLogRecord record = reader.read();
+        
+        if (record == null) {
+            throw new IOException("Expected a [" + expectedType
+                    + "] record but reached the end of the log.");
+        } else if (record.getType() != expectedType) {
+            throw new IOException("Expected a [" + expectedType
+                    + "] record but found a [" + record.getType() + "] record.");
+        }
+        
+        return record;
+    }
+    
+    private void checkCommand(DebugLogRecord record, byte[] command) throws IOException {
+        if (!Arrays.equals(record.getCommand(), command)) {
+            throw new IOException("Command " + Arrays.toString(command)
+                    + " not equal to expected command "
+                    + Arrays.toString(record.getCommand()) + ".");
         }
     }
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+/**
+ * A single exchange recorded in a debug log.
+ *
+ * @author David Valeri
+ *
+ * @see DebugLogRecordReader
+ */
+public final class DebugLogRecord {
+
+    public static enum Type {
+        WRITE,
+        WRITE_AND_READ,
+        READ;
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final byte[] command;
+    private final byte[] response;
+
+    /**
+     * @param type the type of exchange
+     * @param timestamp the time of the exchange, in nanoseconds since the start of the log
+     * @param command the bytes written, {@code null} for {@link Type#READ}
+     * @param response the bytes read, {@code null} for {@link Type#WRITE}
+     */
+    public DebugLogRecord(Type type, long timestamp, byte[] command, byte[] response) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.command = command;
+        this.response = response;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time of the exchange, in nanoseconds since the start of the log.  Text
+     * logs do not record times, so their records have a timestamp of 0.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the bytes written, or {@code null} for {@link Type#READ}.
+     */
+    public byte[] getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the bytes read, or {@code null} for {@link Type#WRITE}.
+     */
+    public byte[] getResponse() {
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "DebugLogRecord [type=" + type + ", timestamp=" + timestamp + "]";
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the records of a debug log in order.  Implementations are not thread safe.
+ *
+ * @author David Valeri
+ *
+ * @see DebugLogFormat#open(java.io.InputStream)
+ */
+public interface DebugLogRecordReader extends Closeable {
+
+    /**
+     * Returns the next record, or {@code null} at the end of the log.
+     *
+     * @throws IOException if the log cannot be read or is corrupt
+     */
+    DebugLogRecord read() throws IOException;
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the records of a debug log in a particular {@link DebugLogFormat}.
+ * Implementations are not thread safe.
+ *
+ * @author David Valeri
+ */
+public interface DebugLogRecordWriter extends Closeable {
+
+    /**
+     * Appends a record to the log.  The arrays are not retained.
+     *
+     * @param type the type of exchange
+     * @param timestamp the time of the exchange, in nanoseconds since the start of the log
+     * @param command the bytes written, ignored for {@link DebugLogRecord.Type#READ}
+     * @param response the bytes read, ignored for {@link DebugLogRecord.Type#WRITE}
+     */
+    void write(DebugLogRecord.Type type, long timestamp, byte[] command, byte[] response)
+            throws IOException;
+
+    /**
+     * Flushes buffered records to the underlying stream.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Returns true if the writer flushes records according to its own durability policy,
+     * so that callers need not call {@link #flush()} after each record.
+     */
+    boolean isSelfFlushing();
+}
@@ -15,17 +15,15 @@
  */
 package net.tracknalysis.common.io;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.Charset;
-
-import org.apache.commons.codec.binary.Base64;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Decorator that adds logging of the bytes read and written in base 64 format.
+ * Decorator that adds logging of the bytes read and written in a {@link DebugLogFormat},
+ * base 64 text by default.
  *
  * @author David Valeri
  *
@@ -40,14 +38,47 @@ public class DebugLogWriterIoManager implements IoManager {
     public static final String READ_COMMENT = "# Read:";
     
     private final IoManager delegate;
-    private final Base64 codec = new Base64();
     
-    private final Writer writer; 
+    private final DebugLogRecordWriter writer;
+    
+    private final boolean flushEachRecord;
+    
+    private final long startNanoTime = System.nanoTime();
+    
+    private final ByteBufferPool bufferPool = ByteBufferPool.getSharedInstance();
+    
+    // Wrapped request and response buffers retained per exchange of a pipeline
+    private byte[][] wrappedRequestBuffers = new byte[1][];
+    
+    private byte[][] wrappedResponseBuffers = new byte[1][];
+    
+    private byte[][] pipelinedCommands;
+    
+    private byte[][] pipelinedOut;
+    
+    // Not a monitor so that a virtual thread blocked in the delegate does not pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
     
     public DebugLogWriterIoManager(IoManager delegate,
             OutputStream outputStream) throws IOException {
+        this(delegate, outputStream, DebugLogFormat.TEXT);
+    }
+    
+    public DebugLogWriterIoManager(IoManager delegate, OutputStream outputStream,
+            DebugLogFormat format) throws IOException {
+        this(delegate, format.newWriter(outputStream));
+    }
+    
+    /**
+     * Creates a decorator that logs to {@code writer}.  Records are flushed after each
+     * exchange unless {@code writer} is {@link DebugLogRecordWriter#isSelfFlushing() self
+     * flushing}, as an {@link AsyncDebugLogRecordWriter} is.  The writer is flushed on
+     * disconnect in either case.
+     */
+    public DebugLogWriterIoManager(IoManager delegate, DebugLogRecordWriter writer) {
         this.delegate = delegate;
-        writer = new OutputStreamWriter(new BufferedOutputStream(outputStream));
+        this.writer = writer;
+        this.flushEachRecord = !writer.isSelfFlushing();
     }
     
     @Override
@@ -58,175 +89,400 @@ public class DebugLogWriterIoManager implements IoManager {
     @Override
     public void disconnect() throws IOException {
         delegate.disconnect();
-        writer.flush();
+        // The writer is not thread safe, so serialize the flush with the exchanges.
+        lock.lock();
+        try {
+            writer.flush();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult write(byte[] command) throws IOException {
+    public IoManagerResult write(byte[] command) throws IOException {
         return write(command, null);
     }
     
     @Override
-    public synchronized IoManagerResult write(byte[] command,
+    public IoManagerResult write(byte[] command,
     		IoProtocolHandler protocolHandler) throws IOException {
+        lock.lock();
+        try {
     	
-    	byte[] finalCommand = command;
-    	if (protocolHandler != null) {
-    		finalCommand = protocolHandler.wrapRequest(command);
-    	}
-    	logWrite(finalCommand);
-        return delegate.write(finalCommand);
+        	byte[] finalCommand = command;
+        	if (protocolHandler != null) {
+        		finalCommand = wrapRequest(
+        				ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler), command, 0);
+        	}
+        	logWrite(finalCommand);
+            return delegate.write(finalCommand);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult writeAndRead(byte[] command, long delay) throws IOException {
+    public IoManagerResult writeAndRead(byte[] command, long delay) throws IOException {
         return writeAndRead(command, delay, null);
     }
     
     @Override
-    public synchronized IoManagerResult writeAndRead(byte[] command, long delay,
+    public IoManagerResult writeAndRead(byte[] command, long delay,
     		IoProtocolHandler protocolHandler) throws IOException {
+        lock.lock();
+        try {
     	
-    	byte[] finalCommand = command;
-    	if (protocolHandler != null) {
-    		finalCommand = protocolHandler.wrapRequest(command);
-    	}
+        	byte[] finalCommand = command;
+        	if (protocolHandler != null) {
+        		finalCommand = wrapRequest(
+        				ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler), command, 0);
+        	}
     	
-    	IoManagerResult result = delegate.writeAndRead(finalCommand, delay);
+        	IoManagerResult result = delegate.writeAndRead(finalCommand, delay);
     	
-    	logWriteAndRead(finalCommand, result.result);
+        	logWriteAndRead(finalCommand, result.result);
     	
-    	if (protocolHandler != null) {
-    		result.result = protocolHandler.unwrapResponse(result.result);
-    	}
+        	if (protocolHandler != null) {
+        		result.result = protocolHandler.unwrapResponse(result.result);
+        	}
     	
-    	result.requestEndTime = System.currentTimeMillis();
-    	return result;
+        	result.requestEndTime = System.currentTimeMillis();
+        	result.requestEndNanoTime = System.nanoTime();
+        	return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+            int maxLength, long timeout) throws IOException {
+        lock.lock();
+        try {
+            IoManagerResult result =
+                    delegate.writeAndReadUntil(command, delimiter, maxLength, timeout);
+            logWriteAndRead(command, result.result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        lock.lock();
+        try {
+            IoManagerResult result = delegate.readUntil(delimiter, maxLength, timeout);
+            logRead(result.result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+            long timeout) throws IOException {
+        lock.lock();
+        try {
+            IoManagerResult result = delegate.writeAndReadFrame(command, decoder, timeout);
+            logWriteAndRead(command, result.result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout)
+            throws IOException {
+        lock.lock();
+        try {
+            IoManagerResult result = delegate.readFrame(decoder, timeout);
+            logRead(result.result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException {
+        return writeAndReadResponse(command, maxDelay, detector, null);
+    }
+    
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException {
+        lock.lock();
+        try {
+            byte[] finalCommand = command;
+            if (protocolHandler != null) {
+                finalCommand = wrapRequest(
+                        ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler), command, 0);
+            }
+            
+            IoManagerResult result =
+                    delegate.writeAndReadResponse(finalCommand, maxDelay, detector);
+            
+            // Replayed as a write and read, which returns the logged response immediately.
+            logWriteAndRead(finalCommand, result.result);
+            
+            if (protocolHandler != null) {
+                result.result = protocolHandler.unwrapResponse(result.result);
+            }
+            
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
+            return result;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout)
+    public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout)
             throws IOException {
         return writeAndRead(command, result, timeout, null);
     }
     
     @Override
-    public synchronized IoManagerResult writeAndRead(byte[] command, byte[] out,
+    public IoManagerResult writeAndRead(byte[] command, byte[] out,
     		long timeout, IoProtocolHandler protocolHandler) throws IOException {
+        lock.lock();
+        try {
     	
-    	byte[] finalCommand = command;
-    	byte[] ioOut = out;
-    	if (protocolHandler != null) {
-    		finalCommand = protocolHandler.wrapRequest(command);
-    		ioOut = new byte[protocolHandler.getWrappedResponseLength(out.length)];
-    	}
+        	BufferIoProtocolHandler bufferProtocolHandler =
+        			ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+        	byte[] finalCommand = command;
+        	byte[] ioOut = out;
+        	if (bufferProtocolHandler != null) {
+        		finalCommand = wrapRequest(bufferProtocolHandler, command, 0);
+        		ioOut = getWrappedResponseBuffer(0,
+        				bufferProtocolHandler.getWrappedResponseLength(out.length));
+        	}
     	
-    	IoManagerResult result = delegate.writeAndRead(finalCommand, ioOut, timeout);
+        	IoManagerResult result = delegate.writeAndRead(finalCommand, ioOut, timeout);
     	
-    	logWriteAndRead(finalCommand, result.result);
+        	logWriteAndRead(finalCommand, result.result);
     	
     	
-    	if (protocolHandler != null) {
-    		
-    		byte[] unwrappedIoOut = protocolHandler.unwrapResponse(ioOut);
-    		if (unwrappedIoOut.length != out.length) {
-    			throw new IOException(
-    					"Error fulfilling the read request.  The unwrapped payload of length "
-    							+ unwrappedIoOut.length + " does not match the expected length of "
-    							+ out.length + ".");
-    		}
-    		
-    		System.arraycopy(unwrappedIoOut, 0, out, 0, unwrappedIoOut.length);
-    	}
+        	if (bufferProtocolHandler != null) {
+        		IoProtocolHandlers.unwrapResponse(bufferProtocolHandler, ByteBuffer.wrap(ioOut), out);
+        	}
     	
-    	result.result = out;
-        result.requestEndTime = System.currentTimeMillis();
-        return result;
+        	result.result = out;
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands,
+            byte[][] out, long timeout) throws IOException {
+        return writeAndReadPipelined(commands, out, timeout, null);
+    }
+    
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands,
+            byte[][] out, long timeout, IoProtocolHandler protocolHandler)
+            throws IOException {
+        lock.lock();
+        try {
+        
+            BufferIoProtocolHandler bufferProtocolHandler =
+                    ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+            byte[][] finalCommands = commands;
+            byte[][] ioOut = out;
+            if (bufferProtocolHandler != null) {
+                ensureExchangeCapacity(Math.max(commands.length, out.length));
+                if (pipelinedCommands == null || pipelinedCommands.length != commands.length) {
+                    pipelinedCommands = new byte[commands.length][];
+                }
+                if (pipelinedOut == null || pipelinedOut.length != out.length) {
+                    pipelinedOut = new byte[out.length][];
+                }
+                finalCommands = pipelinedCommands;
+                ioOut = pipelinedOut;
+                for (int i = 0; i < commands.length; i++) {
+                    finalCommands[i] = wrapRequest(bufferProtocolHandler, commands[i], i);
+                }
+                for (int i = 0; i < out.length; i++) {
+                    ioOut[i] = getWrappedResponseBuffer(i,
+                            bufferProtocolHandler.getWrappedResponseLength(out[i].length));
+                }
+            }
+        
+            IoManagerResult[] results;
+            try {
+                results = delegate.writeAndReadPipelined(finalCommands, ioOut, timeout);
+            } catch (PipelinedIoException e) {
+                // Log and unwrap the exchanges that did complete before reporting them.
+                completePipelined(e.getCompletedResults(), finalCommands, ioOut, out,
+                        bufferProtocolHandler);
+                throw e;
+            }
+        
+            completePipelined(results, finalCommands, ioOut, out, bufferProtocolHandler);
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void completePipelined(IoManagerResult[] results, byte[][] finalCommands,
+            byte[][] ioOut, byte[][] out, BufferIoProtocolHandler bufferProtocolHandler)
+            throws IOException {
+        for (int i = 0; i < results.length; i++) {
+            logWriteAndRead(finalCommands[i], results[i].result);
+        
+            if (bufferProtocolHandler != null) {
+                IoProtocolHandlers.unwrapResponse(bufferProtocolHandler,
+                        ByteBuffer.wrap(ioOut[i]), out[i]);
+            }
+        
+            results[i].result = out[i];
+            results[i].requestEndTime = System.currentTimeMillis();
+            results[i].requestEndNanoTime = System.nanoTime();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult read() throws IOException {
+    public IoManagerResult read() throws IOException {
         return read(null);
     }
     
     @Override
-    public synchronized IoManagerResult read(IoProtocolHandler protocolHandler) throws IOException {
+    public IoManagerResult read(IoProtocolHandler protocolHandler) throws IOException {
+        lock.lock();
+        try {
     	
-    	IoManagerResult result = delegate.read();
+        	IoManagerResult result = delegate.read();
     	
-    	logRead(result.result);
+        	logRead(result.result);
     	
-    	if (protocolHandler != null) {
-    		result.result = protocolHandler.unwrapResponse(result.result);
-    	}
+        	if (protocolHandler != null) {
+        		result.result = protocolHandler.unwrapResponse(result.result);
+        	}
     	
-    	result.requestEndTime = System.currentTimeMillis();
-        return result;
+        	result.requestEndTime = System.currentTimeMillis();
+        	result.requestEndNanoTime = System.nanoTime();
+            return result;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized IoManagerResult read(byte[] result, long timeout) throws IOException {
+    public IoManagerResult read(byte[] result, long timeout) throws IOException {
         return read(result, timeout, null);
     }
     
     @Override
     public IoManagerResult read(byte[] out, long timeout,
     		IoProtocolHandler protocolHandler) throws IOException {
+        lock.lock();
+        try {
     	
-    	byte[] ioOut = out;
-    	if (protocolHandler != null) {
-    		ioOut = new byte[protocolHandler.getWrappedResponseLength(out.length)];
-    	}
-    	
-    	IoManagerResult result = delegate.read(ioOut, timeout);
-    	logRead(result.result);
-    	
-    	if (protocolHandler != null) {
-    		
-    		byte[] unwrappedIoOut = protocolHandler.unwrapResponse(ioOut);
-    		if (unwrappedIoOut.length != out.length) {
-    			throw new IOException(
-    					"Error fulfilling the read request.  The unwrapped payload of length "
-    							+ unwrappedIoOut.length + " does not match the expected length of "
-    							+ out.length + ".");
-    		}
-    		
-    		System.arraycopy(unwrappedIoOut, 0, out, 0, unwrappedIoOut.length);
-    	}
-    	
-    	result.result = out;
-    	result.requestEndTime = System.currentTimeMillis();
-    	return result;
+        	BufferIoProtocolHandler bufferProtocolHandler =
+        			ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+        	byte[] ioOut = out;
+        	if (bufferProtocolHandler != null) {
+        		ioOut = getWrappedResponseBuffer(0,
+        				bufferProtocolHandler.getWrappedResponseLength(out.length));
+        	}
+    	
+        	IoManagerResult result = delegate.read(ioOut, timeout);
+        	logRead(result.result);
+    	
+        	if (bufferProtocolHandler != null) {
+        		IoProtocolHandlers.unwrapResponse(bufferProtocolHandler, ByteBuffer.wrap(ioOut), out);
+        	}
+    	
+        	result.result = out;
+        	result.requestEndTime = System.currentTimeMillis();
+        	result.requestEndNanoTime = System.nanoTime();
+        	return result;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized void flushAll() throws IOException {
-        delegate.flushAll();
+    public void flushAll() throws IOException {
+        lock.lock();
+        try {
+            delegate.flushAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Wraps {@code command} into the reusable request buffer of exchange {@code exchange}.
+     * The request is wrapped into a pooled buffer to learn its exact length, as the
+     * delegate writes whole arrays, and then copied into the retained buffer.  Fixed-length
+     * polls tend to repeat the same lengths, so the retained buffers are rarely replaced.
+     * The log writers copy or write the bytes before returning, so reuse is safe.
+     */
+    private byte[] wrapRequest(BufferIoProtocolHandler protocolHandler, byte[] command,
+            int exchange) throws IOException {
+        ByteBuffer wrapped = IoProtocolHandlers.wrapRequest(protocolHandler, command, bufferPool);
+        try {
+            byte[] buffer = getBuffer(wrappedRequestBuffers, exchange, wrapped.remaining());
+            wrapped.get(buffer);
+            return buffer;
+        } finally {
+            bufferPool.release(wrapped);
+        }
+    }
+    
+    /**
+     * Returns the reusable buffer of exchange {@code exchange} for reading a wrapped
+     * response of {@code length} bytes.
+     */
+    private byte[] getWrappedResponseBuffer(int exchange, int length) {
+        return getBuffer(wrappedResponseBuffers, exchange, length);
+    }
+    
+    private void ensureExchangeCapacity(int exchanges) {
+        if (wrappedRequestBuffers.length < exchanges) {
+            wrappedRequestBuffers = Arrays.copyOf(wrappedRequestBuffers, exchanges);
+            wrappedResponseBuffers = Arrays.copyOf(wrappedResponseBuffers, exchanges);
+        }
+    }
+    
+    private static byte[] getBuffer(byte[][] buffers, int exchange, int length) {
+        if (buffers[exchange] == null || buffers[exchange].length != length) {
+            buffers[exchange] = new byte[length];
+        }
+        
+        return buffers[exchange];
     }
     
     private void logWrite(byte[] bytes) throws IOException {
-        writer.write(WRITE_COMMENT);
-        writer.write("\r\n");
-        writer.write(new String(codec.encode(bytes), Charset.forName("UTF-8")));
-        writer.write("\r\n");
-        writer.flush();
+        log(DebugLogRecord.Type.WRITE, bytes, null);
     }
     
     private void logWriteAndRead(byte[] bytesOut, byte[] bytesIn) throws IOException {
-        writer.write(WRITE_AND_READ_COMMENT);
-        writer.write("\r\n");
-        writer.write(new String(codec.encode(bytesOut), Charset.forName("UTF-8")));
-        writer.write("\r\n");
-        writer.write(new String(codec.encode(bytesIn), Charset.forName("UTF-8")));
-        writer.write("\r\n");
-        writer.flush();
+        log(DebugLogRecord.Type.WRITE_AND_READ, bytesOut, bytesIn);
     }
     
     private void logRead(byte[] bytes) throws IOException {
-        writer.write(READ_COMMENT);
-        writer.write("\r\n");
-        writer.write(new String(codec.encode(bytes), Charset.forName("UTF-8")));
-        writer.write("\r\n");
-        writer.flush();
+        log(DebugLogRecord.Type.READ, null, bytes);
+    }
+    
+    private void log(DebugLogRecord.Type type, byte[] command, byte[] response)
+            throws IOException {
+        writer.write(type, System.nanoTime() - startNanoTime, command, response);
+        if (flushEachRecord) {
+            writer.flush();
+        }
     }
 }
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.util.Arrays;
+
+/**
+ * Incremental Knuth-Morris-Pratt search for a delimiter in a stream that arrives in
+ * chunks.  The partial match at the end of one chunk carries over to the next, so each
+ * byte is examined once and nothing is rescanned.
+ *
+ * @author David Valeri
+ */
+final class DelimiterMatcher {
+
+    private final byte[] delimiter;
+    private final int[] failure;
+    private int matched;
+
+    DelimiterMatcher(byte[] delimiter) {
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("The delimiter must not be empty.");
+        }
+
+        this.delimiter = delimiter.clone();
+        this.failure = new int[delimiter.length];
+
+        int k = 0;
+        for (int i = 1; i < delimiter.length; i++) {
+            while (k > 0 && delimiter[i] != delimiter[k]) {
+                k = failure[k - 1];
+            }
+            if (delimiter[i] == delimiter[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+    }
+
+    /**
+     * Returns true if this matcher searches for {@code candidate}.
+     */
+    boolean isFor(byte[] candidate) {
+        return Arrays.equals(delimiter, candidate);
+    }
+
+    /**
+     * Forgets any partial match.
+     */
+    void reset() {
+        matched = 0;
+    }
+
+    /**
+     * Scans {@code buffer} from {@code from}, inclusive, to {@code to}, exclusive,
+     * continuing any partial match from the previous call.
+     *
+     * @return the index just past the end of the first complete delimiter, or -1 if the
+     *         delimiter has not been completed
+     */
+    int find(byte[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            while (matched > 0 && delimiter[matched] != b) {
+                matched = failure[matched - 1];
+            }
+            if (delimiter[matched] == b) {
+                matched++;
+                if (matched == delimiter.length) {
+                    matched = 0;
+                    return i + 1;
+                }
+            }
+        }
+
+        return -1;
+    }
+}
@@ -17,6 +17,7 @@ package net.tracknalysis.common.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import net.tracknalysis.common.io.SocketManager;
 
@@ -37,6 +38,10 @@ public class DirectIoManager extends AbstractIoManager {
     public DirectIoManager(SocketManager delegate) {
         super(delegate);
     }
+    
+    public DirectIoManager(SocketManager delegate, ByteBufferPool bufferPool) {
+        super(delegate, bufferPool);
+    }
 
     @Override
 	public IoManagerResult read(byte[] out, long timeout,
@@ -44,25 +49,72 @@ public class DirectIoManager extends AbstractIoManager {
     	
     	IoManagerResult result = new IoManagerResult();
     	result.requestStartTime = System.currentTimeMillis();
+    	result.requestStartNanoTime = System.nanoTime();
     	result.requestTxStartTime = result.requestStartTime;
+    	result.requestTxStartNanoTime = result.requestStartNanoTime;
     	result.requestTxEndTime = result.requestStartTime;
+    	result.requestTxEndNanoTime = result.requestStartNanoTime;
     	
-    	byte[] ioOut = out;
-    	if (protocolHandler != null) {
-    		ioOut = new byte[protocolHandler.getWrappedResponseLength(out.length)];
-    	}
+    	BufferIoProtocolHandler bufferProtocolHandler =
+    			ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+    	ByteBuffer wrapped = null;
     	
+    	try {
+	    	byte[] ioOut = out;
+	    	int ioOffset = 0;
+	    	int nBytes = out.length;
+	    	if (bufferProtocolHandler != null) {
+	    		nBytes = bufferProtocolHandler.getWrappedResponseLength(out.length);
+	    		wrapped = getBufferPool().acquire(nBytes);
+	    		ioOut = wrapped.array();
+	    		ioOffset = wrapped.arrayOffset();
+	    	}
+	    	
+	    	result.requestRxStartTime = System.currentTimeMillis();
+	    	result.requestRxStartNanoTime = System.nanoTime();
+	    	int bytesRead = readFully(ioOut, ioOffset, nBytes, timeout);
+	        result.requestRxEndTime = System.currentTimeMillis();
+	        result.requestRxEndNanoTime = System.nanoTime();
+	        
+	        if (bytesRead != nBytes) {
+	            throw new IOException("Error fulfilling read request.  Read " + bytesRead
+	                    + " bytes of " + out.length + ".");
+	        }
+	        
+			if (wrapped != null) {
+				IoProtocolHandlers.unwrapResponse(bufferProtocolHandler, wrapped, out);
+			}
+    	} finally {
+    		getBufferPool().release(wrapped);
+    	}
+        
+        result.result = out;
+        result.requestEndTime = System.currentTimeMillis();
+        result.requestEndNanoTime = System.nanoTime();
+        
+        return result;
+    }
+    
+    /**
+     * Reads {@code nBytes} bytes into {@code ioOut} starting at {@code ioOffset}, polling
+     * {@link InputStream#available()} until the bytes arrive or {@code timeout} elapses.
+     *
+     * @return the number of bytes read, less than {@code nBytes} only if the end of the
+     *         stream was reached
+     */
+    private int readFully(byte[] ioOut, int ioOffset, int nBytes, long timeout)
+            throws IOException {
         InputStream is = getInputStream();
         
         long start = System.currentTimeMillis();
         long elapsedTime = 0;
-        int nBytes = ioOut.length;
         int bytesRead = 0;
         int available = is.available();
         
-        result.requestRxStartTime = System.currentTimeMillis();
-        synchronized (this) {
+        getIoLock().lock();
+        try {
 	        try {
+	            bytesRead = readPending(ioOut, ioOffset, nBytes);
 	            
 	            while (bytesRead < nBytes) {
 	                
@@ -79,7 +131,7 @@ public class DirectIoManager extends AbstractIoManager {
 	                
 	                if (available > 0) {
 	                    int bytesJustRead = 
-	                            is.read(ioOut, bytesRead, nBytes - bytesRead);
+	                            is.read(ioOut, ioOffset + bytesRead, nBytes - bytesRead);
 	                    if (bytesJustRead == -1) {
 	                        break;
 	                    }
@@ -103,30 +155,11 @@ public class DirectIoManager extends AbstractIoManager {
 	                        nBytes, elapsedTime, ioOut});
 	            }
 	        }
-        }
-        result.requestRxEndTime = System.currentTimeMillis();
-        
-        if (bytesRead != ioOut.length) {
-            throw new IOException("Error fulfilling read request.  Read " + bytesRead
-                    + " bytes of " + out.length + ".");
+        } finally {
+            getIoLock().unlock();
         }
         
-		if (protocolHandler != null) {
-			byte[] unwrappedIoOut = protocolHandler.unwrapResponse(ioOut);
-			if (unwrappedIoOut.length != out.length) {
-				throw new IOException(
-						"Error fulfilling the read request.  The unwrapped payload of length "
-								+ unwrappedIoOut.length + " does not match the expected length of "
-								+ out.length + ".");
-			}
-
-			System.arraycopy(unwrappedIoOut, 0, out, 0, unwrappedIoOut.length);
-		}
-        
-        result.result = out;
-        result.requestEndTime = System.currentTimeMillis();
-        
-        return result;
+        return bytesRead;
     }
 
     @Override
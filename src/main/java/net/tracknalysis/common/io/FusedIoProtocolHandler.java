@@ -0,0 +1,287 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Combines a stack of {@link IoProtocolStage}s into a single handler that applies all of
+ * them in one pass over the bytes.  Wrapping streams each payload byte through every
+ * stage straight into the destination buffer, and unwrapping streams each wrapped byte
+ * back through the stages, writing the payload over the wrapped bytes in place.  A stack
+ * of N stages therefore costs one traversal and at most one copy rather than N of each.
+ * <p/>
+ * Stages are listed from the payload outwards, in the order in which they are applied
+ * when wrapping.  For example, {@code new FusedIoProtocolHandler(crcFraming, stuffing)}
+ * frames the payload and then byte stuffs the whole frame.  A stage that writes the
+ * length of its input in a header must come before any stage whose output length depends
+ * on content.
+ * <p/>
+ * Instances are thread safe.  Each thread lazily creates its own set of codecs.
+ *
+ * @author David Valeri
+ */
+public class FusedIoProtocolHandler extends AbstractBufferIoProtocolHandler {
+
+    private final IoProtocolStage[] stages;
+    private final ThreadLocal<Pipeline> pipelines = new ThreadLocal<Pipeline>() {
+        @Override
+        protected Pipeline initialValue() {
+            return new Pipeline(stages);
+        }
+    };
+
+    /**
+     * @param stages the stages, from the payload outwards
+     */
+    public FusedIoProtocolHandler(IoProtocolStage... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("At least one stage is required.");
+        }
+
+        this.stages = stages.clone();
+    }
+
+    /**
+     * Returns the exact wrapped length of a request payload of length {@code length}, or
+     * an upper bound if the output of a stage depends on content.
+     */
+    @Override
+    public int getWrappedRequestLength(int length) throws IOException {
+        int exact = getEncodedLength(length);
+        if (exact >= 0) {
+            return exact;
+        }
+
+        for (IoProtocolStage stage : stages) {
+            length = stage.getMaxEncodedLength(length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the exact wrapped length of a response payload of length {@code length}.
+     *
+     * @throws IOException if the output of a stage depends on content, in which case the
+     *             response must be delimited by other means, such as
+     *             {@link IoManager#readUntil(byte[], int, long)}
+     */
+    @Override
+    public int getWrappedResponseLength(int length) throws IOException {
+        int exact = getEncodedLength(length);
+        if (exact < 0) {
+            throw new IOException("The wrapped length of a response depends on its content.");
+        }
+
+        return exact;
+    }
+
+    /**
+     * Wraps {@code raw}, returning an array of exactly the wrapped length.
+     */
+    @Override
+    public byte[] wrapRequest(byte[] raw) throws IOException {
+        byte[] wrapped = new byte[getWrappedRequestLength(raw.length)];
+        ByteBuffer wrappedBuffer = ByteBuffer.wrap(wrapped);
+        wrapRequest(raw, 0, raw.length, wrappedBuffer);
+
+        return wrappedBuffer.position() == wrapped.length
+                ? wrapped : Arrays.copyOf(wrapped, wrappedBuffer.position());
+    }
+
+    @Override
+    public void wrapRequest(byte[] raw, int offset, int length, ByteBuffer wrapped)
+            throws IOException {
+        Pipeline pipeline = pipelines.get();
+        pipeline.output.buffer = wrapped;
+        try {
+            pipeline.encode(raw, offset, length);
+        } finally {
+            pipeline.output.buffer = null;
+        }
+    }
+
+    @Override
+    public void unwrapResponse(ByteBuffer wrapped) throws IOException {
+        Pipeline pipeline = pipelines.get();
+        pipeline.input.buffer = wrapped;
+        try {
+            pipeline.decode(wrapped);
+        } finally {
+            pipeline.input.buffer = null;
+        }
+    }
+
+    private int getEncodedLength(int length) {
+        for (IoProtocolStage stage : stages) {
+            if (length < 0) {
+                break;
+            }
+            length = stage.getEncodedLength(length);
+        }
+
+        return length;
+    }
+
+    /**
+     * The codecs of one thread, linked so that each stage feeds the next.
+     */
+    private static final class Pipeline {
+
+        private final IoProtocolStage[] stages;
+        private final IoProtocolStage.Codec[] codecs;
+        private final int[] lengths;
+        private final IoProtocolStage.Sink[] encodeSinks;
+        private final IoProtocolStage.Sink[] decodeSinks;
+        private final BufferSink output = new BufferSink();
+        private final InPlaceSink input = new InPlaceSink();
+
+        Pipeline(IoProtocolStage[] stages) {
+            this.stages = stages;
+            codecs = new IoProtocolStage.Codec[stages.length];
+            lengths = new int[stages.length];
+            for (int i = 0; i < stages.length; i++) {
+                codecs[i] = stages[i].newCodec();
+            }
+
+            // encodeSinks[i] receives the input of stage i and decodeSinks[i] receives the
+            // wrapped bytes of stage i.  The last stage writes to the buffer when
+            // encoding and the first stage writes to the buffer when decoding.
+            encodeSinks = new IoProtocolStage.Sink[stages.length + 1];
+            decodeSinks = new IoProtocolStage.Sink[stages.length];
+            encodeSinks[stages.length] = output;
+            for (int i = stages.length - 1; i >= 0; i--) {
+                encodeSinks[i] = new EncodeSink(codecs[i], encodeSinks[i + 1]);
+            }
+            for (int i = 0; i < stages.length; i++) {
+                decodeSinks[i] = new DecodeSink(codecs[i], i == 0 ? input : decodeSinks[i - 1]);
+            }
+        }
+
+        void encode(byte[] raw, int offset, int length) throws IOException {
+            // Headers flow outwards, so outer stages begin before the inner stages that
+            // emit into them.  Trailers likewise end from the inside out.
+            lengths[0] = length;
+            for (int i = 1; i < stages.length; i++) {
+                lengths[i] = lengths[i - 1] < 0
+                        ? -1 : stages[i - 1].getEncodedLength(lengths[i - 1]);
+            }
+
+            for (int i = stages.length - 1; i >= 0; i--) {
+                codecs[i].beginEncode(lengths[i], encodeSinks[i + 1]);
+            }
+
+            IoProtocolStage.Sink sink = encodeSinks[0];
+            for (int i = offset; i < offset + length; i++) {
+                sink.put(raw[i]);
+            }
+
+            for (int i = 0; i < stages.length; i++) {
+                codecs[i].endEncode(encodeSinks[i + 1]);
+            }
+        }
+
+        void decode(ByteBuffer wrapped) throws IOException {
+            for (IoProtocolStage.Codec codec : codecs) {
+                codec.beginDecode();
+            }
+
+            int start = wrapped.position();
+            int limit = wrapped.limit();
+            input.writeIndex = start;
+
+            IoProtocolStage.Sink sink = decodeSinks[stages.length - 1];
+            for (int i = start; i < limit; i++) {
+                input.readIndex = i;
+                sink.put(wrapped.get(i));
+            }
+
+            for (int i = stages.length - 1; i >= 0; i--) {
+                codecs[i].endDecode();
+            }
+
+            wrapped.limit(input.writeIndex);
+            wrapped.position(start);
+        }
+    }
+
+    private static final class EncodeSink implements IoProtocolStage.Sink {
+
+        private final IoProtocolStage.Codec codec;
+        private final IoProtocolStage.Sink next;
+
+        EncodeSink(IoProtocolStage.Codec codec, IoProtocolStage.Sink next) {
+            this.codec = codec;
+            this.next = next;
+        }
+
+        @Override
+        public void put(byte b) throws IOException {
+            codec.encode(b, next);
+        }
+    }
+
+    private static final class DecodeSink implements IoProtocolStage.Sink {
+
+        private final IoProtocolStage.Codec codec;
+        private final IoProtocolStage.Sink next;
+
+        DecodeSink(IoProtocolStage.Codec codec, IoProtocolStage.Sink next) {
+            this.codec = codec;
+            this.next = next;
+        }
+
+        @Override
+        public void put(byte b) throws IOException {
+            codec.decode(b, next);
+        }
+    }
+
+    /**
+     * Writes the encoded bytes to the destination buffer.
+     */
+    private static final class BufferSink implements IoProtocolStage.Sink {
+
+        private ByteBuffer buffer;
+
+        @Override
+        public void put(byte b) {
+            buffer.put(b);
+        }
+    }
+
+    /**
+     * Writes the decoded payload over the wrapped bytes that have already been consumed.
+     */
+    private static final class InPlaceSink implements IoProtocolStage.Sink {
+
+        private ByteBuffer buffer;
+        private int readIndex;
+        private int writeIndex;
+
+        @Override
+        public void put(byte b) throws IOException {
+            if (writeIndex > readIndex) {
+                throw new IOException("A stage emitted more bytes than it consumed.");
+            }
+
+            buffer.put(writeIndex++, b);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming decoder for framed protocols whose frame length is only known once part of
+ * the frame has arrived, such as length-prefixed protocols.  Unlike
+ * {@link IoProtocolHandler#unwrapResponse(byte[])}, the decoder is fed the bytes received
+ * so far, in arbitrarily sized chunks, and reports a frame as soon as one is complete.
+ * <p/>
+ * Used with {@link IoManager#readFrame(IoFrameDecoder, long)} and
+ * {@link IoManager#writeAndReadFrame(byte[], IoFrameDecoder, long)}.
+ *
+ * @author David Valeri
+ *
+ * @see LengthFieldFrameDecoder
+ */
+public interface IoFrameDecoder {
+
+    /**
+     * Attempts to decode a frame from the bytes between the position and the limit of
+     * {@code in}.  If a complete frame is present, the position is advanced past it and
+     * the frame is returned.  Bytes that cannot begin a valid frame are consumed so that
+     * the decoder resynchronizes on the next frame.  Otherwise the position is left at the
+     * start of the partial frame and {@code null} is returned so that the caller can
+     * retry once more bytes have arrived.
+     *
+     * @param in the received bytes that have not yet been consumed
+     *
+     * @return the decoded frame, or {@code null} if no complete frame has arrived
+     *
+     * @throws IOException if the input cannot be decoded and resynchronization is not
+     *             possible
+     */
+    byte[] decode(ByteBuffer in) throws IOException;
+}
@@ -92,6 +92,47 @@ public interface IoManager {
 	IoManagerResult writeAndRead(byte[] command, long delay,
 			IoProtocolHandler protocolHandler) throws IOException;
 
+    /**
+     * Flushes all streams, writes a command to the output stream, flushing the
+     * stream afterwards, and then reads the response as it arrives until
+     * {@code detector} reports it complete or {@code maxDelay} elapses, whichever
+     * comes first.  Unlike {@link #writeAndRead(byte[], long)}, the full delay is
+     * only incurred if the response is not detected as complete.
+     * 
+     * @param command
+     *            the command bytes to write
+     * @param maxDelay
+     *            the maximum time, in milliseconds, to wait for the response
+     * @param detector
+     *            decides when the response is complete
+     * 
+     * @return the bytes read in the result, never {@code null}
+     */
+    IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException;
+    
+    /**
+     * Flushes all streams, writes a command to the output stream, flushing the
+     * stream afterwards, and then reads the response as it arrives until
+     * {@code detector} reports it complete or {@code maxDelay} elapses, whichever
+     * comes first.
+     * 
+     * @param command
+     *            the command bytes to write
+     * @param maxDelay
+     *            the maximum time, in milliseconds, to wait for the response
+     * @param detector
+     *            decides when the response is complete, applied to the raw, still
+     *            wrapped, response
+     * @param protocolHandler
+     *            an optional handler to alter the raw content
+     * 
+     * @return the bytes read in the result, never {@code null}
+     */
+    IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException;
+
     /**
      * Flushes all streams, writes a command to the output stream, flushing the
      * stream afterwards, and then reads {@code result.length} bytes on the
@@ -128,6 +169,84 @@ public interface IoManager {
 	IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout,
 			IoProtocolHandler protocolHandler) throws IOException;
 
+    /**
+     * Flushes all streams, writes each of {@code commands} to the output stream back to
+     * back without waiting for responses, and then reads the responses in order, reading
+     * {@code results[i].length} bytes into {@code results[i]} for {@code commands[i]}.
+     * Keeping several requests in flight avoids idling the link for a full round trip per
+     * request and is only suitable for protocols and devices that queue requests.
+     * 
+     * @param commands
+     *            the command bytes to write, in order
+     * @param results
+     *            the buffers to read the responses into, one per command
+     * @param timeout
+     *            the time in, milliseconds, to wait for each individual response to
+     *            fully arrive, measured from the time the preceding response was read,
+     *            before throwing an exception
+     * 
+     * @return the result of each request, in order, each with its own timings
+     * 
+     * @throws PipelinedIoException if a response could not be read, carrying the results
+     *             of the requests whose responses were read.  The responses of the
+     *             remaining requests may still arrive and are discarded by the next
+     *             exchange, which flushes all streams first.
+     */
+    IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results, long timeout)
+            throws IOException;
+    
+    /**
+     * Flushes all streams, writes each of {@code commands} to the output stream back to
+     * back without waiting for responses, and then reads the responses in order, reading
+     * {@code results[i].length} bytes into {@code results[i]} for {@code commands[i]}.
+     * Keeping several requests in flight avoids idling the link for a full round trip per
+     * request and is only suitable for protocols and devices that queue requests.
+     * 
+     * @param commands
+     *            the command bytes to write, in order
+     * @param results
+     *            the buffers to read the responses into, one per command
+     * @param timeout
+     *            the time in, milliseconds, to wait for each individual response to
+     *            fully arrive, measured from the time the preceding response was read,
+     *            before throwing an exception
+     * @param protocolHandler
+     *            an optional handler to alter the raw content of each request and response
+     * 
+     * @return the result of each request, in order, each with its own timings
+     * 
+     * @throws PipelinedIoException if a response could not be read, carrying the results
+     *             of the requests whose responses were read
+     * 
+     * @see #writeAndReadPipelined(byte[][], byte[][], long)
+     */
+    IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException;
+    
+    /**
+     * Flushes all streams, writes a command to the output stream, flushing the
+     * stream afterwards, and then reads until {@code delimiter} is received.
+     * 
+     * @param command
+     *            the command bytes to write
+     * 
+     * @see #readUntil(byte[], int, long)
+     */
+    IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter, int maxLength,
+            long timeout) throws IOException;
+
+    /**
+     * Flushes all streams, writes a command to the output stream, flushing the
+     * stream afterwards, and then reads until {@code decoder} decodes a frame.
+     * 
+     * @param command
+     *            the command bytes to write
+     * 
+     * @see #readFrame(IoFrameDecoder, long)
+     */
+    IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder, long timeout)
+            throws IOException;
+
     /**
      * Read all available bytes on the input stream.
      * 
@@ -144,6 +263,45 @@ public interface IoManager {
 	 * @return the bytes read in the result, never {@code null}
 	 */
     IoManagerResult read(IoProtocolHandler protocolHandler) throws IOException;
+    
+    /**
+     * Reads from the input stream until {@code delimiter} is received.  Bytes that arrive
+     * after the delimiter are retained and returned by the next read.
+     * 
+     * @param delimiter
+     *            the bytes that terminate the response, such as a line ending or prompt
+     * @param maxLength
+     *            the maximum length of the response, including the delimiter
+     * @param timeout
+     *            the time, in milliseconds, to wait for the delimiter before throwing
+     *            an exception
+     * 
+     * @return the bytes read, up to and including the delimiter, in the result
+     * 
+     * @throws IOException if the delimiter is not received within {@code maxLength}
+     *             bytes or {@code timeout}
+     */
+    IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException;
+
+    /**
+     * Reads from the input stream, feeding the bytes to {@code decoder} as they arrive,
+     * until it decodes a frame.  Bytes the decoder discards while resynchronizing are
+     * dropped and bytes that arrive after the frame are retained and returned by the next
+     * read.
+     * 
+     * @param decoder
+     *            the decoder that delimits, and optionally unwraps, the frame
+     * @param timeout
+     *            the time, in milliseconds, to wait for a complete frame before throwing
+     *            an exception
+     * 
+     * @return the frame returned by the decoder in the result
+     * 
+     * @throws IOException if a frame is not decoded within {@code timeout} or the
+     *             decoder fails
+     */
+    IoManagerResult readFrame(IoFrameDecoder decoder, long timeout) throws IOException;
 
     /**
      * Reads {@code result.length} bytes on the input stream into {@code result}
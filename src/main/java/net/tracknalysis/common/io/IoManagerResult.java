@@ -18,6 +18,11 @@ package net.tracknalysis.common.io;
 /**
  * Result structure including timing data and optional output data from a request to an
  * {@link IoManager}.  
+ * <p/>
+ * Each phase boundary is recorded twice, as wall-clock milliseconds since the epoch
+ * and as a monotonic {@link System#nanoTime()} value.  The millisecond values correlate
+ * with external events, while the nanosecond values should be used for measuring
+ * durations as they are unaffected by clock adjustments and have finer granularity.
  *
  * @author David Valeri
  */
@@ -30,6 +35,13 @@ public class IoManagerResult {
 	protected long requestRxEndTime;
 	protected long requestEndTime;
 	
+	protected long requestStartNanoTime;
+	protected long requestTxStartNanoTime;
+	protected long requestTxEndNanoTime;
+	protected long requestRxStartNanoTime;
+	protected long requestRxEndNanoTime;
+	protected long requestEndNanoTime;
+	
 	protected byte[] result;
 
 	/**
@@ -104,6 +116,106 @@ public class IoManagerResult {
 		this.requestEndTime = requestEndTime;
 	}
 
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the request processing started.
+	 */
+	public long getRequestStartNanoTime() {
+		return requestStartNanoTime;
+	}
+
+	public void setRequestStartNanoTime(long requestStartNanoTime) {
+		this.requestStartNanoTime = requestStartNanoTime;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the transmission of any data in
+	 * the request processing started.
+	 */
+	public long getRequestTxStartNanoTime() {
+		return requestTxStartNanoTime;
+	}
+
+	public void setRequestTxStartNanoTime(long requestTxStartNanoTime) {
+		this.requestTxStartNanoTime = requestTxStartNanoTime;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the transmission of any data in
+	 * the request processing concluded.
+	 */
+	public long getRequestTxEndNanoTime() {
+		return requestTxEndNanoTime;
+	}
+
+	public void setRequestTxEndNanoTime(long requestTxEndNanoTime) {
+		this.requestTxEndNanoTime = requestTxEndNanoTime;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the receiving of any data
+	 * resulting from the request processing started.
+	 */
+	public long getRequestRxStartNanoTime() {
+		return requestRxStartNanoTime;
+	}
+
+	public void setRequestRxStartNanoTime(long requestRxStartNanoTime) {
+		this.requestRxStartNanoTime = requestRxStartNanoTime;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the receiving of any data
+	 * resulting from the request processing concluded.
+	 */
+	public long getRequestRxEndNanoTime() {
+		return requestRxEndNanoTime;
+	}
+
+	public void setRequestRxEndNanoTime(long requestRxEndNanoTime) {
+		this.requestRxEndNanoTime = requestRxEndNanoTime;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the request processing concluded.
+	 */
+	public long getRequestEndNanoTime() {
+		return requestEndNanoTime;
+	}
+
+	public void setRequestEndNanoTime(long requestEndNanoTime) {
+		this.requestEndNanoTime = requestEndNanoTime;
+	}
+	
+	/**
+	 * Returns the duration in nanoseconds spent transmitting the request.
+	 */
+	public long getTxDurationNanos() {
+		return requestTxEndNanoTime - requestTxStartNanoTime;
+	}
+	
+	/**
+	 * Returns the duration in nanoseconds between the end of transmission and the start
+	 * of receiving the response, such as a fixed delay before reading.
+	 */
+	public long getWaitDurationNanos() {
+		return requestRxStartNanoTime - requestTxEndNanoTime;
+	}
+	
+	/**
+	 * Returns the duration in nanoseconds spent receiving the response, including any
+	 * time spent waiting for bytes to arrive.
+	 */
+	public long getRxDurationNanos() {
+		return requestRxEndNanoTime - requestRxStartNanoTime;
+	}
+	
+	/**
+	 * Returns the duration in nanoseconds of the entire request processing.
+	 */
+	public long getTotalDurationNanos() {
+		return requestEndNanoTime - requestStartNanoTime;
+	}
+
 	/**
 	 * If applicable to the request, returns the output data that resulted from
 	 * the request processing.
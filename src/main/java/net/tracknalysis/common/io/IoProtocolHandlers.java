@@ -0,0 +1,70 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers shared by the IO managers for running protocol handlers against pooled buffers.
+ *
+ * @author David Valeri
+ */
+final class IoProtocolHandlers {
+
+    private IoProtocolHandlers() {
+        // Hidden in utility class.
+    }
+
+    /**
+     * Wraps {@code command} into a buffer acquired from {@code pool}.  The returned buffer
+     * is flipped, ready for reading, and must be released to {@code pool} by the caller.
+     */
+    static ByteBuffer wrapRequest(BufferIoProtocolHandler protocolHandler, byte[] command,
+            ByteBufferPool pool) throws IOException {
+        ByteBuffer wrapped = pool.acquire(protocolHandler.getWrappedRequestLength(command.length));
+        boolean success = false;
+        try {
+            protocolHandler.wrapRequest(command, 0, command.length, wrapped);
+            wrapped.flip();
+            success = true;
+        } finally {
+            if (!success) {
+                pool.release(wrapped);
+            }
+        }
+
+        return wrapped;
+    }
+
+    /**
+     * Unwraps the remaining bytes of {@code wrapped} in place and copies the payload into
+     * {@code out}, verifying that the payload exactly fills {@code out}.
+     */
+    static void unwrapResponse(BufferIoProtocolHandler protocolHandler, ByteBuffer wrapped,
+            byte[] out) throws IOException {
+        protocolHandler.unwrapResponse(wrapped);
+
+        if (wrapped.remaining() != out.length) {
+            throw new IOException(
+                    "Error fulfilling the read request.  The unwrapped payload of length "
+                            + wrapped.remaining() + " does not match the expected length of "
+                            + out.length + ".");
+        }
+
+        wrapped.get(out);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+
+/**
+ * A single layer of a protocol stack, such as framing, byte stuffing or a checksum, that
+ * is combined with other layers by a {@link FusedIoProtocolHandler}.  Unlike an
+ * {@link IoProtocolHandler}, a stage transforms bytes one at a time as they stream
+ * through it, so that any number of stages are applied in a single pass over the payload
+ * without intermediate copies.
+ *
+ * @author David Valeri
+ */
+public interface IoProtocolStage {
+
+    /**
+     * Returns the exact encoded length of a payload of length {@code length}, or -1 if the
+     * encoded length depends on the content of the payload.
+     */
+    int getEncodedLength(int length);
+
+    /**
+     * Returns the maximum encoded length of a payload of length {@code length}.
+     */
+    int getMaxEncodedLength(int length);
+
+    /**
+     * Returns a new codec for this stage.  Codecs hold the state of a single encode or
+     * decode operation and are only used by one thread at a time.
+     */
+    Codec newCodec();
+
+    /**
+     * Receives the bytes emitted by a codec.
+     */
+    interface Sink {
+
+        void put(byte b) throws IOException;
+    }
+
+    /**
+     * Streams the bytes of one payload through a stage.  A codec is reused for successive
+     * operations, each of which starts with a call to {@code beginEncode} or
+     * {@code beginDecode}.
+     */
+    interface Codec {
+
+        /**
+         * Starts encoding a payload of {@code length} bytes, emitting any header to
+         * {@code out}.
+         *
+         * @param length the length of the payload, or -1 if it is not known in advance
+         *
+         * @throws IOException if the stage requires the length and it is not known
+         */
+        void beginEncode(int length, Sink out) throws IOException;
+
+        void encode(byte b, Sink out) throws IOException;
+
+        /**
+         * Completes encoding the payload, emitting any trailer to {@code out}.
+         */
+        void endEncode(Sink out) throws IOException;
+
+        void beginDecode();
+
+        /**
+         * Decodes the next byte, emitting any payload bytes to {@code out}.  A codec must
+         * never have emitted more bytes than it has consumed, so that decoding can be
+         * performed in place.
+         *
+         * @throws IOException if the byte is invalid at this point of the payload
+         */
+        void decode(byte b, Sink out) throws IOException;
+
+        /**
+         * Completes decoding the payload.
+         *
+         * @throws IOException if the encoded payload was incomplete or invalid
+         */
+        void endDecode() throws IOException;
+    }
+}
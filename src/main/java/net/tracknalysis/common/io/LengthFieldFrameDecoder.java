@@ -0,0 +1,180 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes frames that declare their length in an unsigned, big-endian header field.  The
+ * total length of a frame is the end offset of the length field plus the value of the
+ * field plus a length adjustment, which accounts for any trailer, such as a checksum, not
+ * counted by the field.  For example, a frame consisting of a two byte length of the
+ * payload, the payload and a four byte checksum is decoded by
+ * {@code new LengthFieldFrameDecoder(1024, 0, 2, 4, 2)}, which also strips the header.
+ * <p/>
+ * Frames may optionally begin with a fixed preamble.  When the preamble does not match,
+ * the declared length is outside the permitted range, or {@link #isValid} rejects the
+ * frame, a single byte is discarded and decoding resumes at the next byte, so the decoder
+ * resynchronizes after garbage or a corrupted frame.
+ *
+ * @author David Valeri
+ */
+public class LengthFieldFrameDecoder implements IoFrameDecoder {
+
+    private final int maxFrameLength;
+    private final int lengthFieldOffset;
+    private final int lengthFieldLength;
+    private final int lengthFieldEndOffset;
+    private final int lengthAdjustment;
+    private final int initialBytesToStrip;
+    private final byte[] preamble;
+    private final AtomicLong discardedBytes = new AtomicLong();
+
+    /**
+     * @param maxFrameLength the maximum total length of a frame
+     * @param lengthFieldOffset the offset of the length field in the frame
+     * @param lengthFieldLength the size of the length field in bytes, 1 to 4
+     * @param lengthAdjustment the number of bytes in the frame, after the length field,
+     *            not counted by the field, may be negative if the field counts itself or
+     *            the bytes before it
+     * @param initialBytesToStrip the number of bytes to strip from the start of each
+     *            decoded frame
+     */
+    public LengthFieldFrameDecoder(int maxFrameLength, int lengthFieldOffset,
+            int lengthFieldLength, int lengthAdjustment, int initialBytesToStrip) {
+        this(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment,
+                initialBytesToStrip, new byte[0]);
+    }
+
+    /**
+     * @param maxFrameLength the maximum total length of a frame
+     * @param lengthFieldOffset the offset of the length field in the frame, including the
+     *            preamble
+     * @param lengthFieldLength the size of the length field in bytes, 1 to 4
+     * @param lengthAdjustment the number of bytes in the frame, after the length field,
+     *            not counted by the field, may be negative if the field counts itself or
+     *            the bytes before it
+     * @param initialBytesToStrip the number of bytes to strip from the start of each
+     *            decoded frame
+     * @param preamble the bytes with which every frame starts
+     */
+    public LengthFieldFrameDecoder(int maxFrameLength, int lengthFieldOffset,
+            int lengthFieldLength, int lengthAdjustment, int initialBytesToStrip,
+            byte... preamble) {
+        if (lengthFieldLength < 1 || lengthFieldLength > 4) {
+            throw new IllegalArgumentException("The length field must be 1 to 4 bytes.");
+        }
+
+        if (lengthFieldOffset < preamble.length) {
+            throw new IllegalArgumentException(
+                    "The length field must not overlap the preamble.");
+        }
+
+        this.maxFrameLength = maxFrameLength;
+        this.lengthFieldOffset = lengthFieldOffset;
+        this.lengthFieldLength = lengthFieldLength;
+        this.lengthFieldEndOffset = lengthFieldOffset + lengthFieldLength;
+        this.lengthAdjustment = lengthAdjustment;
+        this.initialBytesToStrip = initialBytesToStrip;
+        this.preamble = preamble.clone();
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer in) throws IOException {
+        while (true) {
+            int start = in.position();
+            int available = in.remaining();
+
+            int preambleBytes = Math.min(available, preamble.length);
+            boolean resync = false;
+            for (int i = 0; i < preambleBytes && !resync; i++) {
+                resync = in.get(start + i) != preamble[i];
+            }
+
+            if (!resync) {
+                if (available < lengthFieldEndOffset) {
+                    return null;
+                }
+
+                long frameLength = lengthFieldEndOffset + getLength(in, start)
+                        + lengthAdjustment;
+                if (frameLength < lengthFieldEndOffset || frameLength < initialBytesToStrip
+                        || frameLength > maxFrameLength) {
+                    resync = true;
+                } else if (available < frameLength) {
+                    return null;
+                } else if (isValid(in, start, (int) frameLength)) {
+                    byte[] frame = extractFrame(in, start, (int) frameLength);
+                    in.position(start + (int) frameLength);
+                    return frame;
+                } else {
+                    resync = true;
+                }
+            }
+
+            in.position(start + 1);
+            discardedBytes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of bytes discarded while resynchronizing.
+     */
+    public long getDiscardedByteCount() {
+        return discardedBytes.get();
+    }
+
+    /**
+     * Returns true if the complete frame of {@code frameLength} bytes starting at absolute
+     * position {@code start} of {@code in} is valid, for example because its checksum
+     * matches.  Invalid frames are treated as garbage.  The default implementation accepts
+     * all frames.
+     */
+    protected boolean isValid(ByteBuffer in, int start, int frameLength) {
+        return true;
+    }
+
+    /**
+     * Returns the decoded form of the valid frame of {@code frameLength} bytes starting at
+     * absolute position {@code start} of {@code in}.  The default implementation returns
+     * a copy of the frame without its first {@code initialBytesToStrip} bytes.
+     * Implementations must not change the position or limit of {@code in}.
+     */
+    protected byte[] extractFrame(ByteBuffer in, int start, int frameLength) {
+        byte[] frame = new byte[frameLength - initialBytesToStrip];
+        if (in.hasArray()) {
+            System.arraycopy(in.array(), in.arrayOffset() + start + initialBytesToStrip,
+                    frame, 0, frame.length);
+        } else {
+            for (int i = 0; i < frame.length; i++) {
+                frame[i] = in.get(start + initialBytesToStrip + i);
+            }
+        }
+
+        return frame;
+    }
+
+    private long getLength(ByteBuffer in, int start) {
+        long length = 0;
+        for (int i = start + lengthFieldOffset; i < start + lengthFieldEndOffset; i++) {
+            length = (length << 8) | (in.get(i) & 0xFF);
+        }
+
+        return length;
+    }
+}
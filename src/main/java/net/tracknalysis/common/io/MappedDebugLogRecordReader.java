@@ -0,0 +1,411 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads {@link DebugLogFormat#BINARY} logs through a memory mapping of the log file and
+ * supports seeking to a record number or a time, so that replay can resume at any point
+ * of a long session without reading the records before it.
+ * <p/>
+ * Seeking uses a sparse index holding the offset and timestamp of every Nth record.  The
+ * index is loaded from a sidecar file named after the log with an {@code .idx} suffix.
+ * If the sidecar is missing or was built for a different length of log, the index is
+ * built by scanning the length and timestamp of each record and then saved.  A seek
+ * then costs a binary search of the index and a scan of fewer than N records.
+ * <p/>
+ * Only complete records are read.  A record cut off at the end of the log, such as by
+ * a crash while logging, ends the log.  Text logs must first be converted with
+ * {@link DebugLogConverter}.  Instances are not thread safe.
+ *
+ * @author David Valeri
+ */
+public class MappedDebugLogRecordReader implements DebugLogRecordReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedDebugLogRecordReader.class);
+
+    public static final int DEFAULT_INDEX_INTERVAL = 1024;
+
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final byte[] INDEX_MAGIC = new byte[] {'T', 'D', 'L', 'I'};
+    private static final int INDEX_VERSION = 1;
+
+    // Mappings are limited to 2GB, so larger logs are mapped in segments.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+    private final long startTime;
+
+    private int indexInterval;
+    private long[] indexOffsets;
+    private long[] indexTimestamps;
+    private int indexSize;
+    private long recordCount;
+
+    private long offset;
+    private long recordNumber;
+
+    /**
+     * Opens {@code logFile} with an index entry for every 1024 records.
+     */
+    public MappedDebugLogRecordReader(File logFile) throws IOException {
+        this(logFile, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * @param logFile the binary log
+     * @param indexInterval the number of records between index entries when building the
+     *            index, ignored if the index is loaded from the sidecar file
+     */
+    public MappedDebugLogRecordReader(File logFile, int indexInterval) throws IOException {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("The index interval must be positive.");
+        }
+
+        file = new RandomAccessFile(logFile, "r");
+        boolean success = false;
+        try {
+            FileChannel channel = file.getChannel();
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long segmentStart = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                        Math.min(SEGMENT_SIZE, length - segmentStart));
+            }
+
+            startTime = readHeader();
+
+            File indexFile = new File(logFile.getPath() + INDEX_SUFFIX);
+            if (!loadIndex(indexFile)) {
+                this.indexInterval = indexInterval;
+                buildIndex();
+                saveIndex(indexFile);
+            }
+
+            offset = BinaryDebugLogRecordWriter.HEADER_LENGTH;
+            success = true;
+        } finally {
+            if (!success) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the wall clock start time of the log, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the number of complete records in the log.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of the record that the next call to {@link #read()} returns.
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Positions the reader so that the next call to {@link #read()} returns record
+     * {@code recordNumber}, counting from 0.
+     *
+     * @throws IllegalArgumentException if {@code recordNumber} is negative or greater
+     *             than the number of records
+     */
+    public void seek(long recordNumber) throws IOException {
+        if (recordNumber < 0 || recordNumber > recordCount) {
+            throw new IllegalArgumentException("Record " + recordNumber
+                    + " is outside of the log of " + recordCount + " records.");
+        }
+
+        int entry = (int) Math.min(recordNumber / indexInterval, indexSize - 1);
+        if (entry < 0) {
+            offset = BinaryDebugLogRecordWriter.HEADER_LENGTH;
+            this.recordNumber = 0;
+        } else {
+            offset = indexOffsets[entry];
+            this.recordNumber = (long) entry * indexInterval;
+        }
+
+        while (this.recordNumber < recordNumber) {
+            skip();
+        }
+    }
+
+    /**
+     * Positions the reader at the first record logged at or after {@code time} since the
+     * start of the log, or at the end of the log if there is none.
+     *
+     * @return the number of the record that the next call to {@link #read()} returns
+     */
+    public long seekToTime(long time, TimeUnit unit) throws IOException {
+        long timestamp = unit.toNanos(time);
+
+        // Find the last index entry before the time and scan forward from it.
+        int low = 0;
+        int high = indexSize - 1;
+        int entry = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimestamps[mid] < timestamp) {
+                entry = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        seek(entry < 0 ? 0 : (long) entry * indexInterval);
+        while (recordNumber < recordCount && getLong(offset + 5) < timestamp) {
+            skip();
+        }
+
+        return recordNumber;
+    }
+
+    @Override
+    public DebugLogRecord read() throws IOException {
+        if (recordNumber >= recordCount) {
+            return null;
+        }
+
+        int recordLength = getInt(offset);
+        byte[] record = new byte[recordLength];
+        get(offset + 4, record);
+        DebugLogRecord result = BinaryDebugLogRecordReader.decode(record, 0, recordLength);
+
+        offset += 4 + recordLength;
+        recordNumber++;
+        return result;
+    }
+
+    /**
+     * Closes the file.  The mapping itself is released once it is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void skip() {
+        offset += 4 + getInt(offset);
+        recordNumber++;
+    }
+
+    private long readHeader() throws IOException {
+        byte[] magic = new byte[BinaryDebugLogRecordWriter.MAGIC.length];
+        if (length < BinaryDebugLogRecordWriter.HEADER_LENGTH) {
+            throw new IOException("The log is not a binary debug log.");
+        }
+
+        get(0, magic);
+        if (!Arrays.equals(BinaryDebugLogRecordWriter.MAGIC, magic)) {
+            throw new IOException("The log is not a binary debug log.");
+        }
+
+        int version = getByte(magic.length) & 0xFF;
+        if (version != BinaryDebugLogRecordWriter.VERSION) {
+            throw new IOException("Unsupported binary debug log version " + version + ".");
+        }
+
+        return getLong(magic.length + 1);
+    }
+
+    private void buildIndex() {
+        indexOffsets = new long[16];
+        indexTimestamps = new long[16];
+        indexSize = 0;
+
+        long position = BinaryDebugLogRecordWriter.HEADER_LENGTH;
+        long count = 0;
+        while (position + 4 <= length) {
+            int recordLength = getInt(position);
+            if (recordLength < BinaryDebugLogRecordWriter.RECORD_PREFIX_LENGTH
+                    || recordLength > BinaryDebugLogRecordReader.MAX_RECORD_LENGTH
+                    || position + 4 + recordLength > length) {
+                break;
+            }
+
+            if (count % indexInterval == 0) {
+                if (indexSize == indexOffsets.length) {
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                    indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                }
+                indexOffsets[indexSize] = position;
+                indexTimestamps[indexSize] = getLong(position + 5);
+                indexSize++;
+            }
+
+            position += 4 + recordLength;
+            count++;
+        }
+
+        if (position != length) {
+            LOG.warn("Ignoring {} bytes of incomplete or corrupt records at the end of the log.",
+                    length - position);
+        }
+
+        recordCount = count;
+    }
+
+    /**
+     * Loads the index from {@code indexFile} if it exists and was built for this log.
+     *
+     * @return true if the index was loaded
+     */
+    private boolean loadIndex(File indexFile) {
+        if (!indexFile.isFile()) {
+            return false;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                byte[] magic = new byte[INDEX_MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(INDEX_MAGIC, magic) || in.readUnsignedByte() != INDEX_VERSION
+                        || in.readLong() != length || in.readLong() != startTime) {
+                    return false;
+                }
+
+                indexInterval = in.readInt();
+                recordCount = in.readLong();
+                indexSize = in.readInt();
+                if (indexInterval < 1 || indexSize < 0 || recordCount < 0
+                        || indexSize != (recordCount + indexInterval - 1)
+                                / indexInterval) {
+                    return false;
+                }
+
+                indexOffsets = new long[indexSize];
+                indexTimestamps = new long[indexSize];
+                for (int i = 0; i < indexSize; i++) {
+                    indexOffsets[i] = in.readLong();
+                    indexTimestamps[i] = in.readLong();
+                }
+
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable debug log index " + indexFile + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the index to {@code indexFile}.  Failure to save is not fatal, the index is
+     * simply built again next time.
+     */
+    private void saveIndex(File indexFile) {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(indexFile)));
+            try {
+                out.write(INDEX_MAGIC);
+                out.writeByte(INDEX_VERSION);
+                out.writeLong(length);
+                out.writeLong(startTime);
+                out.writeInt(indexInterval);
+                out.writeLong(recordCount);
+                out.writeInt(indexSize);
+                for (int i = 0; i < indexSize; i++) {
+                    out.writeLong(indexOffsets[i]);
+                    out.writeLong(indexTimestamps[i]);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to save debug log index " + indexFile + ".", e);
+        }
+    }
+
+    private byte getByte(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private int getInt(long position) {
+        int segmentOffset = (int) (position & SEGMENT_MASK);
+        if (segmentOffset <= SEGMENT_SIZE - 4) {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getInt(segmentOffset);
+        }
+
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (getByte(position + i) & 0xFF);
+        }
+
+        return value;
+    }
+
+    private long getLong(long position) {
+        int segmentOffset = (int) (position & SEGMENT_MASK);
+        if (segmentOffset <= SEGMENT_SIZE - 8) {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getLong(segmentOffset);
+        }
+
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (getByte(position + i) & 0xFF);
+        }
+
+        return value;
+    }
+
+    private void get(long position, byte[] destination) {
+        int copied = 0;
+        while (copied < destination.length) {
+            MappedByteBuffer segment = segments[(int) ((position + copied) >>> SEGMENT_SHIFT)];
+            int segmentOffset = (int) ((position + copied) & SEGMENT_MASK);
+            int count = (int) Math.min(destination.length - copied, SEGMENT_SIZE - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(destination, copied, count);
+            copied += count;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tracknalysis.common.metrics.IntervalLatencyRecorder;
+import net.tracknalysis.common.metrics.LatencySnapshot;
+
+/**
+ * Decorator that records the phase timings of every {@link IoManagerResult} produced by
+ * the delegate in per-operation latency histograms.  Recording is lock-free and
+ * allocation-free, so the decorator adds negligible overhead to the calling thread.
+ * Statistics are consumed as interval snapshots; taking a snapshot resets the interval.
+ *
+ * @author David Valeri
+ *
+ * @see DebugLogWriterIoManager
+ */
+public class MetricsIoManager implements IoManager {
+
+    /**
+     * The types of operations for which statistics are kept.
+     */
+    public static enum Operation {
+        WRITE(true, false),
+        WRITE_AND_READ_DELAY(true, true),
+        WRITE_AND_READ_RESPONSE(true, true),
+        WRITE_AND_READ_TIMEOUT(true, true),
+        WRITE_AND_READ_PIPELINED(true, true),
+        WRITE_AND_READ_UNTIL(true, true),
+        WRITE_AND_READ_FRAME(true, true),
+        READ(false, true),
+        READ_TIMEOUT(false, true),
+        READ_UNTIL(false, true),
+        READ_FRAME(false, true);
+
+        private final boolean transmits;
+        private final boolean receives;
+
+        private Operation(boolean transmits, boolean receives) {
+            this.transmits = transmits;
+            this.receives = receives;
+        }
+
+        /**
+         * Returns true if the operation has a transmit phase.
+         */
+        public boolean isTransmitting() {
+            return transmits;
+        }
+
+        /**
+         * Returns true if the operation has a receive phase.
+         */
+        public boolean isReceiving() {
+            return receives;
+        }
+    }
+
+    private final IoManager delegate;
+
+    private final Map<Operation, OperationMetrics> metrics =
+            new EnumMap<Operation, OperationMetrics>(Operation.class);
+
+    public MetricsIoManager(IoManager delegate) {
+        this.delegate = delegate;
+
+        for (Operation operation : Operation.values()) {
+            metrics.put(operation, new OperationMetrics(operation));
+        }
+    }
+
+    @Override
+    public void connect() throws IOException {
+        delegate.connect();
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        delegate.disconnect();
+    }
+
+    @Override
+    public IoManagerResult write(byte[] command) throws IOException {
+        return write(command, null);
+    }
+
+    @Override
+    public IoManagerResult write(byte[] command, IoProtocolHandler protocolHandler)
+            throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE);
+        try {
+            return operationMetrics.record(delegate.write(command, protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, long delay) throws IOException {
+        return writeAndRead(command, delay, null);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, long delay,
+            IoProtocolHandler protocolHandler) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_DELAY);
+        try {
+            return operationMetrics.record(
+                    delegate.writeAndRead(command, delay, protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+            int maxLength, long timeout) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_UNTIL);
+        try {
+            return operationMetrics.record(
+                    delegate.writeAndReadUntil(command, delimiter, maxLength, timeout));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+            throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.READ_UNTIL);
+        try {
+            return operationMetrics.record(delegate.readUntil(delimiter, maxLength, timeout));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+            long timeout) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_FRAME);
+        try {
+            return operationMetrics.record(
+                    delegate.writeAndReadFrame(command, decoder, timeout));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout)
+            throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.READ_FRAME);
+        try {
+            return operationMetrics.record(delegate.readFrame(decoder, timeout));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector) throws IOException {
+        return writeAndReadResponse(command, maxDelay, detector, null);
+    }
+
+    @Override
+    public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+            ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+            throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_RESPONSE);
+        try {
+            return operationMetrics.record(delegate.writeAndReadResponse(
+                    command, maxDelay, detector, protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout)
+            throws IOException {
+        return writeAndRead(command, result, timeout, null);
+    }
+
+    @Override
+    public IoManagerResult writeAndRead(byte[] command, byte[] result, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_TIMEOUT);
+        try {
+            return operationMetrics.record(
+                    delegate.writeAndRead(command, result, timeout, protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results,
+            long timeout) throws IOException {
+        return writeAndReadPipelined(commands, results, timeout, null);
+    }
+
+    @Override
+    public IoManagerResult[] writeAndReadPipelined(byte[][] commands, byte[][] results,
+            long timeout, IoProtocolHandler protocolHandler) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.WRITE_AND_READ_PIPELINED);
+        try {
+            IoManagerResult[] pipelinedResults = delegate.writeAndReadPipelined(
+                    commands, results, timeout, protocolHandler);
+            for (IoManagerResult result : pipelinedResults) {
+                operationMetrics.record(result);
+            }
+            return pipelinedResults;
+        } catch (PipelinedIoException e) {
+            for (IoManagerResult result : e.getCompletedResults()) {
+                operationMetrics.record(result);
+            }
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult read() throws IOException {
+        return read((IoProtocolHandler) null);
+    }
+
+    @Override
+    public IoManagerResult read(IoProtocolHandler protocolHandler) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.READ);
+        try {
+            return operationMetrics.record(delegate.read(protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public IoManagerResult read(byte[] result, long timeout) throws IOException {
+        return read(result, timeout, null);
+    }
+
+    @Override
+    public IoManagerResult read(byte[] result, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        OperationMetrics operationMetrics = metrics.get(Operation.READ_TIMEOUT);
+        try {
+            return operationMetrics.record(delegate.read(result, timeout, protocolHandler));
+        } catch (IOException e) {
+            operationMetrics.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void flushAll() throws IOException {
+        delegate.flushAll();
+    }
+
+    /**
+     * Ends the current interval for {@code operation}, returning the statistics recorded
+     * since the previous snapshot of the operation.
+     */
+    public OperationSnapshot getIntervalSnapshot(Operation operation) {
+        return metrics.get(operation).snapshot();
+    }
+
+    /**
+     * Ends the current interval for all operations, returning the statistics recorded
+     * since the previous snapshot of each operation.
+     */
+    public Map<Operation, OperationSnapshot> getIntervalSnapshots() {
+        Map<Operation, OperationSnapshot> snapshots =
+                new EnumMap<Operation, OperationSnapshot>(Operation.class);
+
+        for (Map.Entry<Operation, OperationMetrics> entry : metrics.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+
+        return snapshots;
+    }
+
+    /**
+     * Immutable statistics for a single operation type over an interval.  Durations are
+     * in nanoseconds.  Phases not applicable to the operation, such as the receive phase
+     * of a write, report empty statistics.  The wait phase only applies to operations that
+     * both transmit and receive.
+     */
+    public static final class OperationSnapshot {
+
+        private final LatencySnapshot total;
+        private final LatencySnapshot tx;
+        private final LatencySnapshot wait;
+        private final LatencySnapshot rx;
+        private final long errors;
+
+        OperationSnapshot(LatencySnapshot total, LatencySnapshot tx, LatencySnapshot wait,
+                LatencySnapshot rx, long errors) {
+            this.total = total;
+            this.tx = tx;
+            this.wait = wait;
+            this.rx = rx;
+            this.errors = errors;
+        }
+
+        /**
+         * Returns the end to end duration statistics of successful operations.
+         */
+        public LatencySnapshot getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the transmit phase statistics of successful operations.
+         */
+        public LatencySnapshot getTx() {
+            return tx;
+        }
+
+        /**
+         * Returns the statistics of the time between the end of transmission and the
+         * start of reception for successful operations.
+         */
+        public LatencySnapshot getWait() {
+            return wait;
+        }
+
+        /**
+         * Returns the receive phase statistics of successful operations.
+         */
+        public LatencySnapshot getRx() {
+            return rx;
+        }
+
+        /**
+         * Returns the number of operations that failed with an exception.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return "total=[" + total + "], tx=[" + tx + "], wait=[" + wait + "], rx=["
+                    + rx + "], errors=" + errors;
+        }
+    }
+
+    private static final class OperationMetrics {
+
+        private final Operation operation;
+        private final IntervalLatencyRecorder total = new IntervalLatencyRecorder();
+        private final IntervalLatencyRecorder tx = new IntervalLatencyRecorder();
+        private final IntervalLatencyRecorder wait = new IntervalLatencyRecorder();
+        private final IntervalLatencyRecorder rx = new IntervalLatencyRecorder();
+        private final AtomicLong errors = new AtomicLong();
+
+        OperationMetrics(Operation operation) {
+            this.operation = operation;
+        }
+
+        IoManagerResult record(IoManagerResult result) {
+            // Delegates fill in the timestamps of phases that the operation does not
+            // perform, for instance receive times equal to the end of transmission for a
+            // write, so only the phases of the operation are recorded.
+            total.record(result.getTotalDurationNanos());
+            if (operation.isTransmitting() && result.getRequestTxEndNanoTime() != 0) {
+                tx.record(result.getTxDurationNanos());
+            }
+            if (operation.isTransmitting() && operation.isReceiving()
+                    && result.getRequestTxEndNanoTime() != 0
+                    && result.getRequestRxStartNanoTime() != 0) {
+                wait.record(result.getWaitDurationNanos());
+            }
+            if (operation.isReceiving() && result.getRequestRxEndNanoTime() != 0) {
+                rx.record(result.getRxDurationNanos());
+            }
+            return result;
+        }
+
+        OperationSnapshot snapshot() {
+            return new OperationSnapshot(total.getIntervalSnapshot(),
+                    tx.getIntervalSnapshot(), wait.getIntervalSnapshot(),
+                    rx.getIntervalSnapshot(), errors.getAndSet(0));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation that performs non-blocking input and output on the NIO channels
+ * of a {@link ChannelSocketManager}.  Threads waiting on the device block in a
+ * {@link Selector} rather than polling {@link java.io.InputStream#available()}, so
+ * a pending fixed-length read does not consume CPU while waiting for bytes to arrive.
+ *
+ * @author David Valeri
+ */
+public class NioIoManager extends AbstractIoManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioIoManager.class);
+
+    private final ChannelSocketManager channelDelegate;
+
+    private Selector selector;
+    private SelectableChannel inputChannel;
+    private SelectableChannel outputChannel;
+    private ByteBuffer readBuffer;
+
+    public NioIoManager(ChannelSocketManager delegate) {
+        this(delegate, ByteBufferPool.getSharedInstance());
+    }
+
+    public NioIoManager(ChannelSocketManager delegate, ByteBufferPool bufferPool) {
+        super(delegate, bufferPool);
+        this.channelDelegate = delegate;
+    }
+
+    @Override
+    protected void onConnect() throws IOException {
+        SelectableChannel in = channelDelegate.getInputChannel();
+        SelectableChannel out = channelDelegate.getOutputChannel();
+
+        if (!(in instanceof ReadableByteChannel)) {
+            throw new IOException("The input channel " + in + " is not readable.");
+        }
+
+        if (!(out instanceof WritableByteChannel)) {
+            throw new IOException("The output channel " + out + " is not writable.");
+        }
+
+        Selector newSelector = Selector.open();
+        try {
+            in.configureBlocking(false);
+            in.register(newSelector, 0);
+            if (out != in) {
+                out.configureBlocking(false);
+                out.register(newSelector, 0);
+            }
+        } catch (IOException e) {
+            newSelector.close();
+            throw e;
+        }
+
+        selector = newSelector;
+        inputChannel = in;
+        outputChannel = out;
+    }
+
+    @Override
+    protected void onDisconnect() throws IOException {
+        if (selector != null) {
+            try {
+                selector.close();
+            } finally {
+                selector = null;
+                inputChannel = null;
+                outputChannel = null;
+            }
+        }
+    }
+
+    @Override
+    public IoManagerResult write(byte[] command, IoProtocolHandler protocolHandler)
+            throws IOException {
+        getIoLock().lock();
+        try {
+            IoManagerResult result = new IoManagerResult();
+            result.requestStartTime = System.currentTimeMillis();
+            result.requestStartNanoTime = System.nanoTime();
+
+            WritableByteChannel out = getWritableChannel();
+
+            ByteBuffer wrapped = null;
+            try {
+                ByteBuffer buffer;
+                if (protocolHandler != null) {
+                    wrapped = IoProtocolHandlers.wrapRequest(
+                            ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler),
+                            command, getBufferPool());
+                    buffer = wrapped;
+                } else {
+                    buffer = ByteBuffer.wrap(command);
+                }
+
+                result.requestTxStartTime = System.currentTimeMillis();
+                result.requestTxStartNanoTime = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    if (out.write(buffer) == 0) {
+                        awaitReady(outputChannel, SelectionKey.OP_WRITE, 0);
+                    }
+                }
+                result.requestTxEndTime = System.currentTimeMillis();
+                result.requestTxEndNanoTime = System.nanoTime();
+            } finally {
+                getBufferPool().release(wrapped);
+            }
+
+            LOG.debug("Wrote bytes {}", command);
+
+            result.requestRxStartTime = result.requestTxEndTime;
+            result.requestRxStartNanoTime = result.requestTxEndNanoTime;
+            result.requestRxEndTime = result.requestTxEndTime;
+            result.requestRxEndNanoTime = result.requestTxEndNanoTime;
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
+
+            return result;
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    @Override
+    public int readAvailable(byte[] buffer, int offset, int length)
+            throws IOException {
+        getIoLock().lock();
+        try {
+            ReadableByteChannel in = getReadableChannel();
+
+            if (readBuffer == null || readBuffer.array() != buffer) {
+                readBuffer = ByteBuffer.wrap(buffer);
+            }
+            int bytesRead = readPending(buffer, offset, length);
+            readBuffer.limit(offset + length);
+            readBuffer.position(offset + bytesRead);
+
+            int bytesJustRead;
+            while (readBuffer.hasRemaining() && (bytesJustRead = in.read(readBuffer)) > 0) {
+                bytesRead += bytesJustRead;
+            }
+
+            return bytesRead;
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    @Override
+    public IoManagerResult read(byte[] out, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        getIoLock().lock();
+        try {
+
+            IoManagerResult result = new IoManagerResult();
+            result.requestStartTime = System.currentTimeMillis();
+            result.requestStartNanoTime = System.nanoTime();
+            result.requestTxStartTime = result.requestStartTime;
+            result.requestTxStartNanoTime = result.requestStartNanoTime;
+            result.requestTxEndTime = result.requestStartTime;
+            result.requestTxEndNanoTime = result.requestStartNanoTime;
+
+            BufferIoProtocolHandler bufferProtocolHandler =
+                    ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+            ByteBuffer wrapped = null;
+
+            try {
+                ByteBuffer buffer;
+                if (bufferProtocolHandler != null) {
+                    wrapped = getBufferPool().acquire(
+                            bufferProtocolHandler.getWrappedResponseLength(out.length));
+                    buffer = wrapped;
+                } else {
+                    buffer = ByteBuffer.wrap(out);
+                }
+
+                result.requestRxStartTime = System.currentTimeMillis();
+                result.requestRxStartNanoTime = System.nanoTime();
+                readFully(buffer, timeout);
+                result.requestRxEndTime = System.currentTimeMillis();
+                result.requestRxEndNanoTime = System.nanoTime();
+
+                if (buffer.hasRemaining()) {
+                    throw new IOException("Error fulfilling read request.  Read "
+                            + buffer.position() + " bytes of " + out.length + ".");
+                }
+
+                if (wrapped != null) {
+                    wrapped.flip();
+                    IoProtocolHandlers.unwrapResponse(bufferProtocolHandler, wrapped, out);
+                }
+            } finally {
+                getBufferPool().release(wrapped);
+            }
+
+            result.result = out;
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
+
+            return result;
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    @Override
+    public void flushAll() throws IOException {
+        getIoLock().lock();
+        try {
+            discardAvailable();
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    /**
+     * Waits in the selector for the input channel to become readable.
+     */
+    @Override
+    protected void awaitInput(long deadlineNanoTime) throws IOException {
+        long remaining = deadlineNanoTime - System.nanoTime();
+        if (remaining > 0) {
+            getReadableChannel();
+            awaitReady(inputChannel, SelectionKey.OP_READ, remaining);
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    /**
+     * Reads into {@code buffer} until it is full, the end of the stream is reached, or
+     * {@code timeout} elapses, in which case an exception is thrown.
+     */
+    private void readFully(ByteBuffer buffer, long timeout) throws IOException {
+        ReadableByteChannel in = getReadableChannel();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int nBytes = buffer.remaining();
+
+        try {
+            buffer.position(buffer.position() + readPending(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+
+            while (buffer.hasRemaining()) {
+                int bytesJustRead = in.read(buffer);
+                if (bytesJustRead == -1) {
+                    break;
+                } else if (bytesJustRead == 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IOException("Error fulfilling read request.  Read "
+                                + buffer.position() + " bytes of " + nBytes
+                                + " before exceeding timeout of " + timeout + "ms.");
+                    }
+
+                    awaitReady(inputChannel, SelectionKey.OP_READ, remaining);
+                }
+            }
+        } finally {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read {} bytes of {} in {}ms: ", new Object[] {
+                        buffer.position(), nBytes,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        buffer.array()});
+            }
+        }
+    }
+
+    /**
+     * Blocks in the selector until {@code channel} is ready for {@code ops} or until
+     * {@code timeoutNanos} elapses.  A timeout of 0 waits indefinitely.
+     *
+     * @return true if the channel became ready
+     */
+    private boolean awaitReady(SelectableChannel channel, int ops, long timeoutNanos)
+            throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        key.interestOps(ops);
+        try {
+            selector.selectedKeys().clear();
+            int selected;
+            if (timeoutNanos > 0) {
+                // Round up so that we never select with 0 (infinite) for a sub-millisecond wait.
+                selected = selector.select(Math.max(1, (timeoutNanos + 999999) / 1000000));
+            } else {
+                selected = selector.select();
+            }
+
+            return selected > 0;
+        } finally {
+            key.interestOps(0);
+        }
+    }
+
+    private ReadableByteChannel getReadableChannel() throws IOException {
+        if (inputChannel == null) {
+            throw new IOException("Not connected.");
+        }
+
+        return (ReadableByteChannel) inputChannel;
+    }
+
+    private WritableByteChannel getWritableChannel() throws IOException {
+        if (outputChannel == null) {
+            throw new IOException("Not connected.");
+        }
+
+        return (WritableByteChannel) outputChannel;
+    }
+}
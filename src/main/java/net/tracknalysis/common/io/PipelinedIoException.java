@@ -0,0 +1,53 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link IoManager#writeAndReadPipelined(byte[][], byte[][], long)} when a
+ * response cannot be read after one or more of the preceding responses were.  Carries
+ * the results of the requests whose responses were read, which remain valid along with
+ * the contents of their response buffers.
+ *
+ * @author David Valeri
+ */
+public class PipelinedIoException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IoManagerResult[] completedResults;
+
+    /**
+     * @param message the detail message
+     * @param completedResults the results of the requests whose responses were read, in
+     *            order
+     * @param cause the failure reading the next response
+     */
+    public PipelinedIoException(String message, IoManagerResult[] completedResults,
+            Throwable cause) {
+        super(message, cause);
+        this.completedResults = completedResults;
+    }
+
+    /**
+     * Returns the results of the leading requests whose responses were read, in order.
+     * The response of request {@code getCompletedResults().length} is the one that failed.
+     */
+    public IoManagerResult[] getCompletedResults() {
+        return completedResults;
+    }
+}
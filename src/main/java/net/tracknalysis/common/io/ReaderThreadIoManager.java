@@ -0,0 +1,322 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.SpscByteRingBuffer;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation that continuously drains the socket input stream on a dedicated
+ * reader thread into a lock-free ring buffer.  Reads are served from the ring, and timed
+ * reads park on the ring with nanosecond deadlines rather than trusting
+ * {@link InputStream#available()}, which misbehaves on several serial and Bluetooth
+ * stacks.  The caller is woken as soon as the last requested byte arrives.
+ * <p/>
+ * The delegate socket manager must close its input stream on disconnect in order for
+ * the reader thread, which blocks in {@link InputStream#read(byte[])}, to terminate.
+ *
+ * @author David Valeri
+ */
+public class ReaderThreadIoManager extends AbstractIoManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReaderThreadIoManager.class);
+    private static final AtomicInteger READER_THREAD_INSTANCE_COUNTER = new AtomicInteger();
+
+    public static final int DEFAULT_RING_CAPACITY = 8192;
+
+    private static final int READ_CHUNK_SIZE = 512;
+
+    private final int ringCapacity;
+    private ReaderThread readerThread;
+    private volatile boolean disconnecting;
+    private volatile ThreadFactory threadFactory = ThreadFactories.platform(true);
+
+    public ReaderThreadIoManager(SocketManager delegate) {
+        this(delegate, DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the socket manager to read from and write to
+     * @param ringCapacity the capacity, in bytes, of the buffer between the reader thread
+     *            and the callers of this manager
+     */
+    public ReaderThreadIoManager(SocketManager delegate, int ringCapacity) {
+        super(delegate);
+        this.ringCapacity = ringCapacity;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory of the reader thread, for example {@link ThreadFactories#virtual()}.
+     * Defaults to daemon platform threads.  Takes effect the next time the manager is
+     * connected.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    protected void onConnect() throws IOException {
+        disconnecting = false;
+        readerThread = new ReaderThread(getInputStream(),
+                new SpscByteRingBuffer(ringCapacity));
+        readerThread.start();
+    }
+
+    @Override
+    protected void onDisconnect() throws IOException {
+        disconnecting = true;
+    }
+
+    @Override
+    protected void onDisconnected() throws IOException {
+        if (readerThread != null) {
+            readerThread.cancel();
+            readerThread = null;
+        }
+    }
+
+    @Override
+    public int readAvailable(byte[] buffer, int offset, int length)
+            throws IOException {
+        getIoLock().lock();
+        try {
+            ReaderThread reader = getReaderThread();
+            int bytesRead = readPending(buffer, offset, length);
+            bytesRead += reader.ring.poll(buffer, offset + bytesRead, length - bytesRead);
+            if (bytesRead == 0) {
+                reader.checkFailure();
+            }
+
+            return bytesRead;
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    @Override
+    public IoManagerResult read(byte[] out, long timeout,
+            IoProtocolHandler protocolHandler) throws IOException {
+        getIoLock().lock();
+        try {
+            IoManagerResult result = new IoManagerResult();
+            result.requestStartTime = System.currentTimeMillis();
+            result.requestStartNanoTime = System.nanoTime();
+            result.requestTxStartTime = result.requestStartTime;
+            result.requestTxStartNanoTime = result.requestStartNanoTime;
+            result.requestTxEndTime = result.requestStartTime;
+            result.requestTxEndNanoTime = result.requestStartNanoTime;
+
+            BufferIoProtocolHandler bufferProtocolHandler =
+                    ByteArrayIoProtocolHandlerAdapter.adapt(protocolHandler);
+            ByteBuffer wrapped = null;
+
+            try {
+                byte[] ioOut = out;
+                int ioOffset = 0;
+                int nBytes = out.length;
+                if (bufferProtocolHandler != null) {
+                    nBytes = bufferProtocolHandler.getWrappedResponseLength(out.length);
+                    wrapped = getBufferPool().acquire(nBytes);
+                    ioOut = wrapped.array();
+                    ioOffset = wrapped.arrayOffset();
+                }
+
+                result.requestRxStartTime = System.currentTimeMillis();
+                result.requestRxStartNanoTime = System.nanoTime();
+                int bytesRead = readFully(ioOut, ioOffset, nBytes, timeout);
+                result.requestRxEndTime = System.currentTimeMillis();
+                result.requestRxEndNanoTime = System.nanoTime();
+
+                if (bytesRead != nBytes) {
+                    throw new IOException("Error fulfilling read request.  Read " + bytesRead
+                            + " bytes of " + out.length + ".");
+                }
+
+                if (wrapped != null) {
+                    IoProtocolHandlers.unwrapResponse(bufferProtocolHandler, wrapped, out);
+                }
+            } finally {
+                getBufferPool().release(wrapped);
+            }
+
+            result.result = out;
+            result.requestEndTime = System.currentTimeMillis();
+            result.requestEndNanoTime = System.nanoTime();
+
+            return result;
+        } finally {
+            getIoLock().unlock();
+        }
+    }
+
+    /**
+     * Parks until the reader thread delivers data.
+     */
+    @Override
+    protected void awaitInput(long deadlineNanoTime) throws IOException {
+        getReaderThread().ring.awaitData(1, deadlineNanoTime);
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    /**
+     * Reads {@code nBytes} bytes from the ring into {@code ioOut}, parking until they
+     * arrive or {@code timeout} elapses.
+     *
+     * @return the number of bytes read, less than {@code nBytes} only if the reader
+     *         thread reached the end of the stream
+     */
+    private int readFully(byte[] ioOut, int ioOffset, int nBytes, long timeout)
+            throws IOException {
+        ReaderThread reader = getReaderThread();
+        SpscByteRingBuffer readerRing = reader.ring;
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int bytesRead = readPending(ioOut, ioOffset, nBytes);
+
+        try {
+            while (true) {
+                bytesRead += readerRing.poll(ioOut, ioOffset + bytesRead, nBytes - bytesRead);
+
+                if (bytesRead == nBytes || reader.stopped) {
+                    break;
+                }
+
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IOException("Error fulfilling read request.  Read " + bytesRead
+                            + " bytes of " + nBytes + " before exceeding timeout of "
+                            + timeout + "ms.");
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted after reading " + bytesRead
+                            + " bytes of " + nBytes + ".");
+                }
+
+                readerRing.awaitData(nBytes - bytesRead, deadline);
+            }
+
+            if (bytesRead != nBytes) {
+                bytesRead += readerRing.poll(ioOut, ioOffset + bytesRead, nBytes - bytesRead);
+                if (bytesRead != nBytes) {
+                    reader.checkFailure();
+                }
+            }
+        } finally {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read {} bytes of {} in {}ns: ", new Object[] { bytesRead,
+                        nBytes, System.nanoTime() - start, ioOut});
+            }
+        }
+
+        return bytesRead;
+    }
+
+    private ReaderThread getReaderThread() throws IOException {
+        if (readerThread == null) {
+            throw new IOException("Not connected.");
+        }
+
+        return readerThread;
+    }
+
+    /**
+     * Drains the input stream into the ring until cancelled, the end of the stream is
+     * reached, or an error occurs.
+     */
+    private class ReaderThread extends GracefulShutdownWorker {
+
+        private final InputStream is;
+        private final SpscByteRingBuffer ring;
+        private volatile IOException failure;
+        private volatile boolean stopped;
+
+        public ReaderThread(InputStream is, SpscByteRingBuffer ring) {
+            super("ReaderThread: " + READER_THREAD_INSTANCE_COUNTER.getAndIncrement(),
+                    threadFactory);
+            this.is = is;
+            this.ring = ring;
+        }
+
+        @Override
+        public void run() {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+
+            try {
+                while (keepRunning()) {
+                    int bytesRead = is.read(chunk);
+                    if (bytesRead == -1) {
+                        LOG.debug("{}: Reached end of stream.", getName());
+                        break;
+                    }
+
+                    int offset = 0;
+                    while (offset < bytesRead && keepRunning()) {
+                        int bytesWritten = ring.offer(chunk, offset, bytesRead - offset);
+                        offset += bytesWritten;
+                        if (bytesWritten == 0) {
+                            ring.awaitSpace(System.nanoTime()
+                                    + TimeUnit.MILLISECONDS.toNanos(100));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (keepRunning() && !disconnecting) {
+                    LOG.error(getName() + ": Error reading from input stream.", e);
+                    failure = e;
+                } else {
+                    LOG.debug(getName() + ": Input stream closed while stopping.", e);
+                }
+            } finally {
+                // Wake any waiting caller so it notices that no more data is coming.
+                stopped = true;
+                ring.signalConsumer();
+            }
+        }
+
+        /**
+         * Throws an exception if the reader terminated due to an error.
+         */
+        public void checkFailure() throws IOException {
+            IOException e = failure;
+            if (e != null) {
+                throw new IOException("The reader thread failed.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+/**
+ * Decides when a variable-length response is complete so that
+ * {@link IoManager#writeAndReadResponse(byte[], long, ResponseCompletionDetector)} can
+ * return as soon as the device has answered rather than after a worst-case delay.
+ * Implementations must be stateless, as a single instance may be used by many exchanges.
+ *
+ * @author David Valeri
+ *
+ * @see ResponseCompletionDetectors
+ */
+public interface ResponseCompletionDetector {
+
+    /**
+     * Returns true if {@code response} holds a complete response.  Invoked each time bytes
+     * arrive and periodically while waiting for more.
+     *
+     * @param response
+     *            the raw, still wrapped, bytes received so far
+     * @param length
+     *            the number of bytes received so far, at least 1
+     * @param idleNanos
+     *            the time, in nanoseconds, since the most recent byte arrived
+     */
+    boolean isComplete(byte[] response, int length, long idleNanos);
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory methods for common {@link ResponseCompletionDetector}s.
+ *
+ * @author David Valeri
+ */
+public final class ResponseCompletionDetectors {
+
+    private ResponseCompletionDetectors() {
+    }
+
+    /**
+     * Returns a detector that considers a response complete once no bytes have arrived
+     * for {@code gap}.  The gap should comfortably exceed the inter-byte time of the
+     * link and the time the device pauses in the middle of a response.
+     */
+    public static ResponseCompletionDetector idleGap(long gap, TimeUnit unit) {
+        final long gapNanos = unit.toNanos(gap);
+        return new ResponseCompletionDetector() {
+            @Override
+            public boolean isComplete(byte[] response, int length, long idleNanos) {
+                return idleNanos >= gapNanos;
+            }
+        };
+    }
+
+    /**
+     * Returns a detector that considers a response complete once {@code length} bytes
+     * have arrived.
+     */
+    public static ResponseCompletionDetector length(final int length) {
+        return new ResponseCompletionDetector() {
+            @Override
+            public boolean isComplete(byte[] response, int received, long idleNanos) {
+                return received >= length;
+            }
+        };
+    }
+
+    /**
+     * Returns a detector for responses that declare their length in an unsigned,
+     * big-endian field.  The response is complete once the field has arrived and the
+     * number of bytes received is at least the value of the field plus
+     * {@code lengthAdjustment}.  For example, a response consisting of a two byte length
+     * of the payload, the payload and a four byte checksum is detected by
+     * {@code lengthField(0, 2, 6)}.
+     *
+     * @param fieldOffset the offset of the length field in the response
+     * @param fieldLength the size of the length field in bytes, 1 to 4
+     * @param lengthAdjustment the number of bytes in the response not counted by the field
+     */
+    public static ResponseCompletionDetector lengthField(final int fieldOffset,
+            final int fieldLength, final int lengthAdjustment) {
+        if (fieldLength < 1 || fieldLength > 4) {
+            throw new IllegalArgumentException("The length field must be 1 to 4 bytes.");
+        }
+
+        return new ResponseCompletionDetector() {
+            @Override
+            public boolean isComplete(byte[] response, int length, long idleNanos) {
+                if (length < fieldOffset + fieldLength) {
+                    return false;
+                }
+
+                long declaredLength = 0;
+                for (int i = fieldOffset; i < fieldOffset + fieldLength; i++) {
+                    declaredLength = (declaredLength << 8) | (response[i] & 0xFF);
+                }
+
+                return length >= declaredLength + lengthAdjustment;
+            }
+        };
+    }
+
+    /**
+     * Returns a detector that considers a response complete once it contains
+     * {@code terminator}.  The received bytes are searched in full each time, so this
+     * detector is intended for short responses; see
+     * {@link IoManager#writeAndReadUntil(byte[], byte[], int, long)} for longer ones.
+     */
+    public static ResponseCompletionDetector terminator(byte... terminator) {
+        if (terminator.length == 0) {
+            throw new IllegalArgumentException("The terminator must not be empty.");
+        }
+
+        final byte[] pattern = terminator.clone();
+        return new ResponseCompletionDetector() {
+            @Override
+            public boolean isComplete(byte[] response, int length, long idleNanos) {
+                outer:
+                for (int i = 0; i <= length - pattern.length; i++) {
+                    for (int j = 0; j < pattern.length; j++) {
+                        if (response[i + j] != pattern[j]) {
+                            continue outer;
+                        }
+                    }
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a detector that considers a response complete as soon as any of
+     * {@code detectors} does, for example a terminator with an idle gap as a fallback.
+     */
+    public static ResponseCompletionDetector anyOf(
+            final ResponseCompletionDetector... detectors) {
+        return new ResponseCompletionDetector() {
+            @Override
+            public boolean isComplete(byte[] response, int length, long idleNanos) {
+                for (ResponseCompletionDetector detector : detectors) {
+                    if (detector.isComplete(response, length, idleNanos)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A "socket manager" based on a TCP {@link SocketChannel}, suitable for use with
+ * {@link NioIoManager}.
+ * <p/>
+ * The streams returned from {@link #getInputStream()} and {@link #getOutputStream()}
+ * are views of the channel and may only be used while the channel is in blocking mode.
+ * Once an {@link NioIoManager} is connected, the channel is non-blocking.
+ *
+ * @author David Valeri
+ */
+public class SocketChannelSocketManager implements ChannelSocketManager {
+
+    private final SocketAddress address;
+    private final int connectTimeout;
+    // Not a monitor so that a virtual thread blocked connecting does not pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private SocketChannel channel;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param address the remote address to connect to
+     * @param connectTimeout the timeout, in milliseconds, for establishing the connection
+     */
+    public SocketChannelSocketManager(SocketAddress address, int connectTimeout) {
+        this.address = address;
+        this.connectTimeout = connectTimeout;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        lock.lock();
+        try {
+            if (channel == null) {
+                SocketChannel newChannel = SocketChannel.open();
+                try {
+                    newChannel.socket().setTcpNoDelay(true);
+                    newChannel.socket().connect(address, connectTimeout);
+                } catch (IOException e) {
+                    newChannel.close();
+                    throw e;
+                }
+                channel = newChannel;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } finally {
+                    channel = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Channels.newInputStream(getChannel());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return Channels.newOutputStream(getChannel());
+    }
+
+    @Override
+    public SelectableChannel getInputChannel() throws IOException {
+        return getChannel();
+    }
+
+    @Override
+    public SelectableChannel getOutputChannel() throws IOException {
+        return getChannel();
+    }
+
+    private SocketChannel getChannel() throws IOException {
+        lock.lock();
+        try {
+            if (channel == null) {
+                throw new IOException("Not connected to " + address + ".");
+            }
+
+            return channel;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Reads logs in the {@link DebugLogFormat#TEXT} format.
+ *
+ * @author David Valeri
+ */
+final class TextDebugLogRecordReader implements DebugLogRecordReader {
+
+    private final Base64 codec = new Base64();
+    private final BufferedReader reader;
+
+    TextDebugLogRecordReader(InputStream inputStream) {
+        reader = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+    }
+
+    @Override
+    public DebugLogRecord read() throws IOException {
+        String line = reader.readLine();
+
+        if (line == null) {
+            return null;
+        } else if (DebugLogWriterIoManager.WRITE_COMMENT.equals(line)) {
+            return new DebugLogRecord(DebugLogRecord.Type.WRITE, 0, readBytes(), null);
+        } else if (DebugLogWriterIoManager.WRITE_AND_READ_COMMENT.equals(line)) {
+            byte[] command = readBytes();
+            return new DebugLogRecord(DebugLogRecord.Type.WRITE_AND_READ, 0, command,
+                    readBytes());
+        } else if (DebugLogWriterIoManager.READ_COMMENT.equals(line)) {
+            return new DebugLogRecord(DebugLogRecord.Type.READ, 0, null, readBytes());
+        } else {
+            throw new IOException("The line didn't start a record.  Line was [" + line + "]");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private byte[] readBytes() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("The log ended in the middle of a record.");
+        }
+
+        return codec.decode(line.getBytes("UTF-8"));
+    }
+}
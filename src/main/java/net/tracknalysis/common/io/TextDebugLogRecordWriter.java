@@ -0,0 +1,86 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Writes logs in the {@link DebugLogFormat#TEXT} format.
+ *
+ * @author David Valeri
+ */
+final class TextDebugLogRecordWriter implements DebugLogRecordWriter {
+
+    private final Base64 codec = new Base64();
+    private final Writer writer;
+
+    TextDebugLogRecordWriter(OutputStream outputStream) {
+        writer = new OutputStreamWriter(new BufferedOutputStream(outputStream),
+                Charset.forName("UTF-8"));
+    }
+
+    @Override
+    public void write(DebugLogRecord.Type type, long timestamp, byte[] command,
+            byte[] response) throws IOException {
+        switch (type) {
+            case WRITE:
+                writer.write(DebugLogWriterIoManager.WRITE_COMMENT);
+                writer.write("\r\n");
+                writeBytes(command);
+                break;
+            case WRITE_AND_READ:
+                writer.write(DebugLogWriterIoManager.WRITE_AND_READ_COMMENT);
+                writer.write("\r\n");
+                writeBytes(command);
+                writeBytes(response);
+                break;
+            case READ:
+                writer.write(DebugLogWriterIoManager.READ_COMMENT);
+                writer.write("\r\n");
+                writeBytes(response);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type " + type + ".");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public boolean isSelfFlushing() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writer.write(new String(codec.encode(bytes), Charset.forName("UTF-8")));
+        writer.write("\r\n");
+    }
+}
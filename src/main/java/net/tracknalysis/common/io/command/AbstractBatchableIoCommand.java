@@ -0,0 +1,47 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.io.IOException;
+
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoProtocolHandler;
+
+/**
+ * Base class for batchable commands that, when executed on their own, write the request
+ * with {@link IoManager#write(byte[], IoProtocolHandler)}.
+ *
+ * @author David Valeri
+ */
+public abstract class AbstractBatchableIoCommand implements BatchableIoCommand {
+	
+	@Override
+	public void execute(IoManager ioManager) {
+		try {
+			onWritten(ioManager.write(getCommand(), getProtocolHandler()));
+		} catch (IOException e) {
+			onError(e);
+		}
+	}
+	
+	/**
+	 * Returns {@code null}, sending the request as is.
+	 */
+	@Override
+	public IoProtocolHandler getProtocolHandler() {
+		return null;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Base class for command managers that implements submission in terms of
+ * {@link #enqueue(IoCommand)}.
+ *
+ * @author David Valeri
+ */
+public abstract class AbstractIoCommandManager implements IoCommandManager {
+	
+	@Override
+	public IoCommandFuture submit(IoCommand ioCommand) {
+		return submit(new IoCommandFuture(ioCommand));
+	}
+	
+	@Override
+	public IoCommandFuture submitCallable(IoCallable callable) {
+		return submitCallable(callable, IoCommandPriority.INTERACTIVE);
+	}
+	
+	@Override
+	public IoCommandFuture submitCallable(IoCallable callable, IoCommandPriority priority) {
+		return submit(new IoCommandFuture(callable, priority));
+	}
+	
+	private IoCommandFuture submit(IoCommandFuture future) {
+		if (!enqueue(future)) {
+			future.completeExceptionally(
+					new RejectedExecutionException("The command was not accepted."));
+		}
+		
+		return future;
+	}
+}
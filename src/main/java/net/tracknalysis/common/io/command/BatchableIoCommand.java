@@ -0,0 +1,60 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import net.tracknalysis.common.io.IoManagerResult;
+import net.tracknalysis.common.io.IoProtocolHandler;
+
+/**
+ * A write-only {@link IoCommand} that a {@link DefaultIoCommandManager} may coalesce
+ * with other batchable commands drained from its queue at the same time.  The requests
+ * of a batch are gathered into a single buffer and written with one flush, while the
+ * outcome is still reported to each command individually.
+ * <p/>
+ * Only commands whose requests can safely be sent back to back without waiting for a
+ * response, such as page writes or burn commands, should implement this interface.
+ *
+ * @author David Valeri
+ *
+ * @see AbstractBatchableIoCommand
+ */
+public interface BatchableIoCommand extends IoCommand {
+	
+	/**
+	 * Returns the unwrapped request bytes to write.
+	 */
+	byte[] getCommand();
+	
+	/**
+	 * Returns the optional handler used to wrap the request, may be {@code null}.
+	 */
+	IoProtocolHandler getProtocolHandler();
+	
+	/**
+	 * Invoked after the request has been written.  When written as part of a batch, the
+	 * transmit timings in {@code result} are those of the batch as a whole.
+	 *
+	 * @param result the result of the write
+	 */
+	void onWritten(IoManagerResult result);
+	
+	/**
+	 * Invoked if the request could not be wrapped or written.
+	 *
+	 * @param e the cause of the failure
+	 */
+	void onError(Exception e);
+}
@@ -15,38 +15,95 @@
  */
 package net.tracknalysis.common.io.command;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.tracknalysis.common.concurrent.GracefulShutdownThread;
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+import net.tracknalysis.common.io.BufferIoProtocolHandler;
+import net.tracknalysis.common.io.ByteArrayBuffer;
+import net.tracknalysis.common.io.ByteArrayIoProtocolHandlerAdapter;
 import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoManagerResult;
+import net.tracknalysis.common.metrics.LatencySnapshot;
 
 /**
  * Default blocking queue based implementation of a command manager.
+ * <p/>
+ * Commands are served by priority class, see {@link IoCommandQueue}.  Commands may also
+ * be {@link #schedule(IoCommand, long, TimeUnit) scheduled} for execution at a fixed rate.
+ * <p/>
+ * When configured with a maximum batch size greater than one, consecutive
+ * {@link BatchableIoCommand}s found in the queue together are written as a single
+ * batch with one flush.  Batching is disabled by default.
  *
  * @author David Valeri
  */
-public class DefaultIoCommandManager implements IoCommandManager {
+public class DefaultIoCommandManager extends AbstractIoCommandManager {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultIoCommandManager.class);
 	private static final AtomicInteger COMMAND_THREAD_INSTANCE_COUNTER = new AtomicInteger();
 	
-	private final BlockingQueue<IoCommand> commandQueue = new LinkedBlockingDeque<IoCommand>(10);
+	private final IoCommandQueue commandQueue = new IoCommandQueue(10);
+	private final List<PeriodicIoCommand> periodicCommands =
+			new CopyOnWriteArrayList<PeriodicIoCommand>();
 	private final IoManager ioManager;
 	private CommandThread commandThread;
 	private volatile boolean running;
+	private volatile int maxBatchSize;
+	private volatile ThreadFactory threadFactory = ThreadFactories.platform(false);
 	
 	public DefaultIoCommandManager(IoManager ioManager) {
+		this(ioManager, 1);
+	}
+	
+	/**
+	 * @param ioManager the IO manager to execute commands against
+	 * @param maxBatchSize the maximum number of batchable commands to coalesce into a
+	 *            single write, 1 to disable batching
+	 */
+	public DefaultIoCommandManager(IoManager ioManager, int maxBatchSize) {
 		this.ioManager = ioManager;
+		setMaxBatchSize(maxBatchSize);
+	}
+	
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("The maximum batch size must be at least 1.");
+		}
+		
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+	
+	/**
+	 * Sets the factory of the command thread, for example {@link ThreadFactories#virtual()}
+	 * to process commands on a virtual thread.  Defaults to non-daemon platform threads.
+	 * Takes effect the next time the manager is started.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
 	}
 	
 	public synchronized void start() {
 		if (!running) {
+			// Commands offered late by producers racing the last stop are stale.
+			commandQueue.clear();
 			commandThread = new CommandThread();
 			LOG.info("{}: Starting new command thread: {}.", this, commandThread.getName());
 			commandThread.start();
@@ -59,15 +116,74 @@ public class DefaultIoCommandManager implements IoCommandManager {
 		if (running) {
 			running = false;
 			LOG.info("{}: Stopping command thread: {}.", this, commandThread.getName());
+			for (PeriodicIoCommand periodicCommand : periodicCommands) {
+				periodicCommand.cancel();
+			}
+			periodicCommands.clear();
 			commandQueue.clear();
 			commandThread.cancel();
+			// A producer that passed the running check before it changed may have offered
+			// its command after the queue was cleared.
+			commandQueue.clear();
 			LOG.info("{}: Stopped command thread: {}.", this, commandThread.getName());
 			commandThread = null;
 		}
 	}
 
+	/**
+	 * Schedules {@code command} for execution every {@code period}, starting immediately,
+	 * until the returned handle is cancelled or the manager is stopped.  Each release of the
+	 * command is queued at the priority of the command.
+	 *
+	 * @param command the command to execute periodically
+	 * @param period the target time between the starts of consecutive executions
+	 * @param unit the unit of {@code period}
+	 *
+	 * @return a handle for cancelling the schedule and observing its timing statistics
+	 *
+	 * @throws IllegalStateException if the manager is not running
+	 */
+	public synchronized PeriodicIoCommand schedule(IoCommand command, long period,
+			TimeUnit unit) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("The period must be positive.");
+		} else if (!running) {
+			throw new IllegalStateException("The manager is not running.");
+		}
+		
+		PeriodicIoCommand periodicCommand =
+				new PeriodicIoCommand(command, unit.toNanos(period), System.nanoTime());
+		periodicCommands.add(periodicCommand);
+		// Wake the command thread so that it releases the first slot immediately.
+		commandQueue.wakeUp();
+		return periodicCommand;
+	}
+	
+	/**
+	 * Ends the current statistics interval for {@code priority}, returning the time, in
+	 * nanoseconds, that the commands of that priority executed during the interval spent
+	 * queued.
+	 */
+	public LatencySnapshot getQueueWaitSnapshot(IoCommandPriority priority) {
+		return commandQueue.getWaitSnapshot(priority);
+	}
+	
+	/**
+	 * Returns the queue that commands are served from, allowing the capacity, overflow
+	 * policy and maximum wait of each priority class to be tuned and its counters read.
+	 */
+	public IoCommandQueue getCommandQueue() {
+		return commandQueue;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Full priority levels are handled according to their configured
+	 * {@link IoCommandOverflowPolicy}, which may block the caller.
+	 */
 	@Override
-	public synchronized boolean enqueue(IoCommand ioCommand) {
+	public boolean enqueue(IoCommand ioCommand) {
 		if (running) {
 			return commandQueue.offer(ioCommand);
 		} else {
@@ -75,21 +191,29 @@ public class DefaultIoCommandManager implements IoCommandManager {
 		}
 	}
 	
-	private class CommandThread extends GracefulShutdownThread {
+	private class CommandThread extends GracefulShutdownWorker {
+		
+		private final List<IoCommand> batch = new ArrayList<IoCommand>();
+		private final ByteArrayBuffer batchBuffer = new ByteArrayBuffer(256);
 		
 		public CommandThread() {
-			super("CommandThread: " + COMMAND_THREAD_INSTANCE_COUNTER.getAndIncrement());
+			super("CommandThread: " + COMMAND_THREAD_INSTANCE_COUNTER.getAndIncrement(),
+					threadFactory);
 		}
 		
 		public void run() {
 			IoCommand command = null;
 			while (keepRunning()) {
 				try {
-					command = commandQueue.poll(1000l, TimeUnit.MILLISECONDS);
+					long waitNanos = releasePeriodicCommands();
+					command = commandQueue.poll(waitNanos, TimeUnit.NANOSECONDS);
 					if (command == null) {
 						LOG.debug(
 								"{}: No command received after timeout period.  Polling again...",
 								getName());
+					} else if (maxBatchSize > 1 && batchable(command) != null
+							&& batchable(commandQueue.peek()) != null) {
+						executeBatch(command);
 					} else {
 						try {
 							LOG.debug("{}: Executing IO command {}.",
@@ -117,5 +241,138 @@ public class DefaultIoCommandManager implements IoCommandManager {
 				}
 			}
 		}
+			
+		/**
+		 * Queues the periodic commands whose slots have arrived.
+		 *
+		 * @return the time in nanoseconds until the next slot of any periodic command
+		 */
+		private long releasePeriodicCommands() {
+			long now = System.nanoTime();
+			long waitNanos = TimeUnit.MILLISECONDS.toNanos(1000l);
+			
+			for (PeriodicIoCommand periodicCommand : periodicCommands) {
+				if (periodicCommand.isCancelled()) {
+					periodicCommands.remove(periodicCommand);
+				} else {
+					waitNanos = Math.min(waitNanos,
+							periodicCommand.release(commandQueue, now));
+				}
+			}
+			
+			return waitNanos;
+		}
+		
+		/**
+		 * Drains the batchable commands queued behind {@code first}, writes their requests
+		 * with a single write and reports the outcome to each command.  Submitted
+		 * commands are batched as the command they wrap.
+		 */
+		private void executeBatch(IoCommand first) {
+			batch.clear();
+			batch.add(first);
+			
+			IoCommand next;
+			while (batch.size() < maxBatchSize
+					&& batchable(next = commandQueue.peek()) != null
+					&& commandQueue.removeIfNext(next)) {
+				batch.add(next);
+			}
+			
+			batchBuffer.clear();
+			int batched = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				IoCommand command = batch.get(i);
+				if (!IoCommandFuture.batchStarted(command)) {
+					continue;
+				}
+				
+				try {
+					appendRequest(batchable(command));
+					batch.set(batched++, command);
+				} catch (Exception e) {
+					LOG.error(getName() + ": Error wrapping IO command " + command + "."
+							+ "  Dropping command and proceeding.", e);
+					notifyError(command, e);
+				}
+			}
+			
+			if (batched == 0) {
+				return;
+			}
+			
+			LOG.debug("{}: Executing batch of {} IO commands.", getName(), batched);
+			
+			IoManagerResult batchResult;
+			try {
+				batchResult = ioManager.write(batchBuffer.toByteArray());
+			} catch (Exception e) {
+				LOG.error(getName() + ": Error executing batch of " + batched
+						+ " IO commands.  Dropping commands and proceeding.", e);
+				for (int i = 0; i < batched; i++) {
+					notifyError(batch.get(i), e);
+				}
+				return;
+			}
+			
+			for (int i = 0; i < batched; i++) {
+				IoCommand command = batch.get(i);
+				IoManagerResult result = new IoManagerResult();
+				result.setRequestStartTime(batchResult.getRequestStartTime());
+				result.setRequestStartNanoTime(batchResult.getRequestStartNanoTime());
+				result.setRequestTxStartTime(batchResult.getRequestTxStartTime());
+				result.setRequestTxStartNanoTime(batchResult.getRequestTxStartNanoTime());
+				result.setRequestTxEndTime(batchResult.getRequestTxEndTime());
+				result.setRequestTxEndNanoTime(batchResult.getRequestTxEndNanoTime());
+				result.setRequestRxStartTime(batchResult.getRequestRxStartTime());
+				result.setRequestRxStartNanoTime(batchResult.getRequestRxStartNanoTime());
+				result.setRequestRxEndTime(batchResult.getRequestRxEndTime());
+				result.setRequestRxEndNanoTime(batchResult.getRequestRxEndNanoTime());
+				result.setRequestEndTime(batchResult.getRequestEndTime());
+				result.setRequestEndNanoTime(batchResult.getRequestEndNanoTime());
+				
+				try {
+					batchable(command).onWritten(result);
+				} catch (Exception e) {
+					LOG.error(getName() + ": Error completing IO command " + command + ".", e);
+				}
+				IoCommandFuture.batchCompleted(command);
+			}
+		}
+		
+		private void appendRequest(BatchableIoCommand command) throws Exception {
+			byte[] raw = command.getCommand();
+			BufferIoProtocolHandler protocolHandler =
+					ByteArrayIoProtocolHandlerAdapter.adapt(command.getProtocolHandler());
+			
+			if (protocolHandler == null) {
+				batchBuffer.append(raw, 0, raw.length);
+			} else {
+				int length = protocolHandler.getWrappedRequestLength(raw.length);
+				batchBuffer.ensureCapacity(batchBuffer.size() + length);
+				ByteBuffer wrapped = ByteBuffer.wrap(batchBuffer.array(), batchBuffer.size(),
+						length);
+				protocolHandler.wrapRequest(raw, 0, raw.length, wrapped);
+				batchBuffer.setSize(batchBuffer.size() + length - wrapped.remaining());
+			}
+		}
+		
+		private void notifyError(IoCommand command, Exception e) {
+			try {
+				batchable(command).onError(e);
+			} catch (Exception e2) {
+				LOG.error(getName() + ": Error completing IO command " + command + ".", e2);
+			}
+			IoCommandFuture.batchCompleted(command);
+		}
+	}
+	
+	/**
+	 * Returns the batchable command queued as {@code command}, or {@code null} if it is
+	 * not batchable.
+	 */
+	private static BatchableIoCommand batchable(IoCommand command) {
+		IoCommand target = IoCommandFuture.unwrap(command);
+		return target instanceof BatchableIoCommand ? (BatchableIoCommand) target : null;
 	}
 }
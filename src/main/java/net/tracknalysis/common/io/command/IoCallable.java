@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.io.IOException;
+
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoManagerResult;
+
+/**
+ * A unit of IO that produces a result, submitted to an {@link IoCommandManager} with
+ * {@link IoCommandManager#submitCallable(IoCallable)}.
+ *
+ * @author David Valeri
+ */
+public interface IoCallable {
+	
+	/**
+	 * Performs the IO against {@code ioManager}.
+	 *
+	 * @param ioManager the IO manager to use while performing the IO operations
+	 *
+	 * @return the result of the IO, may be {@code null}
+	 *
+	 * @throws IOException if the IO fails
+	 */
+	IoManagerResult call(IoManager ioManager) throws IOException;
+}
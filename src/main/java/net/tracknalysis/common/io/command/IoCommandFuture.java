@@ -0,0 +1,210 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoManagerResult;
+
+/**
+ * The pending outcome of a command submitted to an {@link IoCommandManager}.  The future
+ * completes with the {@link IoManagerResult} of the command, or exceptionally with the
+ * failure of the command, and records when the command was enqueued, started and
+ * completed.
+ * <p/>
+ * Cancelling the future before the command starts prevents it from executing.  Once the
+ * command has started, cancelling only completes the future; the IO runs to completion.
+ * Commands that are dropped from, or still queued in, a manager that is stopped are
+ * cancelled.
+ *
+ * @author David Valeri
+ *
+ * @see IoCommandManager#submitCallable(IoCallable)
+ */
+public class IoCommandFuture extends CompletableFuture<IoManagerResult>
+		implements PrioritizedIoCommand {
+	
+	private final IoCallable callable;
+	private final IoCommand command;
+	private final IoCommandPriority priority;
+	private final long enqueueNanoTime = System.nanoTime();
+	private volatile long startNanoTime;
+	private volatile long completeNanoTime;
+	
+	/**
+	 * @param callable the IO to perform
+	 * @param priority the priority at which the IO is queued
+	 */
+	public IoCommandFuture(IoCallable callable, IoCommandPriority priority) {
+		this(callable, null, priority);
+	}
+	
+	/**
+	 * Creates a future for {@code command}.  As the command produces no result, the future
+	 * completes with {@code null} once the command has executed.  The future takes the
+	 * priority of the command.  Command managers treat the future as the command when
+	 * coalescing keyed commands, accounting payload sizes and batching writes.
+	 */
+	public IoCommandFuture(final IoCommand command) {
+		this(new IoCallable() {
+			@Override
+			public IoManagerResult call(IoManager ioManager) {
+				command.execute(ioManager);
+				return null;
+			}
+			
+			@Override
+			public String toString() {
+				return command.toString();
+			}
+		}, command, IoCommandPriority.of(command));
+	}
+	
+	private IoCommandFuture(IoCallable callable, IoCommand command,
+			IoCommandPriority priority) {
+		this.callable = callable;
+		this.command = command;
+		this.priority = priority;
+	}
+	
+	@Override
+	public IoCommandPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Executes the IO on behalf of the command manager and completes the future.  Not
+	 * intended to be called directly.
+	 */
+	@Override
+	public void execute(IoManager ioManager) {
+		if (isDone()) {
+			// Cancelled while queued.
+			return;
+		}
+		
+		startNanoTime = System.nanoTime();
+		try {
+			IoManagerResult result = callable.call(ioManager);
+			completeNanoTime = System.nanoTime();
+			complete(result);
+		} catch (Throwable t) {
+			completeNanoTime = System.nanoTime();
+			completeExceptionally(t);
+		}
+	}
+	
+	/**
+	 * Returns the {@link System#nanoTime()} at which the command was submitted.
+	 */
+	public long getEnqueueNanoTime() {
+		return enqueueNanoTime;
+	}
+	
+	/**
+	 * Returns the {@link System#nanoTime()} at which the command started executing, 0 if it
+	 * has not started.
+	 */
+	public long getStartNanoTime() {
+		return startNanoTime;
+	}
+	
+	/**
+	 * Returns the {@link System#nanoTime()} at which the command finished executing, 0 if it
+	 * has not finished.
+	 */
+	public long getCompleteNanoTime() {
+		return completeNanoTime;
+	}
+	
+	/**
+	 * Returns the time the command spent queued, -1 if it has not started.
+	 */
+	public long getQueueWait(TimeUnit unit) {
+		long start = startNanoTime;
+		return start == 0 ? -1 : unit.convert(start - enqueueNanoTime, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Returns the time the command spent executing, -1 if it has not finished.
+	 */
+	public long getExecutionTime(TimeUnit unit) {
+		long complete = completeNanoTime;
+		return complete == 0
+				? -1 : unit.convert(complete - startNanoTime, TimeUnit.NANOSECONDS);
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + callable + ", " + super.toString() + "]";
+	}
+	
+	/**
+	 * Returns the command wrapped by {@code command} if it is a future created for a
+	 * command, otherwise {@code command} itself.
+	 */
+	static IoCommand unwrap(IoCommand command) {
+		if (command instanceof IoCommandFuture && ((IoCommandFuture) command).command != null) {
+			return ((IoCommandFuture) command).command;
+		}
+		
+		return command;
+	}
+	
+	/**
+	 * Records the start of {@code command} when it is executed as part of a batch rather
+	 * than through {@link #execute(IoManager)}.
+	 *
+	 * @return false if {@code command} is a future that was cancelled while queued and
+	 *         must not be executed
+	 */
+	static boolean batchStarted(IoCommand command) {
+		if (command instanceof IoCommandFuture) {
+			IoCommandFuture future = (IoCommandFuture) command;
+			if (future.isDone()) {
+				return false;
+			}
+			
+			future.startNanoTime = System.nanoTime();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Completes {@code command} if it is a future once the batch it was executed in has
+	 * reported its outcome.
+	 */
+	static void batchCompleted(IoCommand command) {
+		if (command instanceof IoCommandFuture) {
+			IoCommandFuture future = (IoCommandFuture) command;
+			future.completeNanoTime = System.nanoTime();
+			future.complete(null);
+		}
+	}
+	
+	/**
+	 * Cancels {@code command} if it is a future that was discarded by a manager without
+	 * being executed.
+	 */
+	static void discarded(IoCommand command) {
+		if (command instanceof IoCommandFuture) {
+			((IoCommandFuture) command).cancel(false);
+		}
+	}
+}
@@ -41,4 +41,42 @@ public interface IoCommandManager {
 	 * @throws IllegalStateException if the manager is not running
 	 */
 	boolean enqueue(IoCommand ioCommand) throws IllegalStateException;
+	
+	/**
+	 * Enqueues a command for processing in the future, returning a future that completes
+	 * once the command has executed.  If the command is not accepted, the returned future
+	 * has already completed exceptionally with a
+	 * {@link java.util.concurrent.RejectedExecutionException}.
+	 *
+	 * @param ioCommand the command to enqueue
+	 *
+	 * @throws IllegalStateException if the manager is not running
+	 */
+	IoCommandFuture submit(IoCommand ioCommand) throws IllegalStateException;
+	
+	/**
+	 * Enqueues IO for processing in the future at {@link IoCommandPriority#INTERACTIVE}
+	 * priority, returning a future for its result.
+	 *
+	 * @param callable the IO to enqueue
+	 *
+	 * @throws IllegalStateException if the manager is not running
+	 *
+	 * @see #submit(IoCommand)
+	 */
+	IoCommandFuture submitCallable(IoCallable callable) throws IllegalStateException;
+	
+	/**
+	 * Enqueues IO for processing in the future, returning a future for its result.
+	 * Managers that do not support priorities ignore {@code priority}.
+	 *
+	 * @param callable the IO to enqueue
+	 * @param priority the priority at which to queue the IO
+	 *
+	 * @throws IllegalStateException if the manager is not running
+	 *
+	 * @see #submit(IoCommand)
+	 */
+	IoCommandFuture submitCallable(IoCallable callable, IoCommandPriority priority)
+			throws IllegalStateException;
 }
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+/**
+ * Policies applied by an {@link IoCommandQueue} when a command is offered to a priority
+ * level that is at capacity.
+ *
+ * @author David Valeri
+ */
+public enum IoCommandOverflowPolicy {
+	
+	/**
+	 * The offered command is rejected.
+	 */
+	REJECT,
+	
+	/**
+	 * The producer waits up to the block timeout of the level for space to become
+	 * available, rejecting the offered command if none does.
+	 */
+	BLOCK,
+	
+	/**
+	 * The oldest queued commands of the level are dropped to make space.
+	 */
+	DROP_OLDEST,
+	
+	/**
+	 * An offered {@link KeyedIoCommand} replaces a queued command with an equal key,
+	 * taking over its position in the queue, whether or not the level is full.  Offered
+	 * commands that do not replace a queued command are rejected if the level is full.
+	 */
+	REPLACE_BY_KEY;
+}
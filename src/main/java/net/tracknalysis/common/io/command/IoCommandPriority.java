@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+/**
+ * Priority classes of {@link IoCommand}s, in descending order of priority.
+ *
+ * @author David Valeri
+ *
+ * @see PrioritizedIoCommand
+ */
+public enum IoCommandPriority {
+	
+	/**
+	 * Latency sensitive commands, such as realtime data polls, whose delay shows up as gaps
+	 * in recorded data.
+	 */
+	REALTIME,
+	
+	/**
+	 * Commands performed on behalf of a waiting user.  The priority of commands that do not
+	 * declare one.
+	 */
+	INTERACTIVE,
+	
+	/**
+	 * Bulk commands, such as configuration page downloads, that may be deferred.
+	 */
+	BACKGROUND;
+	
+	/**
+	 * Returns the priority declared by {@code command}, or {@link #INTERACTIVE} if it does
+	 * not declare one.
+	 */
+	public static IoCommandPriority of(IoCommand command) {
+		IoCommandPriority priority = null;
+		if (command instanceof PrioritizedIoCommand) {
+			priority = ((PrioritizedIoCommand) command).getPriority();
+		}
+		
+		return priority == null ? INTERACTIVE : priority;
+	}
+}
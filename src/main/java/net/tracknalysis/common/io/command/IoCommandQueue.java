@@ -0,0 +1,532 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.tracknalysis.common.metrics.IntervalLatencyRecorder;
+import net.tracknalysis.common.metrics.LatencySnapshot;
+
+/**
+ * Bounded multi-level queue of {@link IoCommand}s with one FIFO level per
+ * {@link IoCommandPriority}.  Commands are served from the highest priority non-empty
+ * level, except that a command that has waited longer than the maximum wait of its level
+ * is served first, oldest first, so that a steady stream of high priority commands cannot
+ * starve lower priority ones indefinitely.
+ * <p/>
+ * Each level is bounded by a number of commands and, optionally, by the total payload
+ * bytes of its commands, see {@link SizedIoCommand}.  The {@link IoCommandOverflowPolicy}
+ * of a level determines what happens when a command is offered to a full level.  By
+ * default each level rejects commands when full.
+ * <p/>
+ * The time each command spends queued, as well as the number of commands rejected,
+ * dropped and replaced, is recorded per priority class.
+ *
+ * @author David Valeri
+ */
+public class IoCommandQueue {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	private final Level[] levels = new Level[IoCommandPriority.values().length];
+	private int size;
+	private boolean wakeUpRequested;
+
+	/**
+	 * Creates a queue with the default maximum waits of 250ms for
+	 * {@link IoCommandPriority#INTERACTIVE} and 1000ms for
+	 * {@link IoCommandPriority#BACKGROUND} commands.
+	 *
+	 * @param capacityPerPriority the maximum number of queued commands of each priority
+	 */
+	public IoCommandQueue(int capacityPerPriority) {
+		for (int i = 0; i < levels.length; i++) {
+			levels[i] = new Level(capacityPerPriority);
+		}
+
+		setMaxWait(IoCommandPriority.INTERACTIVE, 250, TimeUnit.MILLISECONDS);
+		setMaxWait(IoCommandPriority.BACKGROUND, 1000, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the time after which a queued command of {@code priority} is served ahead of
+	 * higher priority commands.  A non-positive value disables the promotion.
+	 */
+	public void setMaxWait(IoCommandPriority priority, long maxWait, TimeUnit unit) {
+		lock.lock();
+		try {
+			levels[priority.ordinal()].maxWaitNanos = unit.toNanos(maxWait);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of queued commands of {@code priority}.
+	 */
+	public void setCapacity(IoCommandPriority priority, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		}
+
+		lock.lock();
+		try {
+			levels[priority.ordinal()].capacity = capacity;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the maximum total payload bytes of queued commands of {@code priority}.  A
+	 * non-positive value, the default, leaves the level bounded by count alone.
+	 */
+	public void setMaxPayloadBytes(IoCommandPriority priority, long maxPayloadBytes) {
+		lock.lock();
+		try {
+			levels[priority.ordinal()].maxPayloadBytes = maxPayloadBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the policy applied when a command is offered to the full level of
+	 * {@code priority}.
+	 */
+	public void setOverflowPolicy(IoCommandPriority priority,
+			IoCommandOverflowPolicy overflowPolicy) {
+		lock.lock();
+		try {
+			levels[priority.ordinal()].overflowPolicy = overflowPolicy;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the time a producer waits for space in the level of {@code priority} under the
+	 * {@link IoCommandOverflowPolicy#BLOCK} policy.
+	 */
+	public void setBlockTimeout(IoCommandPriority priority, long timeout, TimeUnit unit) {
+		lock.lock();
+		try {
+			levels[priority.ordinal()].blockTimeoutNanos = unit.toNanos(timeout);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Enqueues {@code command} at the level of its priority, applying the overflow policy
+	 * of the level if it is full.  Only blocks under the
+	 * {@link IoCommandOverflowPolicy#BLOCK} policy.
+	 *
+	 * @return true if the command was enqueued or replaced a queued command, false if it
+	 *         was rejected
+	 */
+	public boolean offer(IoCommand command) {
+		return offer(command, true);
+	}
+
+	/**
+	 * Enqueues {@code command} like {@link #offer(IoCommand)} but rejects it rather than
+	 * waiting for space under the {@link IoCommandOverflowPolicy#BLOCK} policy.  Used for
+	 * commands offered by the consumer, which would otherwise wait for space that only it
+	 * can free.
+	 *
+	 * @return true if the command was enqueued or replaced a queued command, false if it
+	 *         was rejected
+	 */
+	boolean offerWithoutBlocking(IoCommand command) {
+		return offer(command, false);
+	}
+
+	private boolean offer(IoCommand command, boolean mayBlock) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+
+		Entry entry = new Entry(command, System.nanoTime());
+		Level level = levels[IoCommandPriority.of(command).ordinal()];
+		List<IoCommand> discards = null;
+		boolean accepted;
+
+		lock.lock();
+		try {
+			if (level.overflowPolicy == IoCommandOverflowPolicy.REPLACE_BY_KEY
+					|| level.overflowPolicy == IoCommandOverflowPolicy.DROP_OLDEST) {
+				discards = new ArrayList<IoCommand>(1);
+			}
+
+			if (level.overflowPolicy == IoCommandOverflowPolicy.REPLACE_BY_KEY
+					&& entry.key != null && replace(level, entry, discards)) {
+				accepted = true;
+			} else if (!level.fits(entry) && !makeSpace(level, entry, mayBlock, discards)) {
+				level.rejected.incrementAndGet();
+				accepted = false;
+			} else {
+				level.add(entry);
+				size++;
+				notEmpty.signal();
+				accepted = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		discarded(discards);
+		return accepted;
+	}
+
+	/**
+	 * Removes and returns the next command to serve, waiting up to {@code timeout} for one
+	 * to become available.
+	 *
+	 * @return the next command, or {@code null} if none became available in time or the
+	 *         consumer was woken by {@link #wakeUp()}
+	 */
+	public IoCommand poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+
+		lock.lockInterruptibly();
+		try {
+			while (size == 0) {
+				if (remaining <= 0 || wakeUpRequested) {
+					wakeUpRequested = false;
+					return null;
+				}
+				remaining = notEmpty.awaitNanos(remaining);
+			}
+
+			return removeNext(System.nanoTime());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Causes a consumer waiting in, or next entering, {@link #poll(long, TimeUnit)} on an
+	 * empty queue to return {@code null} immediately, for instance so that it can
+	 * re-evaluate how long to wait.
+	 */
+	public void wakeUp() {
+		lock.lock();
+		try {
+			wakeUpRequested = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns, without removing it, the command that would be served next, or {@code null}
+	 * if the queue is empty.
+	 */
+	public IoCommand peek() {
+		lock.lock();
+		try {
+			Level level = selectNext(System.nanoTime());
+			return level == null ? null : level.entries.peekFirst().command;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes {@code command} if it is the command that would be served next.  Allows a
+	 * single consumer to act on the result of {@link #peek()} without racing with
+	 * producers enqueuing higher priority commands in the meantime.
+	 *
+	 * @return true if {@code command} was removed
+	 */
+	public boolean removeIfNext(IoCommand command) {
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			Level level = selectNext(now);
+			if (level == null || level.entries.peekFirst().command != command) {
+				return false;
+			}
+
+			removeNext(now);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all queued commands.
+	 */
+	public void clear() {
+		List<IoCommand> discards = new ArrayList<IoCommand>();
+
+		lock.lock();
+		try {
+			for (Level level : levels) {
+				for (Entry entry : level.entries) {
+					discards.add(entry.command);
+				}
+				level.entries.clear();
+				level.payloadBytes = 0;
+			}
+			size = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		for (IoCommand command : discards) {
+			IoCommandFuture.discarded(command);
+		}
+	}
+
+	/**
+	 * Returns the total number of queued commands.
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ends the current statistics interval for {@code priority}, returning the queue wait
+	 * times, in nanoseconds, of the commands of that priority served during the interval.
+	 */
+	public LatencySnapshot getWaitSnapshot(IoCommandPriority priority) {
+		return levels[priority.ordinal()].waitTimes.getIntervalSnapshot();
+	}
+
+	/**
+	 * Returns the number of commands of {@code priority} rejected because their level was
+	 * full.
+	 */
+	public long getRejectedCount(IoCommandPriority priority) {
+		return levels[priority.ordinal()].rejected.get();
+	}
+
+	/**
+	 * Returns the number of queued commands of {@code priority} dropped to make space under
+	 * the {@link IoCommandOverflowPolicy#DROP_OLDEST} policy.
+	 */
+	public long getDroppedCount(IoCommandPriority priority) {
+		return levels[priority.ordinal()].dropped.get();
+	}
+
+	/**
+	 * Returns the number of queued commands of {@code priority} replaced under the
+	 * {@link IoCommandOverflowPolicy#REPLACE_BY_KEY} policy.
+	 */
+	public long getReplacedCount(IoCommandPriority priority) {
+		return levels[priority.ordinal()].replaced.get();
+	}
+
+	private IoCommand removeNext(long now) {
+		Level level = selectNext(now);
+		Entry entry = level.removeFirst();
+		size--;
+		level.waitTimes.record(now - entry.enqueueNanoTime);
+		notFull.signalAll();
+		return entry.command;
+	}
+
+	/**
+	 * Replaces the command of the queued entry whose key equals that of {@code entry},
+	 * adding the replaced command to {@code discards}.
+	 */
+	private boolean replace(Level level, Entry entry, List<IoCommand> discards) {
+		for (Entry queued : level.entries) {
+			if (entry.key.equals(queued.key)) {
+				long payloadBytes = level.payloadBytes - queued.payloadSize + entry.payloadSize;
+				if (level.maxPayloadBytes > 0 && payloadBytes > level.maxPayloadBytes) {
+					return false;
+				}
+
+				discards.add(queued.command);
+				queued.command = entry.command;
+				queued.payloadSize = entry.payloadSize;
+				level.payloadBytes = payloadBytes;
+				level.replaced.incrementAndGet();
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Applies the overflow policy of {@code level} to make space for {@code entry}.
+	 *
+	 * @param mayBlock false to reject rather than wait under the
+	 *            {@link IoCommandOverflowPolicy#BLOCK} policy
+	 * @param discards receives the commands dropped under the
+	 *            {@link IoCommandOverflowPolicy#DROP_OLDEST} policy
+	 * @return true if there is now space for {@code entry}
+	 */
+	private boolean makeSpace(Level level, Entry entry, boolean mayBlock,
+			List<IoCommand> discards) {
+		if (level.maxPayloadBytes > 0 && entry.payloadSize > level.maxPayloadBytes) {
+			return false;
+		}
+
+		switch (level.overflowPolicy) {
+			case BLOCK:
+				if (!mayBlock) {
+					return false;
+				}
+				long remaining = level.blockTimeoutNanos;
+				try {
+					while (!level.fits(entry)) {
+						if (remaining <= 0) {
+							return false;
+						}
+						remaining = notFull.awaitNanos(remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				return true;
+			case DROP_OLDEST:
+				while (!level.fits(entry)) {
+					Entry dropped = level.removeFirst();
+					size--;
+					discards.add(dropped.command);
+					level.dropped.incrementAndGet();
+				}
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Notifies the commands removed without being executed, cancelling their futures and
+	 * letting periodic commands release again in their next slot.  Called after releasing
+	 * the lock, as cancelling a future runs the dependent stages of the submitter, which
+	 * may offer again or block.
+	 *
+	 * @param discards the discarded commands, may be {@code null}
+	 */
+	private static void discarded(List<IoCommand> discards) {
+		if (discards == null) {
+			return;
+		}
+
+		for (IoCommand command : discards) {
+			if (command instanceof PeriodicIoCommand) {
+				((PeriodicIoCommand) command).discarded();
+			} else {
+				IoCommandFuture.discarded(command);
+			}
+		}
+	}
+
+	private Level selectNext(long now) {
+		Level overdue = null;
+		Level highest = null;
+
+		for (Level level : levels) {
+			Entry head = level.entries.peekFirst();
+			if (head == null) {
+				continue;
+			}
+
+			if (highest == null) {
+				highest = level;
+			}
+
+			if (level.maxWaitNanos > 0 && now - head.enqueueNanoTime >= level.maxWaitNanos
+					&& (overdue == null || head.enqueueNanoTime
+							< overdue.entries.peekFirst().enqueueNanoTime)) {
+				overdue = level;
+			}
+		}
+
+		return overdue == null ? highest : overdue;
+	}
+
+	private static final class Level {
+		private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+		private final IntervalLatencyRecorder waitTimes = new IntervalLatencyRecorder();
+		private final AtomicLong rejected = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicLong replaced = new AtomicLong();
+		private int capacity;
+		private long maxPayloadBytes;
+		private long payloadBytes;
+		private long maxWaitNanos;
+		private long blockTimeoutNanos;
+		private IoCommandOverflowPolicy overflowPolicy = IoCommandOverflowPolicy.REJECT;
+
+		Level(int capacity) {
+			this.capacity = capacity;
+		}
+
+		boolean fits(Entry entry) {
+			return entries.size() < capacity && (maxPayloadBytes <= 0
+					|| payloadBytes + entry.payloadSize <= maxPayloadBytes);
+		}
+
+		void add(Entry entry) {
+			entries.addLast(entry);
+			payloadBytes += entry.payloadSize;
+		}
+
+		Entry removeFirst() {
+			Entry entry = entries.pollFirst();
+			payloadBytes -= entry.payloadSize;
+			return entry;
+		}
+	}
+
+	private static final class Entry {
+		private final Object key;
+		private final long enqueueNanoTime;
+		private IoCommand command;
+		private int payloadSize;
+
+		Entry(IoCommand command, long enqueueNanoTime) {
+			this.command = command;
+			this.enqueueNanoTime = enqueueNanoTime;
+			// Submitted commands are keyed and sized as the command they wrap.
+			IoCommand target = IoCommandFuture.unwrap(command);
+			this.key = target instanceof KeyedIoCommand
+					? ((KeyedIoCommand) target).getKey() : null;
+
+			if (target instanceof SizedIoCommand) {
+				payloadSize = ((SizedIoCommand) target).getPayloadSize();
+			} else if (target instanceof BatchableIoCommand) {
+				byte[] request = ((BatchableIoCommand) target).getCommand();
+				payloadSize = request == null ? 0 : request.length;
+			}
+		}
+	}
+}
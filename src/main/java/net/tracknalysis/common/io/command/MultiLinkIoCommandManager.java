@@ -0,0 +1,280 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+import net.tracknalysis.common.io.IoManager;
+
+/**
+ * Serves the commands of many {@link IoManager} links from a small, fixed pool of worker
+ * threads rather than a thread per link.  Each registered link is exposed as its own
+ * {@link IoCommandManager}.  A link is only ever served by one worker at a time and its
+ * commands are executed in FIFO order, while different links are served in parallel.
+ * <p/>
+ * A link with queued commands is scheduled on a shared ready queue.  A worker serving a
+ * link executes at most a fixed quantum of its commands before rescheduling it behind the
+ * other ready links, so that a busy link cannot monopolize a worker.
+ *
+ * @author David Valeri
+ */
+public class MultiLinkIoCommandManager {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MultiLinkIoCommandManager.class);
+	private static final AtomicInteger WORKER_THREAD_INSTANCE_COUNTER = new AtomicInteger();
+
+	private static final int DEFAULT_LINK_CAPACITY = 10;
+	private static final int QUANTUM = 16;
+
+	private final BlockingQueue<Link> readyLinks = new LinkedBlockingQueue<Link>();
+	// Queued to wake idle workers so that they observe a stop request promptly
+	private final Link wakeUp = new Link(null, 0);
+	private final int workerCount;
+	private WorkerThread[] workers;
+	private volatile boolean running;
+	private volatile ThreadFactory threadFactory = ThreadFactories.platform(true);
+
+	/**
+	 * @param workerCount the number of worker threads shared by all links
+	 */
+	public MultiLinkIoCommandManager(int workerCount) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("At least one worker is required.");
+		}
+
+		this.workerCount = workerCount;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+	
+	/**
+	 * Sets the factory of the worker threads, for example {@link ThreadFactories#virtual()}.
+	 * Defaults to daemon platform threads.  Takes effect the next time the manager is
+	 * started.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+	
+	public synchronized void start() {
+		if (!running) {
+			// Commands enqueued late by producers racing the last stop are stale.
+			discardWaitingLinks();
+			running = true;
+			workers = new WorkerThread[workerCount];
+			for (int i = 0; i < workers.length; i++) {
+				workers[i] = new WorkerThread();
+				LOG.info("{}: Starting new worker thread: {}.", this, workers[i].getName());
+				workers[i].start();
+			}
+		}
+	}
+
+	public synchronized void stop() {
+		if (running) {
+			running = false;
+			// Stop all workers at once rather than waiting out each idle worker's poll in
+			// turn.  Every worker is told to stop before any is woken so that a running
+			// worker cannot consume the wake up meant for another.
+			for (WorkerThread worker : workers) {
+				LOG.info("{}: Stopping worker thread: {}.", this, worker.getName());
+				worker.requestStop();
+			}
+			for (int i = 0; i < workers.length; i++) {
+				readyLinks.add(wakeUp);
+			}
+			for (WorkerThread worker : workers) {
+				worker.cancel();
+			}
+			workers = null;
+			
+			// Nothing serves waiting links until restarted.
+			discardWaitingLinks();
+		}
+	}
+
+	/**
+	 * Registers a link, returning the command manager through which commands for the link
+	 * are enqueued.  The returned manager must be started before use and holds at most 10
+	 * queued commands.
+	 *
+	 * @param ioManager the link
+	 */
+	public IoCommandManager register(IoManager ioManager) {
+		return register(ioManager, DEFAULT_LINK_CAPACITY);
+	}
+
+	/**
+	 * Registers a link, returning the command manager through which commands for the link
+	 * are enqueued.  The returned manager must be started before use.
+	 *
+	 * @param ioManager the link
+	 * @param capacity the maximum number of queued commands for the link
+	 */
+	public IoCommandManager register(IoManager ioManager, int capacity) {
+		return new Link(ioManager, capacity);
+	}
+
+	/**
+	 * Discards the queued commands of the links waiting to be served.  Only called while no
+	 * workers are running.
+	 */
+	private void discardWaitingLinks() {
+		Link link;
+		while ((link = readyLinks.poll()) != null) {
+			link.discardCommands();
+			link.scheduled.set(false);
+			// A producer may have enqueued after the check but before the flag cleared.
+			if (!link.commands.isEmpty()) {
+				schedule(link);
+			}
+		}
+	}
+
+	private void schedule(Link link) {
+		if (link.scheduled.compareAndSet(false, true)) {
+			readyLinks.add(link);
+		}
+	}
+
+	/**
+	 * A single link's view of the manager.  The link's command queue is only drained by
+	 * the worker that holds the link's scheduled flag.
+	 */
+	private final class Link extends AbstractIoCommandManager {
+
+		private final IoManager ioManager;
+		private final int capacity;
+		private final Queue<IoCommand> commands = new ConcurrentLinkedQueue<IoCommand>();
+		private final AtomicInteger size = new AtomicInteger();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile boolean linkRunning;
+
+		Link(IoManager ioManager, int capacity) {
+			this.ioManager = ioManager;
+			this.capacity = capacity;
+		}
+
+		@Override
+		public void start() {
+			linkRunning = true;
+		}
+
+		@Override
+		public void stop() {
+			linkRunning = false;
+			discardCommands();
+		}
+
+		@Override
+		public boolean enqueue(IoCommand ioCommand) {
+			if (!linkRunning || !running) {
+				throw new IllegalStateException("The manager is not running.");
+			}
+
+			if (size.incrementAndGet() > capacity) {
+				size.decrementAndGet();
+				return false;
+			}
+
+			commands.add(ioCommand);
+			schedule(this);
+			return true;
+		}
+
+		void discardCommands() {
+			IoCommand command;
+			while ((command = commands.poll()) != null) {
+				size.decrementAndGet();
+				IoCommandFuture.discarded(command);
+			}
+		}
+
+		/**
+		 * Executes up to a quantum of queued commands and then releases or reschedules the
+		 * link.
+		 */
+		void serve(String workerName) {
+			for (int i = 0; i < QUANTUM; i++) {
+				IoCommand command = commands.poll();
+				if (command == null) {
+					break;
+				}
+				size.decrementAndGet();
+
+				try {
+					LOG.debug("{}: Executing IO command {}.", workerName, command);
+					command.execute(ioManager);
+				} catch (Exception e) {
+					LOG.error(workerName + ": Error executing IO command " + command + "." +
+							"  Dropping command and proceeding.", e);
+				}
+			}
+
+			if (!commands.isEmpty()) {
+				readyLinks.add(this);
+			} else {
+				scheduled.set(false);
+				// A producer may have enqueued after the check but before the flag cleared.
+				if (!commands.isEmpty()) {
+					schedule(this);
+				}
+			}
+		}
+	}
+
+	private class WorkerThread extends GracefulShutdownWorker {
+
+		public WorkerThread() {
+			super("MultiLinkWorkerThread: " + WORKER_THREAD_INSTANCE_COUNTER.getAndIncrement(),
+					threadFactory);
+		}
+
+		@Override
+		public void run() {
+			while (keepRunning()) {
+				try {
+					Link link = readyLinks.poll(1000l, TimeUnit.MILLISECONDS);
+					if (link != null && link != wakeUp) {
+						link.serve(getName());
+					}
+				} catch (InterruptedException e) {
+					if (keepRunning()) {
+						LOG.error(getName()
+								+ ": Interrupted while waiting for a link and still running.", e);
+					} else {
+						LOG.debug("{}: Interrupted while waiting for a link and not running.",
+								getName());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.metrics.IntervalLatencyRecorder;
+import net.tracknalysis.common.metrics.LatencySnapshot;
+
+/**
+ * A command scheduled for execution at a fixed rate by a {@link DefaultIoCommandManager}.
+ * Release times follow a monotonic schedule anchored at the time the command was
+ * scheduled, so execution delays do not accumulate into drift.  At most one instance of
+ * the command is queued at a time; slots that pass while an instance is still queued, or
+ * while the manager is busy for longer than a period, are merged or skipped and counted
+ * rather than piling up.
+ *
+ * @author David Valeri
+ *
+ * @see DefaultIoCommandManager#schedule(IoCommand, long, TimeUnit)
+ */
+public final class PeriodicIoCommand implements PrioritizedIoCommand {
+
+	private final IoCommand command;
+	private final long periodNanos;
+
+	private final AtomicLong executions = new AtomicLong();
+	private final AtomicLong missedSlots = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+	private final IntervalLatencyRecorder jitter = new IntervalLatencyRecorder();
+
+	private volatile boolean cancelled;
+
+	// Only accessed by the command thread
+	private long nextReleaseNanoTime;
+	private long scheduledNanoTime;
+	
+	private volatile boolean queued;
+
+	PeriodicIoCommand(IoCommand command, long periodNanos, long firstReleaseNanoTime) {
+		this.command = command;
+		this.periodNanos = periodNanos;
+		this.nextReleaseNanoTime = firstReleaseNanoTime;
+	}
+
+	/**
+	 * Returns the scheduled command.
+	 */
+	public IoCommand getCommand() {
+		return command;
+	}
+
+	public long getPeriod(TimeUnit unit) {
+		return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the priority of the scheduled command.
+	 */
+	@Override
+	public IoCommandPriority getPriority() {
+		return IoCommandPriority.of(command);
+	}
+
+	/**
+	 * Stops further executions of the command.  An instance that is already queued is
+	 * discarded when dequeued.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of times the command has been executed.
+	 */
+	public long getExecutionCount() {
+		return executions.get();
+	}
+
+	/**
+	 * Returns the number of slots in which the command was not released because the
+	 * previous instance was still queued, the manager fell behind by more than a period,
+	 * or the queue was full.
+	 */
+	public long getMissedSlotCount() {
+		return missedSlots.get();
+	}
+
+	/**
+	 * Returns the number of executions that took longer than the period.
+	 */
+	public long getOverrunCount() {
+		return overruns.get();
+	}
+
+	/**
+	 * Ends the current statistics interval, returning the delays, in nanoseconds, between
+	 * the scheduled slot and the actual start of each execution in the interval.  The
+	 * {@link LatencySnapshot#getRate() rate} of the snapshot is the achieved execution rate.
+	 */
+	public LatencySnapshot getJitterSnapshot() {
+		return jitter.getIntervalSnapshot();
+	}
+
+	/**
+	 * Executes the scheduled command on behalf of the command manager, recording timing
+	 * statistics.  Not intended to be called directly.
+	 */
+	@Override
+	public void execute(IoManager ioManager) {
+		queued = false;
+		if (cancelled) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		jitter.record(start - scheduledNanoTime);
+		try {
+			command.execute(ioManager);
+		} finally {
+			executions.incrementAndGet();
+			if (System.nanoTime() - start > periodNanos) {
+				overruns.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Releases the command into {@code queue} if a slot has arrived.
+	 *
+	 * @return the number of nanoseconds until the next slot
+	 */
+	long release(IoCommandQueue queue, long now) {
+		if (now - nextReleaseNanoTime >= 0) {
+			// Skip whole periods the manager fell behind by and serve the latest slot.
+			long skipped = (now - nextReleaseNanoTime) / periodNanos;
+			long slot = nextReleaseNanoTime + skipped * periodNanos;
+			nextReleaseNanoTime = slot + periodNanos;
+
+			if (queued) {
+				skipped++;
+			} else {
+				scheduledNanoTime = slot;
+				// Released on the command thread, which must never wait for queue space.
+				queued = queue.offerWithoutBlocking(this);
+				if (!queued) {
+					skipped++;
+				}
+			}
+
+			if (skipped > 0) {
+				missedSlots.addAndGet(skipped);
+			}
+		}
+
+		return nextReleaseNanoTime - now;
+	}
+
+	/**
+	 * Invoked by the queue when the queued instance is dropped or replaced.
+	 */
+	void discarded() {
+		queued = false;
+		missedSlots.incrementAndGet();
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+/**
+ * An {@link IoCommand} that declares the priority class it is served in.  Commands that do
+ * not implement this interface are served as {@link IoCommandPriority#INTERACTIVE}.
+ *
+ * @author David Valeri
+ */
+public interface PrioritizedIoCommand extends IoCommand {
+	
+	/**
+	 * Returns the priority class of the command.
+	 */
+	IoCommandPriority getPriority();
+}
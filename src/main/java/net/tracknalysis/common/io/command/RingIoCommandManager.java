@@ -0,0 +1,175 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.common.concurrent.BlockingWaitStrategy;
+import net.tracknalysis.common.concurrent.GracefulShutdownWorker;
+import net.tracknalysis.common.concurrent.MpscRingBuffer;
+import net.tracknalysis.common.concurrent.ThreadFactories;
+import net.tracknalysis.common.concurrent.WaitStrategy;
+import net.tracknalysis.common.io.IoManager;
+
+/**
+ * Low latency command manager backed by a preallocated, lock-free {@link MpscRingBuffer}.
+ * Producers enqueue without taking a lock and the command thread waits for commands
+ * according to a pluggable {@link WaitStrategy}.
+ * <p/>
+ * Commands are executed strictly in FIFO order.  Unlike {@link DefaultIoCommandManager},
+ * this manager does not support priorities, periodic scheduling or batching.
+ *
+ * @author David Valeri
+ */
+public class RingIoCommandManager extends AbstractIoCommandManager {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(RingIoCommandManager.class);
+	private static final AtomicInteger COMMAND_THREAD_INSTANCE_COUNTER = new AtomicInteger();
+	
+	private final MpscRingBuffer<IoCommand> commandRing;
+	private final WaitStrategy waitStrategy;
+	private final IoManager ioManager;
+	private CommandThread commandThread;
+	private volatile boolean running;
+	private volatile ThreadFactory threadFactory = ThreadFactories.platform(false);
+	
+	/**
+	 * Creates a manager with a capacity of 1024 commands and a
+	 * {@link BlockingWaitStrategy}.
+	 */
+	public RingIoCommandManager(IoManager ioManager) {
+		this(ioManager, 1024, new BlockingWaitStrategy());
+	}
+	
+	/**
+	 * @param ioManager the IO manager to execute commands against
+	 * @param capacity the number of commands that may be queued, rounded up to a power of two
+	 * @param waitStrategy the strategy by which the command thread waits for commands
+	 */
+	public RingIoCommandManager(IoManager ioManager, int capacity,
+			WaitStrategy waitStrategy) {
+		this.ioManager = ioManager;
+		this.commandRing = new MpscRingBuffer<IoCommand>(capacity);
+		this.waitStrategy = waitStrategy;
+	}
+	
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+	
+	/**
+	 * Sets the factory of the command thread, for example {@link ThreadFactories#virtual()}.
+	 * Defaults to non-daemon platform threads.  Takes effect the next time the manager is
+	 * started.  A spinning wait strategy occupies a carrier thread while idle and is a poor
+	 * fit for virtual threads.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+	
+	@Override
+	public synchronized void start() {
+		if (!running) {
+			// Commands offered late by producers racing the last stop are stale.
+			discardQueuedCommands();
+			commandThread = new CommandThread();
+			LOG.info("{}: Starting new command thread: {}.", this, commandThread.getName());
+			running = true;
+			commandThread.start();
+		}
+	}
+	
+	@Override
+	public synchronized void stop() {
+		if (running) {
+			running = false;
+			LOG.info("{}: Stopping command thread: {}.", this, commandThread.getName());
+			if (commandThread.cancel()) {
+				// A producer that passed the running check before it changed may have
+				// offered its command after the command thread's final drain.
+				discardQueuedCommands();
+				LOG.info("{}: Stopped command thread: {}.", this, commandThread.getName());
+			} else {
+				LOG.warn("{}: Command thread {} did not stop.  Leaving queued commands to it.",
+						this, commandThread.getName());
+			}
+			commandThread = null;
+		}
+	}
+	
+	@Override
+	public boolean enqueue(IoCommand ioCommand) {
+		if (!running) {
+			throw new IllegalStateException("The manager is not running.");
+		}
+		
+		if (commandRing.offer(ioCommand)) {
+			waitStrategy.signal();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Discards the commands in the ring.  Only called while no command thread is running,
+	 * as only the consumer may drain the ring.
+	 */
+	private void discardQueuedCommands() {
+		IoCommand command;
+		while ((command = commandRing.poll()) != null) {
+			IoCommandFuture.discarded(command);
+		}
+	}
+	
+	private class CommandThread extends GracefulShutdownWorker {
+		
+		public CommandThread() {
+			super("RingCommandThread: " + COMMAND_THREAD_INSTANCE_COUNTER.getAndIncrement(),
+					threadFactory);
+		}
+		
+		@Override
+		public void run() {
+			int idleCount = 0;
+			try {
+				while (keepRunning()) {
+					IoCommand command = commandRing.poll();
+					if (command == null) {
+						waitStrategy.idle(idleCount, commandRing);
+						if (idleCount < Integer.MAX_VALUE) {
+							idleCount++;
+						}
+					} else {
+						idleCount = 0;
+						try {
+							command.execute(ioManager);
+						} catch (Exception e) {
+							LOG.error(getName() + ": Error executing IO command " + command + "." +
+									"  Dropping command and proceeding.", e);
+						}
+					}
+				}
+			} finally {
+				discardQueuedCommands();
+			}
+		}
+	}
+}
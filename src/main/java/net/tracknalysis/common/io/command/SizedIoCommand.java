@@ -0,0 +1,32 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+/**
+ * An {@link IoCommand} that declares the size of its payload so that an
+ * {@link IoCommandQueue} can bound the total payload bytes it holds.  The payload size of
+ * a {@link BatchableIoCommand} that does not implement this interface is the length of its
+ * request and that of any other command is 0.
+ *
+ * @author David Valeri
+ */
+public interface SizedIoCommand extends IoCommand {
+	
+	/**
+	 * Returns the number of payload bytes the command holds while queued.
+	 */
+	int getPayloadSize();
+}
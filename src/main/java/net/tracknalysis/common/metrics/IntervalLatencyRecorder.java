@@ -0,0 +1,87 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records values into a pair of {@link LatencyHistogram}s, swapping the active histogram
+ * each time an interval snapshot is taken.  Every recorded value lands in exactly one
+ * interval, and recording threads never block on a snapshot being taken.
+ *
+ * @author David Valeri
+ */
+public final class IntervalLatencyRecorder {
+
+    private final AtomicReference<Interval> active = new AtomicReference<Interval>();
+    private Interval inactive = new Interval();
+
+    public IntervalLatencyRecorder() {
+        Interval first = new Interval();
+        first.startNanoTime = System.nanoTime();
+        active.set(first);
+    }
+
+    /**
+     * Records a value in the current interval.  Lock-free and allocation-free.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        Interval interval;
+        while (true) {
+            interval = active.get();
+            interval.writers.incrementAndGet();
+            if (active.get() == interval) {
+                break;
+            }
+            interval.writers.decrementAndGet();
+        }
+
+        try {
+            interval.histogram.record(value);
+        } finally {
+            interval.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ends the current interval, starting a new empty one, and returns a summary of the
+     * values recorded in the interval that ended.
+     */
+    public synchronized LatencySnapshot getIntervalSnapshot() {
+        long now = System.nanoTime();
+        Interval next = inactive;
+        next.histogram.reset();
+        next.startNanoTime = now;
+
+        Interval ended = active.getAndSet(next);
+        while (ended.writers.get() != 0) {
+            // Writers only hold the interval for the duration of a single record call.
+            Thread.yield();
+        }
+
+        inactive = ended;
+        return ended.histogram.snapshot(ended.startNanoTime, now);
+    }
+
+    private static final class Interval {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong writers = new AtomicLong();
+        private volatile long startNanoTime;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, fixed-memory histogram of non-negative long values, typically durations
+ * in nanoseconds.  Values are counted in log-linear buckets: each power of two range is
+ * split into {@value #SUB_BUCKET_COUNT} linear sub-buckets, bounding the relative error
+ * of reported percentiles to roughly 3%.  Values at or above {@link #MAX_TRACKABLE_VALUE}
+ * are counted in the last bucket, although the exact maximum is always retained.
+ * <p/>
+ * Recording is safe from any number of threads and never allocates.  Reading while
+ * values are being recorded produces a consistent but possibly slightly stale view.
+ *
+ * @author David Valeri
+ *
+ * @see IntervalLatencyRecorder
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 36;
+
+    /**
+     * Values at or above this value, about 68 seconds when recording nanoseconds, are
+     * counted together in the last bucket.
+     */
+    public static final long MAX_TRACKABLE_VALUE = 1L << MAX_EXPONENT;
+
+    private static final int BUCKET_COUNT =
+            (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.  Negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(v));
+        totalCount.incrementAndGet();
+        sum.addAndGet(v);
+
+        long currentMax = max.get();
+        while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded value, or 0 if no values have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded values, or 0 if no values have been
+     * recorded.
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Returns a value that is greater than or equal to {@code percentile} percent of the
+     * recorded values, within the precision of the histogram and never more than
+     * {@link #getMax()}.
+     *
+     * @param percentile the percentile in [0, 100]
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        double boundedPercentile = Math.min(100, Math.max(0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(boundedPercentile / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueInBucket(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values.  Values recorded concurrently with a reset may or may
+     * not be retained.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Captures the current summary statistics.
+     *
+     * @param startNanoTime the {@link System#nanoTime()} value at which recording started
+     * @param endNanoTime the {@link System#nanoTime()} value at which recording ended
+     */
+    public LatencySnapshot snapshot(long startNanoTime, long endNanoTime) {
+        return new LatencySnapshot(startNanoTime, endNanoTime, getCount(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getMax());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        } else if (value >= MAX_TRACKABLE_VALUE) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        } else if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
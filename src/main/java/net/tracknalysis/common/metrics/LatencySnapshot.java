@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable summary of the values recorded in a {@link LatencyHistogram} over an interval.
+ * Values are in the units recorded, typically nanoseconds.
+ *
+ * @author David Valeri
+ */
+public final class LatencySnapshot {
+
+    private final long startNanoTime;
+    private final long endNanoTime;
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    public LatencySnapshot(long startNanoTime, long endNanoTime, long count, double mean,
+            long p50, long p99, long p999, long max) {
+        this.startNanoTime = startNanoTime;
+        this.endNanoTime = endNanoTime;
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} value at which the interval started.
+     */
+    public long getStartNanoTime() {
+        return startNanoTime;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} value at which the interval ended.
+     */
+    public long getEndNanoTime() {
+        return endNanoTime;
+    }
+
+    /**
+     * Returns the number of values recorded in the interval.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of values recorded per second over the interval.
+     */
+    public double getRate() {
+        long duration = endNanoTime - startNanoTime;
+        return duration <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / duration;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, "
+                + "p999=%.1fus, max=%.1fus", count, mean / 1000d, p50 / 1000d, p99 / 1000d,
+                p999 / 1000d, max / 1000d);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class GracefulShutdownWorkerTest {
+
+    @Test
+    public void testCancelStopsWorkerGracefully() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+
+        GracefulShutdownWorker worker = new GracefulShutdownWorker("TestWorker",
+                ThreadFactories.virtualIfSupported()) {
+            @Override
+            public void run() {
+                started.countDown();
+                while (keepRunning()) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                    }
+                }
+            }
+        };
+
+        worker.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(worker.isAlive());
+        assertEquals(ThreadFactories.isVirtualThreadSupported(), worker.isVirtual());
+
+        long start = System.nanoTime();
+        assertTrue(worker.cancel());
+        assertFalse(worker.isAlive());
+        assertFalse(interrupted.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void testCancelInterruptsUnresponsiveWorker() throws Exception {
+        GracefulShutdownWorker worker = new GracefulShutdownWorker("TestWorker") {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // Expected
+                }
+            }
+        };
+
+        worker.start();
+        assertTrue(worker.cancel());
+        assertFalse(worker.isAlive());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class MpscRingBufferTest {
+
+    @Test
+    public void testOfferAndPoll() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<Integer>(3);
+        assertEquals(4, ring.capacity());
+        assertTrue(ring.isEmpty());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(i));
+            }
+            assertFalse(ring.offer(4));
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final MpscRingBuffer<Long> ring = new MpscRingBuffer<Long>(64);
+        final int producers = 4;
+        final int perProducer = 250000;
+        final WaitStrategy waitStrategy = new BlockingWaitStrategy();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < perProducer; i++) {
+                        while (!ring.offer(producer << 32 | i)) {
+                            Thread.yield();
+                        }
+                        waitStrategy.signal();
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        long[] next = new long[producers];
+        int received = 0;
+        int idleCount = 0;
+        while (received < producers * perProducer) {
+            Long element = ring.poll();
+            if (element == null) {
+                waitStrategy.idle(idleCount++, ring);
+            } else {
+                idleCount = 0;
+                int producer = (int) (element >>> 32);
+                // Elements of each producer arrive in the order offered.
+                assertEquals(next[producer]++, element & 0xFFFFFFFFL);
+                received++;
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+    }
+}
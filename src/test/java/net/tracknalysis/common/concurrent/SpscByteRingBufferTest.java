@@ -0,0 +1,101 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class SpscByteRingBufferTest {
+
+    @Test
+    public void testWrapAround() {
+        SpscByteRingBuffer ring = new SpscByteRingBuffer(6);
+        assertEquals(8, ring.capacity());
+
+        byte[] out = new byte[8];
+        assertEquals(5, ring.offer(new byte[] {1, 2, 3, 4, 5}, 0, 5));
+        assertEquals(4, ring.poll(out, 0, 4));
+        assertEquals(7, ring.offer(new byte[] {6, 7, 8, 9, 10, 11, 12, 13}, 0, 8));
+        assertEquals(8, ring.available());
+        assertEquals(0, ring.offer(new byte[] {14}, 0, 1));
+
+        assertEquals(8, ring.poll(out, 0, 8));
+        assertArrayEquals(new byte[] {5, 6, 7, 8, 9, 10, 11, 12}, out);
+        assertEquals(0, ring.poll(out, 0, 8));
+    }
+
+    @Test
+    public void testAwaitDataTimesOut() {
+        SpscByteRingBuffer ring = new SpscByteRingBuffer(16);
+        ring.offer(new byte[] {1}, 0, 1);
+
+        long start = System.nanoTime();
+        assertFalse(ring.awaitData(2, start + TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(ring.awaitData(1, start));
+    }
+
+    @Test
+    public void testConcurrentTransfer() throws Exception {
+        final SpscByteRingBuffer ring = new SpscByteRingBuffer(64);
+        final int total = 1000000;
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                byte[] chunk = new byte[37];
+                int sent = 0;
+                while (sent < total) {
+                    int length = Math.min(chunk.length, total - sent);
+                    for (int i = 0; i < length; i++) {
+                        chunk[i] = (byte) (sent + i);
+                    }
+
+                    int offset = 0;
+                    while (offset < length) {
+                        int written = ring.offer(chunk, offset, length - offset);
+                        offset += written;
+                        if (written == 0) {
+                            ring.awaitSpace(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+                        }
+                    }
+                    sent += length;
+                }
+            }
+        };
+        producer.start();
+
+        byte[] in = new byte[53];
+        int received = 0;
+        while (received < total) {
+            assertTrue(ring.awaitData(1, System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+            int read = ring.poll(in, 0, in.length);
+            for (int i = 0; i < read; i++) {
+                assertEquals((byte) (received + i), in[i]);
+            }
+            received += read;
+        }
+
+        producer.join();
+        assertEquals(0, ring.available());
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.io.AdaptiveTimeoutIoManager.SignatureStatistics;
+
+/**
+ * @author David Valeri
+ */
+public class AdaptiveTimeoutIoManagerTest {
+
+    @Test
+    public void testLearnedTimeoutShortensStallAfterDroppedResponse() throws Exception {
+        int responses = AdaptiveTimeoutIoManager.DEFAULT_MIN_SAMPLES;
+        AdaptiveTimeoutIoManager ioManager = new AdaptiveTimeoutIoManager(
+                new DirectIoManager(new StreamSocketManager(
+                        new ByteArrayInputStream(new byte[responses * 2]),
+                        new ByteArrayOutputStream())));
+
+        byte[] out = new byte[2];
+        assertEquals(5000, ioManager.getTimeout(null, out.length, 5000));
+        for (int i = 0; i < responses; i++) {
+            ioManager.read(out, 5000);
+        }
+
+        long learnedTimeout = ioManager.getTimeout(null, out.length, 5000);
+        assertTrue(learnedTimeout >= AdaptiveTimeoutIoManager.DEFAULT_MIN_TIMEOUT);
+        assertTrue(learnedTimeout < 1000);
+
+        long start = System.currentTimeMillis();
+        try {
+            ioManager.read(out, 5000);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        SignatureStatistics statistics = ioManager.getStatistics().iterator().next();
+        assertEquals(responses, statistics.getSampleCount());
+        assertEquals(1, statistics.getTimeoutCount());
+        assertEquals(1, statistics.getLearnedTimeoutCount());
+
+        // The next exchange is given the full timeout in case responses slowed down.
+        assertEquals(5000, statistics.getTimeout(5000));
+    }
+}
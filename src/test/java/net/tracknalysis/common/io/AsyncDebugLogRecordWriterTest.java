@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class AsyncDebugLogRecordWriterTest {
+
+    @Test
+    public void testRecordsWrittenInOrderOnFlush() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncDebugLogRecordWriter writer = new AsyncDebugLogRecordWriter(
+                DebugLogFormat.BINARY.newWriter(out), null, 4);
+        writer.setOverflowPolicy(AsyncDebugLogRecordWriter.OverflowPolicy.BLOCK);
+        writer.setFlushInterval(1, TimeUnit.HOURS);
+
+        for (int i = 0; i < 20; i++) {
+            writer.write(DebugLogRecord.Type.WRITE_AND_READ, i, new byte[] {(byte) i},
+                    new byte[i]);
+        }
+        writer.flush();
+        assertEquals(20, writer.getWrittenRecordCount());
+
+        DebugLogRecordReader reader =
+                DebugLogFormat.open(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 20; i++) {
+            DebugLogRecord record = reader.read();
+            assertEquals(i, record.getTimestamp());
+            assertArrayEquals(new byte[] {(byte) i}, record.getCommand());
+            assertEquals(i, record.getResponse().length);
+        }
+        assertNull(reader.read());
+
+        writer.close();
+    }
+
+    @Test
+    public void testFullRingDropsAndCounts() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        DebugLogRecordWriter slowWriter = new DebugLogRecordWriter() {
+            @Override
+            public void write(DebugLogRecord.Type type, long timestamp, byte[] command,
+                    byte[] response) throws IOException {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public boolean isSelfFlushing() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        AsyncDebugLogRecordWriter writer = new AsyncDebugLogRecordWriter(slowWriter, null, 2);
+        byte[] bytes = new byte[] {1};
+
+        writer.write(DebugLogRecord.Type.WRITE, 0, bytes, null);
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+        // The background writer holds the first slot, so only one more record fits.
+        writer.write(DebugLogRecord.Type.WRITE, 1, bytes, null);
+        writer.write(DebugLogRecord.Type.WRITE, 2, bytes, null);
+        assertEquals(1, writer.getOverflowCount());
+
+        release.countDown();
+        writer.flush();
+        assertEquals(2, writer.getWrittenRecordCount());
+        writer.close();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class AsyncIoManagerAdapterTest {
+
+    private ByteArrayOutputStream os;
+    private AsyncIoManagerAdapter asyncIoManager;
+
+    @Before
+    public void setup() {
+        os = new ByteArrayOutputStream();
+        asyncIoManager = new AsyncIoManagerAdapter(new DirectIoManager(
+                new StreamSocketManager(new ByteArrayInputStream(new byte[] {7}), os)));
+        asyncIoManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        asyncIoManager.stop();
+    }
+
+    @Test
+    public void testOperationsPerformedInSubmissionOrder() throws Exception {
+        CompletableFuture<IoManagerResult> first = asyncIoManager.writeAsync(new byte[] {1});
+        CompletableFuture<IoManagerResult> second = asyncIoManager.writeAsync(new byte[] {2});
+        byte[] out = new byte[1];
+        CompletableFuture<IoManagerResult> third = asyncIoManager.readAsync(out, 100);
+        CompletableFuture<IoManagerResult> fourth = asyncIoManager.writeAsync(new byte[] {3});
+
+        assertArrayEquals(new byte[] {7}, third.get(1, TimeUnit.SECONDS).getResult());
+        fourth.get(1, TimeUnit.SECONDS);
+        assertTrue(first.isDone() && second.isDone());
+        assertTrue(first.get().getRequestEndNanoTime()
+                <= second.get().getRequestStartNanoTime());
+        assertArrayEquals(new byte[] {1, 2, 3}, os.toByteArray());
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() throws Exception {
+        CompletableFuture<IoManagerResult> future = asyncIoManager.readAsync(new byte[2], 20);
+
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        // The failure does not stop subsequent operations.
+        asyncIoManager.writeAsync(new byte[] {1}).get(1, TimeUnit.SECONDS);
+    }
+}
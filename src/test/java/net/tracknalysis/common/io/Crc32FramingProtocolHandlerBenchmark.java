@@ -0,0 +1,170 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the wrap and unwrap throughput of {@link Crc32FramingProtocolHandler}, using
+ * both the byte array and in place buffer paths, with a naive handler that computes the
+ * CRC bit by bit and copies the payload on each call, as is typical of hand written
+ * handlers.  Run with {@code java ... Crc32FramingProtocolHandlerBenchmark [seconds]}.
+ *
+ * @author David Valeri
+ */
+public class Crc32FramingProtocolHandlerBenchmark {
+
+    private static final int[] PAYLOAD_LENGTHS = new int[] {16, 256, 4096};
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        System.out.printf("%-10s %-9s %10s %14s %10s%n", "handler", "path", "payload",
+                "frames/s", "MB/s");
+
+        for (int length : PAYLOAD_LENGTHS) {
+            byte[] payload = new byte[length];
+            new Random(length).nextBytes(payload);
+
+            for (int run = 0; run < 2; run++) {
+                // The first run of each case warms up the JIT and is not reported.
+                boolean report = run == 1;
+                runArray("naive", new NaiveCrc32FramingProtocolHandler(), payload, seconds,
+                        report);
+                runArray("crc32", new Crc32FramingProtocolHandler(), payload, seconds,
+                        report);
+                runBuffer("crc32", new Crc32FramingProtocolHandler(), payload, seconds,
+                        report);
+
+                if (Crc32FramingProtocolHandler.Algorithm.CRC32C.isSupported()) {
+                    Crc32FramingProtocolHandler crc32c = new Crc32FramingProtocolHandler(2,
+                            Crc32FramingProtocolHandler.Algorithm.CRC32C);
+                    runArray("crc32c", crc32c, payload, seconds, report);
+                    runBuffer("crc32c", crc32c, payload, seconds, report);
+                }
+            }
+        }
+    }
+
+    private static void runArray(String name, IoProtocolHandler handler, byte[] payload,
+            long seconds, boolean report) throws IOException {
+        long frames = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                sink += handler.unwrapResponse(handler.wrapRequest(payload)).length;
+            }
+            frames += 1000;
+        } while ((now = System.nanoTime()) < end);
+
+        if (report) {
+            print(name, "array", payload.length, frames, now - start);
+        }
+    }
+
+    private static void runBuffer(String name, BufferIoProtocolHandler handler,
+            byte[] payload, long seconds, boolean report) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(handler.getWrappedRequestLength(payload.length));
+        long frames = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                buffer.clear();
+                handler.wrapRequest(payload, 0, payload.length, buffer);
+                buffer.flip();
+                handler.unwrapResponse(buffer);
+                sink += buffer.remaining();
+            }
+            frames += 1000;
+        } while ((now = System.nanoTime()) < end);
+
+        if (report) {
+            print(name, "buffer", payload.length, frames, now - start);
+        }
+    }
+
+    private static void print(String name, String path, int length, long frames,
+            long elapsedNanos) {
+        double framesPerSecond = frames * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        // Each frame is checksummed twice, once to wrap and once to unwrap.
+        System.out.printf("%-10s %-9s %10d %14.0f %10.1f%n", name, path, length,
+                framesPerSecond, 2 * framesPerSecond * length / (1024 * 1024));
+    }
+
+    /**
+     * A table-less, allocating implementation of the same framing.
+     */
+    private static final class NaiveCrc32FramingProtocolHandler implements IoProtocolHandler {
+
+        @Override
+        public byte[] wrapRequest(byte[] raw) throws IOException {
+            byte[] wrapped = new byte[getWrappedRequestLength(raw.length)];
+            wrapped[0] = (byte) (raw.length >>> 8);
+            wrapped[1] = (byte) raw.length;
+            System.arraycopy(raw, 0, wrapped, 2, raw.length);
+            int crc = crc(raw, 0, raw.length);
+            for (int i = 0; i < 4; i++) {
+                wrapped[2 + raw.length + i] = (byte) (crc >>> (24 - 8 * i));
+            }
+            return wrapped;
+        }
+
+        @Override
+        public int getWrappedRequestLength(int length) {
+            return length + 6;
+        }
+
+        @Override
+        public byte[] unwrapResponse(byte[] wrapped) throws IOException {
+            int length = (wrapped[0] & 0xFF) << 8 | wrapped[1] & 0xFF;
+            byte[] raw = new byte[length];
+            System.arraycopy(wrapped, 2, raw, 0, length);
+            int crc = 0;
+            for (int i = 0; i < 4; i++) {
+                crc = crc << 8 | wrapped[2 + length + i] & 0xFF;
+            }
+            if (crc != crc(raw, 0, length)) {
+                throw new IOException("CRC mismatch.");
+            }
+            return raw;
+        }
+
+        @Override
+        public int getWrappedResponseLength(int length) {
+            return length + 6;
+        }
+
+        private static int crc(byte[] bytes, int offset, int length) {
+            int crc = 0xFFFFFFFF;
+            for (int i = offset; i < offset + length; i++) {
+                crc ^= bytes[i] & 0xFF;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc = (crc >>> 1) ^ (0xEDB88320 & -(crc & 1));
+                }
+            }
+            return ~crc;
+        }
+    }
+}
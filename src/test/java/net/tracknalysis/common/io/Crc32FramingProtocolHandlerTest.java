@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class Crc32FramingProtocolHandlerTest {
+
+    private static final byte[] CHECK = new byte[] {'1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    @Test
+    public void testWrapAndUnwrapInPlace() throws Exception {
+        Crc32FramingProtocolHandler handler = new Crc32FramingProtocolHandler();
+
+        byte[] wrapped = handler.wrapRequest(CHECK);
+        assertEquals(handler.getWrappedRequestLength(CHECK.length), wrapped.length);
+        assertEquals(0, wrapped[0]);
+        assertEquals(9, wrapped[1]);
+        // The CRC-32 check value of "123456789".
+        assertEquals(0xCBF43926, ByteBuffer.wrap(wrapped, 11, 4).getInt());
+
+        ByteBuffer buffer = ByteBuffer.wrap(wrapped);
+        handler.unwrapResponse(buffer);
+        assertEquals(2, buffer.position());
+        assertEquals(11, buffer.limit());
+        assertSame(wrapped, buffer.array());
+
+        wrapped[5] ^= 1;
+        try {
+            handler.unwrapResponse(wrapped);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCrc32c() throws Exception {
+        Assume.assumeTrue(Crc32FramingProtocolHandler.Algorithm.CRC32C.isSupported());
+
+        Crc32FramingProtocolHandler handler = new Crc32FramingProtocolHandler(1,
+                Crc32FramingProtocolHandler.Algorithm.CRC32C);
+
+        byte[] wrapped = handler.wrapRequest(CHECK);
+        assertEquals(9, wrapped[0]);
+        // The CRC-32C check value of "123456789".
+        assertEquals(0xE3069283, ByteBuffer.wrap(wrapped, 10, 4).getInt());
+        assertArrayEquals(CHECK, handler.unwrapResponse(wrapped));
+    }
+
+    @Test
+    public void testUnwrapDirectBuffer() throws Exception {
+        for (Crc32FramingProtocolHandler.Algorithm algorithm
+                : Crc32FramingProtocolHandler.Algorithm.values()) {
+            if (!algorithm.isSupported()) {
+                continue;
+            }
+
+            Crc32FramingProtocolHandler handler = new Crc32FramingProtocolHandler(2, algorithm);
+            byte[] wrapped = handler.wrapRequest(CHECK);
+
+            // Offset the frame so that the checksummed range is not the whole buffer.
+            ByteBuffer buffer = ByteBuffer.allocateDirect(wrapped.length + 2);
+            buffer.put((byte) 0x55).put(wrapped).put((byte) 0x55).flip();
+            buffer.position(1).limit(1 + wrapped.length);
+            handler.unwrapResponse(buffer);
+            assertEquals(3, buffer.position());
+            assertEquals(3 + CHECK.length, buffer.limit());
+
+            buffer.clear();
+            buffer.put(1 + 5, (byte) (buffer.get(1 + 5) ^ 1));
+            buffer.position(1).limit(1 + wrapped.length);
+            try {
+                handler.unwrapResponse(buffer);
+                fail(algorithm.name());
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testFrameDecoderSkipsCorruptFrames() throws Exception {
+        Crc32FramingProtocolHandler handler = new Crc32FramingProtocolHandler();
+        byte[] corrupt = handler.wrapRequest(new byte[] {1, 2, 3});
+        corrupt[3] ^= 1;
+        byte[] valid = handler.wrapRequest(new byte[] {4, 5});
+
+        ByteBuffer in = ByteBuffer.allocate(corrupt.length + valid.length);
+        in.put(corrupt).put(valid, 0, 3).flip();
+
+        LengthFieldFrameDecoder decoder = handler.newFrameDecoder(16);
+        assertNull(decoder.decode(in));
+        assertEquals(corrupt.length, decoder.getDiscardedByteCount());
+
+        in.compact();
+        in.put(valid, 3, valid.length - 3).flip();
+        assertArrayEquals(new byte[] {4, 5}, decoder.decode(in));
+        assertFalse(in.hasRemaining());
+    }
+}
@@ -166,6 +166,45 @@ public class DebugLogIoManagerTest {
 		assertArrayEquals(expectedDefaultRead, read4InResult.getResult());
 	}
 	
+	@Test
+	public void testBinaryLogReplaysAndConverts() throws Exception {
+		DebugLogWriterIoManager writer = new DebugLogWriterIoManager(new TestIoManager(), out,
+				DebugLogFormat.BINARY);
+		byte[] writeCommand = new byte[] {(byte) 0x00, (byte) 0x01};
+		
+		writer.write(writeCommand);
+		writer.writeAndRead(writeCommand, new byte[10], 100, protocolHandler);
+		writer.read(protocolHandler);
+		
+		byte[] binary = out.toByteArray();
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		assertEquals(3, DebugLogConverter.convert(new ByteArrayInputStream(binary), text,
+				DebugLogFormat.TEXT));
+		assertTrue(binary.length < text.size());
+		
+		ByteArrayOutputStream binaryAgain = new ByteArrayOutputStream();
+		DebugLogConverter.convert(new ByteArrayInputStream(text.toByteArray()), binaryAgain,
+				DebugLogFormat.BINARY);
+		
+		for (byte[] log : new byte[][] {binary, text.toByteArray(), binaryAgain.toByteArray()}) {
+			DebugLogReaderIoManager reader =
+					new DebugLogReaderIoManager(new ByteArrayInputStream(log));
+			reader.write(writeCommand);
+			assertArrayEquals(expectedDefaultRead,
+					reader.writeAndRead(writeCommand, new byte[10], 100, protocolHandler)
+							.getResult());
+			assertArrayEquals(expectedUnwrappedDefaultRead,
+					reader.read(protocolHandler).getResult());
+			
+			try {
+				reader.read();
+				fail();
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+	
 	private static class TestProtocolManager implements IoProtocolHandler {
 
 		@Override
@@ -229,6 +268,46 @@ public class DebugLogIoManagerTest {
 			throw new IOException("SHOULD NOT BE CALLED");
 		}
 
+		@Override
+		public IoManagerResult writeAndReadUntil(byte[] command, byte[] delimiter,
+				int maxLength, long timeout) throws IOException {
+			writes.add(command);
+			return createResult(true, true, timeout / 2, new byte[10]);
+		}
+
+		@Override
+		public IoManagerResult readUntil(byte[] delimiter, int maxLength, long timeout)
+				throws IOException {
+			return createResult(false, true, timeout / 2, new byte[10]);
+		}
+
+		@Override
+		public IoManagerResult writeAndReadFrame(byte[] command, IoFrameDecoder decoder,
+				long timeout) throws IOException {
+			writes.add(command);
+			return createResult(true, true, timeout / 2, new byte[10]);
+		}
+
+		@Override
+		public IoManagerResult readFrame(IoFrameDecoder decoder, long timeout)
+				throws IOException {
+			return createResult(false, true, timeout / 2, new byte[10]);
+		}
+
+		@Override
+		public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+				ResponseCompletionDetector detector) throws IOException {
+			writes.add(command);
+			return createResult(true, true, maxDelay / 2, new byte[10]);
+		}
+
+		@Override
+		public IoManagerResult writeAndReadResponse(byte[] command, long maxDelay,
+				ResponseCompletionDetector detector, IoProtocolHandler protocolHandler)
+				throws IOException {
+			throw new IOException("SHOULD NOT BE CALLED");
+		}
+
 		@Override
 		public IoManagerResult writeAndRead(byte[] command, byte[] result,
 				long timeout) throws IOException {
@@ -243,6 +322,23 @@ public class DebugLogIoManagerTest {
 			throw new IOException("SHOULD NOT BE CALLED");
 		}
 
+		@Override
+		public IoManagerResult[] writeAndReadPipelined(byte[][] commands,
+				byte[][] results, long timeout) throws IOException {
+			IoManagerResult[] pipelinedResults = new IoManagerResult[commands.length];
+			for (int i = 0; i < commands.length; i++) {
+				pipelinedResults[i] = createResult(true, true, timeout/2, results[i]);
+			}
+			return pipelinedResults;
+		}
+
+		@Override
+		public IoManagerResult[] writeAndReadPipelined(byte[][] commands,
+				byte[][] results, long timeout, IoProtocolHandler protocolHandler)
+				throws IOException {
+			throw new IOException("SHOULD NOT BE CALLED");
+		}
+
 		@Override
 		public IoManagerResult read() throws IOException {
 			return createResult(false, true, 0, new byte[10]);
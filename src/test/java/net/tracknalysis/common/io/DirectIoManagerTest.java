@@ -0,0 +1,284 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class DirectIoManagerTest {
+
+    @Test
+    public void testReadAllAvailable() throws Exception {
+        byte[] input = new byte[5000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+
+        DirectIoManager ioManager = createIoManager(input);
+
+        IoManagerResult result = ioManager.read();
+        assertArrayEquals(input, result.getResult());
+
+        result = ioManager.read();
+        assertArrayEquals(new byte[0], result.getResult());
+    }
+
+    @Test
+    public void testReadAvailableIntoCallerBuffer() throws Exception {
+        byte[] input = new byte[] {1, 2, 3, 4, 5};
+        DirectIoManager ioManager = createIoManager(input);
+
+        byte[] buffer = new byte[8];
+        assertEquals(3, ioManager.readAvailable(buffer, 2, 3));
+        assertArrayEquals(new byte[] {0, 0, 1, 2, 3, 0, 0, 0}, buffer);
+
+        assertEquals(2, ioManager.readAvailable(buffer, 0, buffer.length));
+        assertEquals(0, ioManager.readAvailable(buffer, 0, buffer.length));
+        assertArrayEquals(new byte[] {4, 5}, Arrays.copyOf(buffer, 2));
+    }
+
+    @Test
+    public void testReadFixedLength() throws Exception {
+        DirectIoManager ioManager = createIoManager(new byte[] {1, 2, 3});
+
+        byte[] out = new byte[2];
+        ioManager.read(out, 100);
+        assertArrayEquals(new byte[] {1, 2}, out);
+
+        try {
+            ioManager.read(out, 50);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testProtocolHandlers() throws Exception {
+        IoProtocolHandler[] handlers = new IoProtocolHandler[] {
+                new PrefixProtocolHandler(),
+                new ByteArrayIoProtocolHandlerAdapter(new PrefixProtocolHandler())};
+
+        for (IoProtocolHandler handler : handlers) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            DirectIoManager ioManager = new DirectIoManager(new StreamSocketManager(
+                    new ByteArrayInputStream(new byte[] {0x7E, 1, 2, 0x7E, 3}), os));
+
+            ioManager.write(new byte[] {9, 8}, handler);
+            assertArrayEquals(new byte[] {0x7E, 9, 8}, os.toByteArray());
+
+            byte[] out = new byte[2];
+            ioManager.read(out, 100, handler);
+            assertArrayEquals(new byte[] {1, 2}, out);
+
+            assertArrayEquals(new byte[] {3}, ioManager.read(handler).getResult());
+        }
+    }
+
+    @Test
+    public void testWriteAndReadPipelined() throws Exception {
+        final PipedOutputStream device = new PipedOutputStream();
+        PipedInputStream input = new PipedInputStream(device);
+        ByteArrayOutputStream os = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                try {
+                    // Echo each request so that responses queue behind later requests.
+                    device.write(b, off, len);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        DirectIoManager ioManager = new DirectIoManager(new StreamSocketManager(input, os));
+        byte[][] commands = new byte[][] {{1, 2}, {3, 4, 5}, {6}};
+        byte[][] out = new byte[][] {new byte[2], new byte[3], new byte[1]};
+
+        IoManagerResult[] results = ioManager.writeAndReadPipelined(commands, out, 100);
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, os.toByteArray());
+        assertEquals(3, results.length);
+        for (int i = 0; i < commands.length; i++) {
+            assertArrayEquals(commands[i], out[i]);
+            assertSame(out[i], results[i].getResult());
+        }
+        assertTrue(results[2].getRequestTxStartNanoTime()
+                <= results[0].getRequestRxStartNanoTime());
+
+        // The echo of the second request is one byte short of the expected response.
+        out = new byte[][] {new byte[1], new byte[3]};
+        try {
+            ioManager.writeAndReadPipelined(new byte[][] {{7}, {8, 9}}, out, 50);
+            fail();
+        } catch (PipelinedIoException e) {
+            assertEquals(1, e.getCompletedResults().length);
+            assertArrayEquals(new byte[] {7}, e.getCompletedResults()[0].getResult());
+        }
+    }
+
+    @Test
+    public void testWriteAndReadResponseReturnsOnceComplete() throws Exception {
+        final PipedOutputStream device = new PipedOutputStream();
+        PipedInputStream input = new PipedInputStream(device);
+        ByteArrayOutputStream os = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                try {
+                    device.write(b, off, len);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        DirectIoManager ioManager = new DirectIoManager(new StreamSocketManager(input, os));
+
+        long start = System.currentTimeMillis();
+        IoManagerResult result = ioManager.writeAndReadResponse(new byte[] {1, 2, '\n'}, 5000,
+                ResponseCompletionDetectors.terminator((byte) '\n'));
+        assertArrayEquals(new byte[] {1, 2, '\n'}, result.getResult());
+
+        result = ioManager.writeAndReadResponse(new byte[] {0, 2, 3, 4}, 5000,
+                ResponseCompletionDetectors.lengthField(0, 2, 2));
+        assertArrayEquals(new byte[] {0, 2, 3, 4}, result.getResult());
+
+        result = ioManager.writeAndReadResponse(new byte[] {5}, 5000,
+                ResponseCompletionDetectors.idleGap(20, TimeUnit.MILLISECONDS));
+        assertArrayEquals(new byte[] {5}, result.getResult());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testReadUntilKeepsBytesAfterDelimiter() throws Exception {
+        // Deliver the input in three byte chunks so that delimiters span chunks.
+        InputStream input = new ByteArrayInputStream("OK\r\n>ABC1112".getBytes("US-ASCII")) {
+            @Override
+            public synchronized int available() {
+                return Math.min(3, super.available());
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(3, len));
+            }
+        };
+        DirectIoManager ioManager = new DirectIoManager(
+                new StreamSocketManager(input, new ByteArrayOutputStream()));
+
+        assertArrayEquals("OK\r\n".getBytes("US-ASCII"),
+                ioManager.readUntil(new byte[] {'\r', '\n'}, 16, 100).getResult());
+        assertArrayEquals(new byte[] {'>'},
+                ioManager.readUntil(new byte[] {'>'}, 16, 100).getResult());
+
+        byte[] out = new byte[3];
+        ioManager.read(out, 100);
+        assertArrayEquals("ABC".getBytes("US-ASCII"), out);
+
+        assertArrayEquals("1112".getBytes("US-ASCII"),
+                ioManager.readUntil("112".getBytes("US-ASCII"), 16, 100).getResult());
+
+        try {
+            ioManager.readUntil(new byte[] {'>'}, 16, 20);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testReadFrameResyncsAndKeepsBytesAfterFrame() throws Exception {
+        // Garbage, including a preamble with an oversized length, precedes the frames and
+        // the input is delivered in three byte chunks so that frames span chunks.
+        InputStream input = new ByteArrayInputStream(new byte[] {
+                0x00, (byte) 0xAA, 0x20,
+                (byte) 0xAA, 0x02, 0x01, 0x02,
+                (byte) 0xAA, 0x01, 0x03,
+                (byte) 0xAA, 0x05, 0x09}) {
+            @Override
+            public synchronized int available() {
+                return Math.min(3, super.available());
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(3, len));
+            }
+        };
+        DirectIoManager ioManager = new DirectIoManager(
+                new StreamSocketManager(input, new ByteArrayOutputStream()));
+        LengthFieldFrameDecoder decoder =
+                new LengthFieldFrameDecoder(16, 1, 1, 0, 2, (byte) 0xAA);
+
+        assertArrayEquals(new byte[] {1, 2}, ioManager.readFrame(decoder, 100).getResult());
+        assertArrayEquals(new byte[] {3}, ioManager.readFrame(decoder, 100).getResult());
+        assertEquals(3, decoder.getDiscardedByteCount());
+
+        try {
+            ioManager.readFrame(decoder, 20);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private DirectIoManager createIoManager(byte[] input) {
+        return new DirectIoManager(new StreamSocketManager(
+                new ByteArrayInputStream(input), new ByteArrayOutputStream()));
+    }
+
+    private static class PrefixProtocolHandler extends AbstractBufferIoProtocolHandler {
+
+        @Override
+        public void wrapRequest(byte[] raw, int offset, int length, ByteBuffer wrapped) {
+            wrapped.put((byte) 0x7E);
+            wrapped.put(raw, offset, length);
+        }
+
+        @Override
+        public int getWrappedRequestLength(int length) {
+            return length + 1;
+        }
+
+        @Override
+        public void unwrapResponse(ByteBuffer wrapped) throws IOException {
+            if (wrapped.get() != 0x7E) {
+                throw new IOException("Missing prefix.");
+            }
+        }
+
+        @Override
+        public int getWrappedResponseLength(int length) {
+            return length + 1;
+        }
+    }
+}
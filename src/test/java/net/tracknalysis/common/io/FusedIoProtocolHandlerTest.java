@@ -0,0 +1,88 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class FusedIoProtocolHandlerTest {
+
+    @Test
+    public void testFramingUnderByteStuffing() throws Exception {
+        Crc32FramingProtocolHandler framing = new Crc32FramingProtocolHandler();
+        ByteStuffingStage stuffing = new ByteStuffingStage((byte) 0x7D, (byte) 0x20, (byte) 0x7E);
+        FusedIoProtocolHandler handler = new FusedIoProtocolHandler(framing, stuffing);
+        byte[] payload = new byte[] {1, 0x7E, 2, 0x7D, 3};
+
+        // The fused result matches framing and then stuffing separately.
+        byte[] framed = framing.wrapRequest(payload);
+        ByteBuffer expected = ByteBuffer.allocate(2 * framed.length);
+        for (byte b : framed) {
+            if (b == 0x7D || b == 0x7E) {
+                expected.put((byte) 0x7D).put((byte) (b ^ 0x20));
+            } else {
+                expected.put(b);
+            }
+        }
+        expected.flip();
+
+        byte[] wrapped = handler.wrapRequest(payload);
+        assertEquals(expected, ByteBuffer.wrap(wrapped));
+        assertTrue(handler.getWrappedRequestLength(payload.length) >= wrapped.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(wrapped);
+        handler.unwrapResponse(buffer);
+        assertSame(wrapped, buffer.array());
+        assertEquals(ByteBuffer.wrap(payload), buffer);
+
+        try {
+            handler.getWrappedResponseLength(payload.length);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testNestedFramingLengthsCompose() throws Exception {
+        FusedIoProtocolHandler handler = new FusedIoProtocolHandler(
+                new Crc32FramingProtocolHandler(1, Crc32FramingProtocolHandler.Algorithm.CRC32),
+                new Crc32FramingProtocolHandler());
+        byte[] payload = new byte[44];
+
+        assertEquals(2 + 1 + payload.length + 4 + 4,
+                handler.getWrappedResponseLength(payload.length));
+
+        byte[] wrapped = handler.wrapRequest(payload);
+        assertEquals(handler.getWrappedRequestLength(payload.length), wrapped.length);
+        assertArrayEquals(payload, handler.unwrapResponse(wrapped));
+
+        wrapped[wrapped.length - 5] ^= 1;
+        try {
+            handler.unwrapResponse(wrapped);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
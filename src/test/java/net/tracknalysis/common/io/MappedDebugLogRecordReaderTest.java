@@ -0,0 +1,80 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class MappedDebugLogRecordReaderTest {
+
+    @Test
+    public void testSeekByRecordAndTime() throws Exception {
+        File log = File.createTempFile("debug", ".log");
+        File index = new File(log.getPath() + MappedDebugLogRecordReader.INDEX_SUFFIX);
+        log.deleteOnExit();
+        index.deleteOnExit();
+
+        FileOutputStream out = new FileOutputStream(log);
+        DebugLogRecordWriter writer = DebugLogFormat.BINARY.newWriter(out);
+        for (int i = 0; i < 1000; i++) {
+            writer.write(DebugLogRecord.Type.WRITE_AND_READ, i * 1000L,
+                    new byte[] {(byte) i}, new byte[i % 7]);
+        }
+        writer.flush();
+        // A record cut off while logging is ignored.
+        out.write(new byte[] {0, 0, 0, 20, 1});
+        writer.close();
+
+        MappedDebugLogRecordReader reader = new MappedDebugLogRecordReader(log, 16);
+        assertEquals(1000, reader.getRecordCount());
+        assertTrue(index.isFile());
+
+        reader.seek(500);
+        DebugLogRecord record = reader.read();
+        assertEquals(500000, record.getTimestamp());
+        assertArrayEquals(new byte[] {(byte) 500}, record.getCommand());
+        assertEquals(500 % 7, record.getResponse().length);
+
+        assertEquals(124, reader.seekToTime(123456, TimeUnit.NANOSECONDS));
+        assertEquals(124000, reader.read().getTimestamp());
+
+        assertEquals(1000, reader.seekToTime(1, TimeUnit.SECONDS));
+        assertNull(reader.read());
+        reader.close();
+
+        // The index is loaded from the sidecar, including its interval.
+        long indexModified = index.lastModified();
+        reader = new MappedDebugLogRecordReader(log);
+        assertEquals(indexModified, index.lastModified());
+        assertEquals(1000, reader.getRecordCount());
+        reader.seek(999);
+        assertEquals(999000, reader.read().getTimestamp());
+        assertNull(reader.read());
+
+        reader.seek(0);
+        DebugLogReaderIoManager replay = new DebugLogReaderIoManager(reader);
+        assertArrayEquals(new byte[0], replay.writeAndRead(new byte[] {0}, 0).getResult());
+        reader.close();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.io.MetricsIoManager.Operation;
+import net.tracknalysis.common.io.MetricsIoManager.OperationSnapshot;
+
+/**
+ * @author David Valeri
+ */
+public class MetricsIoManagerTest {
+
+    @Test
+    public void testPhasesRecordedPerOperation() throws Exception {
+        final PipedOutputStream device = new PipedOutputStream();
+        PipedInputStream input = new PipedInputStream(device);
+        ByteArrayOutputStream os = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                try {
+                    // Echo each request as its response.
+                    device.write(b, off, len);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        MetricsIoManager ioManager = new MetricsIoManager(
+                new DirectIoManager(new StreamSocketManager(input, os)));
+
+        ioManager.writeAndRead(new byte[] {1, 2}, new byte[2], 100);
+        ioManager.write(new byte[] {3});
+        ioManager.read(new byte[1], 100);
+        try {
+            ioManager.read(new byte[1], 20);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Map<Operation, OperationSnapshot> snapshots = ioManager.getIntervalSnapshots();
+
+        OperationSnapshot writeAndRead = snapshots.get(Operation.WRITE_AND_READ_TIMEOUT);
+        assertEquals(1, writeAndRead.getTotal().getCount());
+        assertEquals(1, writeAndRead.getTx().getCount());
+        assertEquals(1, writeAndRead.getWait().getCount());
+        assertEquals(1, writeAndRead.getRx().getCount());
+        assertEquals(0, writeAndRead.getErrors());
+
+        OperationSnapshot write = snapshots.get(Operation.WRITE);
+        assertEquals(1, write.getTotal().getCount());
+        assertEquals(1, write.getTx().getCount());
+        assertEquals(0, write.getWait().getCount());
+        assertEquals(0, write.getRx().getCount());
+
+        OperationSnapshot read = snapshots.get(Operation.READ_TIMEOUT);
+        assertEquals(1, read.getTotal().getCount());
+        assertEquals(0, read.getTx().getCount());
+        assertEquals(0, read.getWait().getCount());
+        assertEquals(1, read.getRx().getCount());
+        assertEquals(1, read.getErrors());
+
+        assertEquals(0, snapshots.get(Operation.READ).getTotal().getCount());
+        assertEquals(0, ioManager.getIntervalSnapshots().get(Operation.WRITE)
+                .getTotal().getCount());
+    }
+}
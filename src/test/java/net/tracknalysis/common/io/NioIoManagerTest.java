@@ -0,0 +1,184 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class NioIoManagerTest {
+
+    private Pipe deviceToHost;
+    private Pipe hostToDevice;
+    private NioIoManager ioManager;
+
+    @Before
+    public void setup() throws Exception {
+        deviceToHost = Pipe.open();
+        hostToDevice = Pipe.open();
+        ioManager = new NioIoManager(new PipeSocketManager());
+        ioManager.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ioManager.disconnect();
+        deviceToHost.sink().close();
+        deviceToHost.source().close();
+        hostToDevice.sink().close();
+        hostToDevice.source().close();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        IoManagerResult result = ioManager.write(new byte[] {0x01, 0x02, 0x03});
+        assertNotNull(result);
+        assertNull(result.getResult());
+
+        ByteBuffer written = ByteBuffer.allocate(3);
+        while (written.hasRemaining()) {
+            hostToDevice.source().read(written);
+        }
+        assertArrayEquals(new byte[] {0x01, 0x02, 0x03}, written.array());
+    }
+
+    @Test
+    public void testReadAvailable() throws Exception {
+        sendFromDevice(new byte[] {0x0A, 0x0B});
+
+        IoManagerResult result = ioManager.read();
+        assertArrayEquals(new byte[] {0x0A, 0x0B}, result.getResult());
+
+        result = ioManager.read();
+        assertArrayEquals(new byte[0], result.getResult());
+    }
+
+    @Test
+    public void testReadFixedLengthArrivingLater() throws Exception {
+        Thread device = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    sendFromDevice(new byte[] {0x01, 0x02});
+                    Thread.sleep(50);
+                    sendFromDevice(new byte[] {0x03, 0x04});
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        device.start();
+
+        byte[] out = new byte[4];
+        IoManagerResult result = ioManager.read(out, 1000);
+        device.join();
+
+        assertSame(out, result.getResult());
+        assertArrayEquals(new byte[] {0x01, 0x02, 0x03, 0x04}, out);
+        assertTrue(result.getRequestRxEndTime() - result.getRequestRxStartTime() >= 40);
+    }
+
+    @Test
+    public void testReadFixedLengthTimeout() throws Exception {
+        sendFromDevice(new byte[] {0x01});
+
+        long start = System.currentTimeMillis();
+        try {
+            ioManager.read(new byte[2], 100);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Read 1 bytes of 2"));
+        }
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void testWriteAndReadFlushesStaleInput() throws Exception {
+        sendFromDevice(new byte[] {0x7F, 0x7F});
+
+        Thread device = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ByteBuffer command = ByteBuffer.allocate(1);
+                    while (command.hasRemaining()) {
+                        hostToDevice.source().read(command);
+                    }
+                    sendFromDevice(new byte[] {0x10, 0x20});
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        device.start();
+
+        byte[] out = new byte[2];
+        ioManager.writeAndRead(new byte[] {0x42}, out, 1000);
+        device.join();
+
+        assertArrayEquals(new byte[] {0x10, 0x20}, out);
+    }
+
+    private void sendFromDevice(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            deviceToHost.sink().write(buffer);
+        }
+    }
+
+    private class PipeSocketManager implements ChannelSocketManager {
+
+        @Override
+        public void connect() throws IOException {
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SelectableChannel getInputChannel() throws IOException {
+            return deviceToHost.source();
+        }
+
+        @Override
+        public SelectableChannel getOutputChannel() throws IOException {
+            return hostToDevice.sink();
+        }
+    }
+}
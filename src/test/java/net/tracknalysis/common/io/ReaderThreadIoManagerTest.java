@@ -0,0 +1,121 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class ReaderThreadIoManagerTest {
+
+    private PipedOutputStream device;
+    private PipedInputStream input;
+    private ReaderThreadIoManager ioManager;
+
+    @Before
+    public void setup() throws Exception {
+        device = new PipedOutputStream();
+        input = new PipedInputStream(device);
+        ioManager = new ReaderThreadIoManager(new StreamSocketManager(input,
+                new ByteArrayOutputStream()) {
+            @Override
+            public void disconnect() throws IOException {
+                input.close();
+            }
+        }, 16);
+        ioManager.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ioManager.disconnect();
+    }
+
+    @Test
+    public void testReadFixedLengthArrivingLater() throws Exception {
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    device.write(new byte[] {1, 2, 3});
+                    device.flush();
+                    Thread.sleep(30);
+                    device.write(new byte[] {4, 5});
+                    device.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        sender.start();
+
+        byte[] out = new byte[5];
+        ioManager.read(out, 1000);
+        sender.join();
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, out);
+    }
+
+    @Test
+    public void testReadLargerThanRing() throws Exception {
+        final byte[] sent = new byte[100];
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = (byte) i;
+        }
+
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    device.write(sent);
+                    device.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        sender.start();
+
+        byte[] out = new byte[100];
+        ioManager.read(out, 1000);
+        sender.join();
+
+        assertArrayEquals(sent, out);
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        device.write(new byte[] {1});
+        device.flush();
+
+        try {
+            ioManager.read(new byte[2], 50);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Read 1 bytes of 2"));
+        }
+    }
+}
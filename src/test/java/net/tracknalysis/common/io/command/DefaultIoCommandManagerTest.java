@@ -0,0 +1,261 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.io.DirectIoManager;
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoManagerResult;
+import net.tracknalysis.common.io.StreamSocketManager;
+
+/**
+ * @author David Valeri
+ */
+public class DefaultIoCommandManagerTest {
+
+	@Test
+	public void testBatchableCommandsWrittenWithSingleFlush() throws Exception {
+		final AtomicInteger flushes = new AtomicInteger();
+		ByteArrayOutputStream os = new ByteArrayOutputStream() {
+			@Override
+			public void flush() throws IOException {
+				flushes.incrementAndGet();
+			}
+		};
+		
+		DefaultIoCommandManager commandManager = new DefaultIoCommandManager(
+				new DirectIoManager(new StreamSocketManager(
+						new ByteArrayInputStream(new byte[0]), os)), 8);
+		commandManager.start();
+		
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch written = new CountDownLatch(3);
+			
+			// Hold the command thread so that the batchable commands queue up together.
+			commandManager.enqueue(new IoCommand() {
+				@Override
+				public void execute(IoManager ioManager) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			
+			for (int i = 1; i <= 2; i++) {
+				commandManager.enqueue(new TestBatchableIoCommand(
+						new byte[] {(byte) i, (byte) i}, written));
+			}
+			// Submitted commands are batched as the command they wrap.
+			IoCommandFuture submitted = commandManager.submit(
+					new TestBatchableIoCommand(new byte[] {3, 3}, written));
+			
+			release.countDown();
+			assertTrue(written.await(5, TimeUnit.SECONDS));
+			assertNull(submitted.get(5, TimeUnit.SECONDS));
+			
+			assertArrayEquals(new byte[] {1, 1, 2, 2, 3, 3}, os.toByteArray());
+			assertEquals(1, flushes.get());
+		} finally {
+			commandManager.stop();
+		}
+	}
+	
+	@Test
+	public void testPeriodicCommandSkipsMissedSlots() throws Exception {
+		DefaultIoCommandManager commandManager = new DefaultIoCommandManager(
+				new DirectIoManager(new StreamSocketManager(
+						new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream())));
+		commandManager.start();
+		
+		try {
+			final AtomicInteger executions = new AtomicInteger();
+			PeriodicIoCommand periodicCommand = commandManager.schedule(new IoCommand() {
+				@Override
+				public void execute(IoManager ioManager) {
+					// Overrun every third slot by more than two periods.
+					if (executions.incrementAndGet() % 3 == 0) {
+						try {
+							Thread.sleep(25);
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			}, 10, TimeUnit.MILLISECONDS);
+			
+			Thread.sleep(300);
+			periodicCommand.cancel();
+			Thread.sleep(50);
+			
+			long executed = periodicCommand.getExecutionCount();
+			assertEquals(executions.get(), executed);
+			assertTrue(executed >= 10 && executed <= 31);
+			assertTrue(periodicCommand.getOverrunCount() > 0);
+			assertTrue(periodicCommand.getMissedSlotCount() > 0);
+			assertTrue(periodicCommand.getJitterSnapshot().getCount() == executed);
+			
+			Thread.sleep(50);
+			assertEquals(executed, periodicCommand.getExecutionCount());
+		} finally {
+			commandManager.stop();
+		}
+	}
+	
+	@Test
+	public void testSubmittedCommandsCompleteFutures() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		DefaultIoCommandManager commandManager = new DefaultIoCommandManager(
+				new DirectIoManager(new StreamSocketManager(
+						new ByteArrayInputStream(new byte[0]), os)));
+		commandManager.start();
+		
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			IoCommandFuture blocker = commandManager.submit(new IoCommand() {
+				@Override
+				public void execute(IoManager ioManager) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			
+			IoCommandFuture write = commandManager.submitCallable(new IoCallable() {
+				@Override
+				public IoManagerResult call(IoManager ioManager) throws IOException {
+					return ioManager.write(new byte[] {1});
+				}
+			});
+			
+			IoCommandFuture failure = commandManager.submitCallable(new IoCallable() {
+				@Override
+				public IoManagerResult call(IoManager ioManager) throws IOException {
+					throw new IOException("Expected");
+				}
+			});
+			
+			IoCommandFuture cancelled = commandManager.submitCallable(new IoCallable() {
+				@Override
+				public IoManagerResult call(IoManager ioManager) throws IOException {
+					return ioManager.write(new byte[] {2});
+				}
+			});
+			assertTrue(cancelled.cancel(false));
+			
+			release.countDown();
+			
+			assertNull(blocker.get(5, TimeUnit.SECONDS));
+			assertNotNull(write.get(5, TimeUnit.SECONDS));
+			try {
+				failure.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+			
+			try {
+				cancelled.get();
+				fail();
+			} catch (CancellationException e) {
+				// Expected
+			}
+			
+			assertArrayEquals(new byte[] {1}, os.toByteArray());
+			assertTrue(write.getQueueWait(TimeUnit.NANOSECONDS) > 0);
+			assertTrue(write.getStartNanoTime() >= blocker.getCompleteNanoTime());
+			assertTrue(write.getExecutionTime(TimeUnit.NANOSECONDS) >= 0);
+			assertEquals(-1, cancelled.getQueueWait(TimeUnit.NANOSECONDS));
+		} finally {
+			commandManager.stop();
+		}
+	}
+	
+	@Test
+	public void testRestartDiscardsCommandsOfferedAfterStop() throws Exception {
+		DefaultIoCommandManager commandManager = new DefaultIoCommandManager(
+				new DirectIoManager(new StreamSocketManager(
+						new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream())));
+		commandManager.start();
+		commandManager.stop();
+		
+		// As offered by a producer that passed the running check before the stop.
+		final AtomicInteger executions = new AtomicInteger();
+		IoCommandFuture stale = new IoCommandFuture(new IoCommand() {
+			@Override
+			public void execute(IoManager ioManager) {
+				executions.incrementAndGet();
+			}
+		});
+		assertTrue(commandManager.getCommandQueue().offer(stale));
+		
+		commandManager.start();
+		try {
+			assertTrue(stale.isCancelled());
+			IoCommandFuture fresh = commandManager.submit(new IoCommand() {
+				@Override
+				public void execute(IoManager ioManager) {
+				}
+			});
+			assertNull(fresh.get(5, TimeUnit.SECONDS));
+			assertEquals(0, executions.get());
+		} finally {
+			commandManager.stop();
+		}
+	}
+	
+	private static class TestBatchableIoCommand extends AbstractBatchableIoCommand {
+		
+		private final byte[] command;
+		private final CountDownLatch written;
+		
+		public TestBatchableIoCommand(byte[] command, CountDownLatch written) {
+			this.command = command;
+			this.written = written;
+		}
+		
+		@Override
+		public byte[] getCommand() {
+			return command;
+		}
+		
+		@Override
+		public void onWritten(IoManagerResult result) {
+			written.countDown();
+		}
+		
+		@Override
+		public void onError(Exception e) {
+			// Left for the latch to time out
+		}
+	}
+}
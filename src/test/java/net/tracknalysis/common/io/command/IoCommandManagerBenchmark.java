@@ -0,0 +1,184 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.tracknalysis.common.concurrent.BlockingWaitStrategy;
+import net.tracknalysis.common.concurrent.BusySpinWaitStrategy;
+import net.tracknalysis.common.concurrent.ParkingBackoffWaitStrategy;
+import net.tracknalysis.common.concurrent.YieldingWaitStrategy;
+import net.tracknalysis.common.io.DirectIoManager;
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.StreamSocketManager;
+import net.tracknalysis.common.metrics.LatencyHistogram;
+
+/**
+ * Compares the producer to command thread handoff of {@link DefaultIoCommandManager} and
+ * {@link RingIoCommandManager} with each wait strategy.  Run with
+ * {@code java ... IoCommandManagerBenchmark [producers] [commandsPerProducer]}.
+ * <p/>
+ * Two scenarios are measured: a throughput run in which all producers enqueue as fast as
+ * the manager accepts commands, and a ping-pong run in which a single producer waits for
+ * each command to execute before enqueuing the next, measuring the wake up latency of an
+ * idle command thread.
+ *
+ * @author David Valeri
+ */
+public class IoCommandManagerBenchmark {
+
+	private static final int PING_PONG_COMMANDS = 20000;
+
+	public static void main(String[] args) throws Exception {
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int commandsPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 250000;
+
+		String[] names = new String[] {"default", "ring-blocking", "ring-parking",
+				"ring-yielding", "ring-busy-spin"};
+
+		System.out.printf("%-16s %-11s %14s %10s %10s %10s %10s%n", "manager", "scenario",
+				"commands/s", "p50 us", "p99 us", "p99.9 us", "max us");
+
+		for (String name : names) {
+			for (int run = 0; run < 2; run++) {
+				// The first run of each manager warms up the JIT and is not reported.
+				boolean report = run == 1;
+				runThroughput(name, producers, commandsPerProducer, report);
+				runPingPong(name, report);
+			}
+		}
+	}
+
+	private static IoCommandManager createManager(String name) {
+		IoManager ioManager = new DirectIoManager(new StreamSocketManager(
+				new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()));
+
+		if ("default".equals(name)) {
+			return new DefaultIoCommandManager(ioManager);
+		} else if ("ring-blocking".equals(name)) {
+			return new RingIoCommandManager(ioManager, 1024, new BlockingWaitStrategy());
+		} else if ("ring-parking".equals(name)) {
+			return new RingIoCommandManager(ioManager, 1024, new ParkingBackoffWaitStrategy());
+		} else if ("ring-yielding".equals(name)) {
+			return new RingIoCommandManager(ioManager, 1024, new YieldingWaitStrategy());
+		} else {
+			return new RingIoCommandManager(ioManager, 1024, new BusySpinWaitStrategy());
+		}
+	}
+
+	private static void runThroughput(String name, int producers,
+			final int commandsPerProducer, boolean report) throws Exception {
+		final IoCommandManager manager = createManager(name);
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final CountDownLatch done = new CountDownLatch(producers * commandsPerProducer);
+		final CountDownLatch go = new CountDownLatch(1);
+
+		manager.start();
+		try {
+			Thread[] threads = new Thread[producers];
+			for (int i = 0; i < producers; i++) {
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							go.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+
+						for (int j = 0; j < commandsPerProducer; j++) {
+							TimedCommand command = new TimedCommand(histogram, done);
+							command.enqueueNanoTime = System.nanoTime();
+							while (!manager.enqueue(command)) {
+								Thread.yield();
+							}
+						}
+					}
+				};
+				threads[i].start();
+			}
+
+			long start = System.nanoTime();
+			go.countDown();
+			done.await();
+			long elapsed = System.nanoTime() - start;
+
+			if (report) {
+				print(name, "throughput", producers * (long) commandsPerProducer,
+						elapsed, histogram);
+			}
+		} finally {
+			manager.stop();
+		}
+	}
+
+	private static void runPingPong(String name, boolean report) throws Exception {
+		IoCommandManager manager = createManager(name);
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		manager.start();
+		try {
+			long start = System.nanoTime();
+			for (int i = 0; i < PING_PONG_COMMANDS; i++) {
+				CountDownLatch done = new CountDownLatch(1);
+				TimedCommand command = new TimedCommand(histogram, done);
+				// Let the command thread go idle so that the wait strategy matters.
+				TimeUnit.MICROSECONDS.sleep(50);
+				command.enqueueNanoTime = System.nanoTime();
+				manager.enqueue(command);
+				done.await();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			if (report) {
+				print(name, "ping-pong", PING_PONG_COMMANDS, elapsed, histogram);
+			}
+		} finally {
+			manager.stop();
+		}
+	}
+
+	private static void print(String name, String scenario, long commands,
+			long elapsedNanos, LatencyHistogram histogram) {
+		System.out.printf("%-16s %-11s %14.0f %10.1f %10.1f %10.1f %10.1f%n", name, scenario,
+				commands * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+				histogram.getValueAtPercentile(50) / 1000d,
+				histogram.getValueAtPercentile(99) / 1000d,
+				histogram.getValueAtPercentile(99.9) / 1000d,
+				histogram.getMax() / 1000d);
+	}
+
+	private static final class TimedCommand implements IoCommand {
+
+		private final LatencyHistogram histogram;
+		private final CountDownLatch done;
+		private volatile long enqueueNanoTime;
+
+		TimedCommand(LatencyHistogram histogram, CountDownLatch done) {
+			this.histogram = histogram;
+			this.done = done;
+		}
+
+		@Override
+		public void execute(IoManager ioManager) {
+			histogram.record(System.nanoTime() - enqueueNanoTime);
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.io.IoManager;
+import net.tracknalysis.common.io.IoManagerResult;
+
+/**
+ * @author David Valeri
+ */
+public class IoCommandQueueTest {
+
+	@Test
+	public void testServedByPriority() throws Exception {
+		IoCommandQueue queue = new IoCommandQueue(2);
+		TestCommand background = new TestCommand(IoCommandPriority.BACKGROUND);
+		TestCommand interactive = new TestCommand(null);
+		TestCommand realtime1 = new TestCommand(IoCommandPriority.REALTIME);
+		TestCommand realtime2 = new TestCommand(IoCommandPriority.REALTIME);
+		
+		assertTrue(queue.offer(background));
+		assertTrue(queue.offer(interactive));
+		assertTrue(queue.offer(realtime1));
+		assertTrue(queue.offer(realtime2));
+		assertFalse(queue.offer(new TestCommand(IoCommandPriority.REALTIME)));
+		assertEquals(4, queue.size());
+		
+		assertSame(realtime1, queue.peek());
+		assertSame(realtime1, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(realtime2, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(interactive, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertFalse(queue.removeIfNext(realtime1));
+		assertTrue(queue.removeIfNext(background));
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		
+		assertEquals(2, queue.getWaitSnapshot(IoCommandPriority.REALTIME).getCount());
+		assertEquals(1, queue.getWaitSnapshot(IoCommandPriority.BACKGROUND).getCount());
+	}
+	
+	@Test
+	public void testStarvedCommandPromoted() throws Exception {
+		IoCommandQueue queue = new IoCommandQueue(10);
+		queue.setMaxWait(IoCommandPriority.BACKGROUND, 10, TimeUnit.MILLISECONDS);
+		
+		TestCommand background = new TestCommand(IoCommandPriority.BACKGROUND);
+		queue.offer(background);
+		Thread.sleep(20);
+		TestCommand realtime = new TestCommand(IoCommandPriority.REALTIME);
+		queue.offer(realtime);
+		
+		assertSame(background, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(realtime, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertTrue(queue.getWaitSnapshot(IoCommandPriority.BACKGROUND).getMax()
+				>= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+	
+	@Test
+	public void testOverflowPolicies() throws Exception {
+		IoCommandQueue queue = new IoCommandQueue(2);
+		queue.setOverflowPolicy(IoCommandPriority.BACKGROUND,
+				IoCommandOverflowPolicy.DROP_OLDEST);
+		queue.setOverflowPolicy(IoCommandPriority.REALTIME,
+				IoCommandOverflowPolicy.REPLACE_BY_KEY);
+		queue.setOverflowPolicy(IoCommandPriority.INTERACTIVE, IoCommandOverflowPolicy.BLOCK);
+		queue.setBlockTimeout(IoCommandPriority.INTERACTIVE, 20, TimeUnit.MILLISECONDS);
+		
+		TestCommand background1 = new TestCommand(IoCommandPriority.BACKGROUND);
+		TestCommand background2 = new TestCommand(IoCommandPriority.BACKGROUND);
+		TestCommand background3 = new TestCommand(IoCommandPriority.BACKGROUND);
+		assertTrue(queue.offer(background1));
+		assertTrue(queue.offer(background2));
+		assertTrue(queue.offer(background3));
+		assertEquals(1, queue.getDroppedCount(IoCommandPriority.BACKGROUND));
+		
+		TestCommand a1 = new TestCommand(IoCommandPriority.REALTIME, "a", 0);
+		TestCommand b = new TestCommand(IoCommandPriority.REALTIME, "b", 0);
+		TestCommand a2 = new TestCommand(IoCommandPriority.REALTIME, "a", 0);
+		assertTrue(queue.offer(a1));
+		assertTrue(queue.offer(b));
+		assertTrue(queue.offer(a2));
+		assertFalse(queue.offer(new TestCommand(IoCommandPriority.REALTIME, "c", 0)));
+		assertEquals(1, queue.getReplacedCount(IoCommandPriority.REALTIME));
+		assertEquals(1, queue.getRejectedCount(IoCommandPriority.REALTIME));
+		
+		assertTrue(queue.offer(new TestCommand(null)));
+		assertTrue(queue.offer(new TestCommand(null)));
+		long start = System.nanoTime();
+		assertFalse(queue.offer(new TestCommand(null)));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(1, queue.getRejectedCount(IoCommandPriority.INTERACTIVE));
+		
+		// Consumer-side offers never wait for space.
+		queue.setBlockTimeout(IoCommandPriority.INTERACTIVE, 1, TimeUnit.HOURS);
+		assertFalse(queue.offerWithoutBlocking(new TestCommand(null)));
+		assertEquals(2, queue.getRejectedCount(IoCommandPriority.INTERACTIVE));
+		
+		assertSame(a2, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(b, queue.poll(0, TimeUnit.MILLISECONDS));
+		queue.poll(0, TimeUnit.MILLISECONDS);
+		queue.poll(0, TimeUnit.MILLISECONDS);
+		assertSame(background2, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(background3, queue.poll(0, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void testBoundedByPayloadBytes() throws Exception {
+		IoCommandQueue queue = new IoCommandQueue(10);
+		queue.setMaxPayloadBytes(IoCommandPriority.BACKGROUND, 100);
+		
+		assertTrue(queue.offer(new TestCommand(IoCommandPriority.BACKGROUND, null, 60)));
+		assertFalse(queue.offer(new TestCommand(IoCommandPriority.BACKGROUND, null, 60)));
+		assertTrue(queue.offer(new TestCommand(IoCommandPriority.BACKGROUND, null, 40)));
+		
+		queue.setOverflowPolicy(IoCommandPriority.BACKGROUND,
+				IoCommandOverflowPolicy.DROP_OLDEST);
+		assertFalse(queue.offer(new TestCommand(IoCommandPriority.BACKGROUND, null, 101)));
+		assertTrue(queue.offer(new TestCommand(IoCommandPriority.BACKGROUND, null, 50)));
+		assertEquals(1, queue.getDroppedCount(IoCommandPriority.BACKGROUND));
+		assertEquals(2, queue.size());
+	}
+	
+	@Test
+	public void testSubmittedCommandsKeyedAndSizedAsWrappedCommand() throws Exception {
+		IoCommandQueue queue = new IoCommandQueue(10);
+		queue.setOverflowPolicy(IoCommandPriority.REALTIME,
+				IoCommandOverflowPolicy.REPLACE_BY_KEY);
+		queue.setMaxPayloadBytes(IoCommandPriority.REALTIME, 100);
+		
+		IoCommandFuture a1 = new IoCommandFuture(
+				new TestCommand(IoCommandPriority.REALTIME, "a", 60));
+		IoCommandFuture a2 = new IoCommandFuture(
+				new TestCommand(IoCommandPriority.REALTIME, "a", 60));
+		assertTrue(queue.offer(a1));
+		assertTrue(queue.offer(a2));
+		assertEquals(1, queue.getReplacedCount(IoCommandPriority.REALTIME));
+		assertTrue(a1.isCancelled());
+		assertFalse(queue.offer(new IoCommandFuture(
+				new TestCommand(IoCommandPriority.REALTIME, "b", 60))));
+		
+		assertSame(a2, queue.poll(0, TimeUnit.MILLISECONDS));
+		assertEquals(0, queue.size());
+	}
+	
+	@Test
+	public void testDiscardedFuturesCancelledOutsideLock() throws Exception {
+		final IoCommandQueue queue = new IoCommandQueue(10);
+		queue.setOverflowPolicy(IoCommandPriority.REALTIME,
+				IoCommandOverflowPolicy.REPLACE_BY_KEY);
+		
+		final AtomicBoolean lockFree = new AtomicBoolean();
+		IoCommandFuture replaced = new IoCommandFuture(
+				new TestCommand(IoCommandPriority.REALTIME, "a", 0));
+		replaced.whenComplete(new BiConsumer<IoManagerResult, Throwable>() {
+			@Override
+			public void accept(IoManagerResult result, Throwable t) {
+				// Another thread can only take the lock if the canceller does not hold it.
+				Thread other = new Thread() {
+					@Override
+					public void run() {
+						queue.size();
+					}
+				};
+				other.start();
+				try {
+					other.join(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				lockFree.set(!other.isAlive());
+			}
+		});
+		
+		assertTrue(queue.offer(replaced));
+		assertTrue(queue.offer(new IoCommandFuture(
+				new TestCommand(IoCommandPriority.REALTIME, "a", 0))));
+		assertTrue(replaced.isCancelled());
+		assertTrue(lockFree.get());
+	}
+	
+	private static class TestCommand implements PrioritizedIoCommand, KeyedIoCommand,
+			SizedIoCommand {
+		
+		private final IoCommandPriority priority;
+		private final Object key;
+		private final int payloadSize;
+		
+		public TestCommand(IoCommandPriority priority) {
+			this(priority, null, 0);
+		}
+		
+		public TestCommand(IoCommandPriority priority, Object key, int payloadSize) {
+			this.priority = priority;
+			this.key = key;
+			this.payloadSize = payloadSize;
+		}
+		
+		@Override
+		public Object getKey() {
+			return key;
+		}
+		
+		@Override
+		public int getPayloadSize() {
+			return payloadSize;
+		}
+		
+		@Override
+		public IoCommandPriority getPriority() {
+			return priority;
+		}
+		
+		@Override
+		public void execute(IoManager ioManager) {
+		}
+	}
+}
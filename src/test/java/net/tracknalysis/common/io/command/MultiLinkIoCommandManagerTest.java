@@ -0,0 +1,156 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.io.DebugLogReaderIoManager;
+import net.tracknalysis.common.io.IoManager;
+
+/**
+ * @author David Valeri
+ */
+public class MultiLinkIoCommandManagerTest {
+
+	@Test
+	public void testLinksServedSeriallyInOrder() throws Exception {
+		final int linkCount = 8;
+		final int commandsPerLink = 200;
+		
+		MultiLinkIoCommandManager manager = new MultiLinkIoCommandManager(3);
+		manager.start();
+		
+		try {
+			final CountDownLatch done = new CountDownLatch(linkCount * commandsPerLink);
+			final AtomicInteger violations = new AtomicInteger();
+			final AtomicInteger[] inFlight = new AtomicInteger[linkCount];
+			final int[] next = new int[linkCount];
+			IoCommandManager[] links = new IoCommandManager[linkCount];
+			
+			for (int i = 0; i < linkCount; i++) {
+				inFlight[i] = new AtomicInteger();
+				links[i] = manager.register(new DebugLogReaderIoManager(
+						new ByteArrayInputStream(new byte[0])), commandsPerLink);
+				links[i].start();
+			}
+			
+			for (int j = 0; j < commandsPerLink; j++) {
+				for (int i = 0; i < linkCount; i++) {
+					final int link = i;
+					final int sequence = j;
+					assertTrue(links[i].enqueue(new IoCommand() {
+						@Override
+						public void execute(IoManager ioManager) {
+							if (inFlight[link].incrementAndGet() != 1 || next[link] != sequence) {
+								violations.incrementAndGet();
+							}
+							next[link]++;
+							Thread.yield();
+							inFlight[link].decrementAndGet();
+							done.countDown();
+						}
+					}));
+				}
+			}
+			
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(0, violations.get());
+		} finally {
+			manager.stop();
+		}
+	}
+	
+	@Test
+	public void testStopDiscardsCommandsOfWaitingLinks() throws Exception {
+		MultiLinkIoCommandManager manager = new MultiLinkIoCommandManager(1);
+		manager.start();
+		
+		IoCommandManager busy = manager.register(new DebugLogReaderIoManager(
+				new ByteArrayInputStream(new byte[0])));
+		IoCommandManager waiting = manager.register(new DebugLogReaderIoManager(
+				new ByteArrayInputStream(new byte[0])));
+		busy.start();
+		waiting.start();
+		
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		busy.enqueue(new IoCommand() {
+			@Override
+			public void execute(IoManager ioManager) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		
+		// Queued behind the busy link on the only worker.
+		IoCommandFuture discarded = waiting.submit(new IoCommand() {
+			@Override
+			public void execute(IoManager ioManager) {
+			}
+		});
+		
+		// Release the worker once it has been told to stop.
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// Release anyway
+				}
+				release.countDown();
+			}
+		}.start();
+		manager.stop();
+		assertTrue(discarded.isCancelled());
+		
+		manager.start();
+		try {
+			IoCommandFuture served = waiting.submit(new IoCommand() {
+				@Override
+				public void execute(IoManager ioManager) {
+				}
+			});
+			assertNull(served.get(5, TimeUnit.SECONDS));
+		} finally {
+			manager.stop();
+		}
+	}
+	
+	@Test
+	public void testIdleWorkersStopTogether() throws Exception {
+		MultiLinkIoCommandManager manager = new MultiLinkIoCommandManager(8);
+		manager.start();
+		// Let every worker settle into waiting for a link.
+		Thread.sleep(50);
+		
+		long start = System.nanoTime();
+		manager.stop();
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900));
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.io.command;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.tracknalysis.common.concurrent.BlockingWaitStrategy;
+import net.tracknalysis.common.concurrent.BusySpinWaitStrategy;
+import net.tracknalysis.common.concurrent.ParkingBackoffWaitStrategy;
+import net.tracknalysis.common.concurrent.WaitStrategy;
+import net.tracknalysis.common.concurrent.YieldingWaitStrategy;
+import net.tracknalysis.common.io.DebugLogReaderIoManager;
+import net.tracknalysis.common.io.IoManager;
+
+/**
+ * @author David Valeri
+ */
+public class RingIoCommandManagerTest {
+	
+	@Test
+	public void testFifoAcrossWaitStrategies() throws Exception {
+		WaitStrategy[] strategies = new WaitStrategy[] {
+				new BlockingWaitStrategy(),
+				new BusySpinWaitStrategy(),
+				new YieldingWaitStrategy(),
+				new ParkingBackoffWaitStrategy()};
+		
+		for (WaitStrategy strategy : strategies) {
+			final int commandCount = 1000;
+			RingIoCommandManager manager = new RingIoCommandManager(
+					newIoManager(), 64, strategy);
+			manager.start();
+			
+			try {
+				final CountDownLatch done = new CountDownLatch(commandCount);
+				final AtomicInteger next = new AtomicInteger();
+				final AtomicInteger violations = new AtomicInteger();
+				
+				for (int i = 0; i < commandCount; i++) {
+					final int sequence = i;
+					IoCommand command = new IoCommand() {
+						@Override
+						public void execute(IoManager ioManager) {
+							if (next.getAndIncrement() != sequence) {
+								violations.incrementAndGet();
+							}
+							done.countDown();
+						}
+					};
+					
+					// The ring is smaller than the run, so wait for room as a producer would.
+					while (!manager.enqueue(command)) {
+						Thread.yield();
+					}
+				}
+				
+				assertTrue(strategy.toString(), done.await(10, TimeUnit.SECONDS));
+				assertEquals(strategy.toString(), 0, violations.get());
+			} finally {
+				manager.stop();
+			}
+		}
+	}
+	
+	@Test
+	public void testRejectsWhenFull() throws Exception {
+		RingIoCommandManager manager = new RingIoCommandManager(
+				newIoManager(), 4, new BlockingWaitStrategy());
+		manager.start();
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			block(manager, release);
+			
+			for (int i = 0; i < 4; i++) {
+				assertTrue(manager.enqueue(new NoOpIoCommand()));
+			}
+			assertFalse(manager.enqueue(new NoOpIoCommand()));
+			
+			IoCommandFuture rejected = manager.submit(new NoOpIoCommand());
+			try {
+				rejected.get(0, TimeUnit.MILLISECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+		} finally {
+			release.countDown();
+			manager.stop();
+		}
+	}
+	
+	@Test
+	public void testStopCancelsQueuedFutures() throws Exception {
+		RingIoCommandManager manager = new RingIoCommandManager(
+				newIoManager(), 16, new BlockingWaitStrategy());
+		manager.start();
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		block(manager, release);
+		
+		IoCommandFuture first = manager.submit(new NoOpIoCommand());
+		IoCommandFuture second = manager.submit(new NoOpIoCommand());
+		
+		// Release the command thread once it has been told to stop.
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// Release anyway
+				}
+				release.countDown();
+			}
+		}.start();
+		manager.stop();
+		
+		assertTrue(first.isCancelled());
+		assertTrue(second.isCancelled());
+		
+		manager.start();
+		try {
+			IoCommandFuture served = manager.submit(new NoOpIoCommand());
+			assertNull(served.get(5, TimeUnit.SECONDS));
+		} finally {
+			manager.stop();
+		}
+	}
+	
+	/**
+	 * Occupies the command thread until {@code release} is counted down.
+	 */
+	private void block(RingIoCommandManager manager, final CountDownLatch release)
+			throws InterruptedException {
+		final CountDownLatch entered = new CountDownLatch(1);
+		assertTrue(manager.enqueue(new IoCommand() {
+			@Override
+			public void execute(IoManager ioManager) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}));
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+	}
+	
+	private IoManager newIoManager() throws IOException {
+		return new DebugLogReaderIoManager(new ByteArrayInputStream(new byte[0]));
+	}
+	
+	private static class NoOpIoCommand implements IoCommand {
+		@Override
+		public void execute(IoManager ioManager) {
+		}
+	}
+}
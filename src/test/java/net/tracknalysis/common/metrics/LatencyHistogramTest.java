@@ -0,0 +1,116 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.common.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        long previousHighest = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+            if (value == previousHighest + 1) {
+                assertTrue(highest > previousHighest);
+                previousHighest = highest;
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean(), 0.001);
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertWithin(999000, histogram.getValueAtPercentile(99.9));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+        histogram.record(LatencyHistogram.MAX_TRACKABLE_VALUE * 2);
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE * 2,
+                histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testIntervalSnapshotResets() {
+        IntervalLatencyRecorder recorder = new IntervalLatencyRecorder();
+        recorder.record(10);
+        recorder.record(20);
+
+        LatencySnapshot first = recorder.getIntervalSnapshot();
+        assertEquals(2, first.getCount());
+        assertEquals(20, first.getMax());
+
+        recorder.record(5);
+        LatencySnapshot second = recorder.getIntervalSnapshot();
+        assertEquals(1, second.getCount());
+        assertEquals(5, second.getMax());
+        assertTrue(second.getStartNanoTime() >= first.getEndNanoTime());
+
+        assertEquals(0, recorder.getIntervalSnapshot().getCount());
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws Exception {
+        final IntervalLatencyRecorder recorder = new IntervalLatencyRecorder();
+        final int perThread = 200000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        recorder.record(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        long total = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            total += recorder.getIntervalSnapshot().getCount();
+        }
+        total += recorder.getIntervalSnapshot().getCount();
+
+        assertEquals(threads.length * (long) perThread, total);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, actual >= expected
+                && actual - expected <= expected / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+}